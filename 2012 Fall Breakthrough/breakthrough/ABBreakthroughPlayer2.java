@@ -1,5 +1,6 @@
 package breakthrough;
-import java.util.ArrayList;
+import java.io.File;
+import java.util.Arrays;
 
 import game.*;
 import game.GameState.Who;
@@ -10,14 +11,48 @@ import game.GameState.Who;
 
 public class ABBreakthroughPlayer2 extends GamePlayer {
 	public final int MAX_DEPTH = 50;
+	public static final int MAX_QDEPTH = 8;		// plies of captures past depthLimit
 	public final int MAX_SCORE = Integer.MAX_VALUE;
+	// Terms of evalBoard, indexes into TERM_NAMES and weights
+	public static final int MATERIAL = 0;
+	public static final int PIECE_SQUARE = 1;
+	public static final int ADVANCE = 2;
+	public static final int COVERAGE = 3;
+	public static final int BACK_ROW = 4;
+	public static final int NUM_US = 5;
+	public static final int STEADY = 6;		// eval_steadybackline is AWAY - HOME
+	public static final int NUM_TERMS = 7;
+	public static final String [] TERM_NAMES =
+		{ "MATERIAL", "PIECE_SQUARE", "ADVANCE", "COVERAGE", "BACK_ROW", "NUM_US", "STEADY" };
+	public static final String WEIGHTS_FILE = "config" + File.separatorChar + "breakthrough-weights.txt";
+	static int [] weights = { 20, 1, 1, 2, 2, 1, -1 };
 	public int depthLimit;
 	private int origDepth;
 	private double timeSpent = 0;
 	
 	protected ScoredBreakthroughMove [] mvStack;
+	// Leaf scores; EVALCACHE in the game's config file sets the number
+	// of entries (0 turns the cache off).
+	protected EvalCache evalCache;
+	// Move ordering by static exchange evaluation, and the capture
+	// search at the leaves; switchable so their effect can be measured.
+	boolean seeOrdering = true;
+	boolean quiescence = true;
+	public long nodes;
+	private BreakthroughMove [][] qMoves;
+	// Staged move generation: a picker per ply, killer moves per ply,
+	// history scores per side, and the best move found for each position
+	// (an EvalCache holding encoded moves rather than scores), kept from
+	// one search to the next.
+	protected MovePicker [] pickers;
+	public final long [] stageReached = new long [MovePicker.NUM_STAGES];
+	private int [][] killers;
+	private int [][] history;
+	protected EvalCache hashMoves;
 	/**
-	 * Initializes the stack of Moves.
+	 * Initializes the stack of Moves, reads tuned weights if EvalTuner has
+	 * written any, switches to the neural network evaluation if a
+	 * trained network is available, and sets up the evaluation cache.
 	 */
 	public void init()
 	{
@@ -25,6 +60,32 @@ public class ABBreakthroughPlayer2 extends GamePlayer {
 		for (int i=0; i<MAX_DEPTH; i++) {
 			mvStack[i] = new ScoredBreakthroughMove(0, 0, 0, 0, 0);
 		}
+		qMoves = new BreakthroughMove [MAX_QDEPTH][];
+		for (int i=0; i<MAX_QDEPTH; i++) {
+			qMoves[i] = BreakthroughBits.newMoveArray();
+		}
+		pickers = new MovePicker [MAX_DEPTH];
+		for (int i=0; i<MAX_DEPTH; i++) {
+			pickers[i] = new MovePicker(stageReached);
+		}
+		killers = new int [MAX_DEPTH][2];
+		history = new int [2][1 << 16];
+		hashMoves = new EvalCache(EvalCache.DEFAULT_ENTRIES);
+		if (new File(WEIGHTS_FILE).exists()) {
+			loadWeights(WEIGHTS_FILE);
+		}
+		if (new File(NNUEEval.DEFAULT_FILE).exists()) {
+			NNUEEval net = NNUEEval.load(NNUEEval.DEFAULT_FILE);
+			if (net != null) {
+				net.attach((BreakthroughState)gameState);
+			}
+		}
+		// evalBoard alone costs about as much as a cache probe, so by
+		// default the cache is only used in front of the network.
+		Params params = BreakthroughState.gameParams;
+		int cacheEntries = params.defined("EVALCACHE") ? params.integer("EVALCACHE") :
+				((BreakthroughState)gameState).accumulator != null ? EvalCache.DEFAULT_ENTRIES : 0;
+		evalCache = cacheEntries > 0 ? new EvalCache(cacheEntries) : null;
 	}
 	
 	protected class ScoredBreakthroughMove extends BreakthroughMove {
@@ -69,16 +130,16 @@ public class ABBreakthroughPlayer2 extends GamePlayer {
 		boolean isTerminal = true;
 		
 		if (status == GameState.Status.HOME_WIN) {
-			mv.set(0,0,6,0, MAX_SCORE);
+			mv.set(0,0,BreakthroughState.N-1,0, MAX_SCORE);
 		} else if (status == GameState.Status.AWAY_WIN) {
-			mv.set(6,0,6,6, - MAX_SCORE);
+			mv.set(BreakthroughState.N-1,0,BreakthroughState.N-1,BreakthroughState.N-1, - MAX_SCORE);
 		}else {
 			isTerminal = false;
 		}
 		return isTerminal;
 	}
 	
-	private static int eval_numpieces(BreakthroughState brd) {
+	static int eval_numpieces(BreakthroughState brd) {
 		int num_home = 0;
 		int num_away = 0;
 		for(int i=0; i<BreakthroughState.N; i++) {
@@ -92,7 +153,7 @@ public class ABBreakthroughPlayer2 extends GamePlayer {
 		return num_home - num_away;
 	}
 	
-	private static int eval_numus(BreakthroughState brd) {
+	static int eval_numus(BreakthroughState brd) {
 		int num_home = 0;
 		int num_away = 0;
 		for(int i=0; i<BreakthroughState.N; i++) {
@@ -108,7 +169,7 @@ public class ABBreakthroughPlayer2 extends GamePlayer {
 			else return -num_away;
 	}
 	
-	private static int eval_coverage(BreakthroughState brd) {
+	static int eval_coverage(BreakthroughState brd) {
 		int num_home = 0;
 		int num_away = 0;
 		int N = BreakthroughState.N;
@@ -141,7 +202,7 @@ public class ABBreakthroughPlayer2 extends GamePlayer {
 		return num_home - num_away;
 	}
 	
-	private static int eval_win(BreakthroughState brd) {
+	static int eval_win(BreakthroughState brd) {
 		int home = 0, away = 0;
 		int N = BreakthroughState.N;
 		for(int i=0; i<N; i++) {
@@ -162,12 +223,162 @@ public class ABBreakthroughPlayer2 extends GamePlayer {
 		return home - away;
 	}
 	
+	/**
+	 * Reads evaluation weights, one NAME=value line per term as written
+	 * by EvalTuner. Terms missing from the file keep their weights.
+	 * @param fname File to be read
+	 */
+	public static void loadWeights(String fname)
+	{
+		Params params = new Params(fname);
+		for (int i=0; i<NUM_TERMS; i++) {
+			if (params.defined(TERM_NAMES[i])) {
+				weights[i] = params.integer(TERM_NAMES[i]);
+			}
+		}
+	}
+	/**
+	 * Fills terms with the unweighted value of each evalBoard term.
+	 */
+	static void evalTerms(BreakthroughState brd, int [] terms)
+	{
+		terms[MATERIAL] = brd.materialDiff();
+		terms[PIECE_SQUARE] = brd.pieceSquare;
+		terms[ADVANCE] = brd.advanceDiff();
+		terms[COVERAGE] = BreakthroughBits.coverage(brd);
+		terms[BACK_ROW] = BreakthroughBits.win(brd);
+		terms[NUM_US] = BreakthroughBits.numUs(brd);
+		terms[STEADY] = BreakthroughBits.steadyBackLine(brd);
+	}
 	//Evaluation Function
-	private static int evalBoard(BreakthroughState brd){
-		int h1 = eval_numpieces(brd);
-		int h3 = eval_coverage(brd);
-		int h4 = eval_win(brd);
-		return h1;
+	// Material, piece-square and advancement come from the running sums
+	// kept by BreakthroughState; the rest are mask and popcount operations
+	// on its bitboards, so no term rescans the board.
+	static int evalBoard(BreakthroughState brd){
+		if (brd.accumulator != null) {
+			return brd.accumulator.evaluate();
+		}
+		int [] w = weights;
+		return w[MATERIAL] * brd.materialDiff() +
+				w[PIECE_SQUARE] * brd.pieceSquare +
+				w[ADVANCE] * brd.advanceDiff() +
+				w[COVERAGE] * BreakthroughBits.coverage(brd) +
+				w[BACK_ROW] * BreakthroughBits.win(brd) +
+				w[NUM_US] * BreakthroughBits.numUs(brd) +
+				w[STEADY] * BreakthroughBits.steadyBackLine(brd);
+	}
+	/**
+	 * evalBoard, looked up in evalCache first when there is one. The hand
+	 * weighted terms score a position and its mirror image the same, so
+	 * they are cached by canonicalHash; the network is not symmetric, so
+	 * with one attached the cache is keyed by the position's own hash.
+	 */
+	protected int cachedEval(BreakthroughState brd)
+	{
+		if (evalCache == null) {
+			return evalBoard(brd);
+		}
+		long key = brd.accumulator != null ? brd.hash : brd.canonicalHash();
+		int score = evalCache.probe(key);
+		if (score == EvalCache.MISS) {
+			score = evalBoard(brd);
+			evalCache.store(key, score);
+		}
+		return score;
+	}
+	/**
+	 * Capture search below depthLimit. The side to move may stand pat on
+	 * the static evaluation, or try the moves that win material by SEE
+	 * or reach the goal row; even trades and losing moves are pruned.
+	 * @return score from HOME's point of view
+	 */
+	private int quiesce(BreakthroughState brd, int qDepth, double alpha, double beta)
+	{
+		if (brd.getStatus() == GameState.Status.HOME_WIN) {
+			return MAX_SCORE;
+		} else if (brd.getStatus() == GameState.Status.AWAY_WIN) {
+			return -MAX_SCORE;
+		}
+		int best = cachedEval(brd);
+		if (qDepth == MAX_QDEPTH) {
+			return best;
+		}
+		boolean toMaximize = brd.getWho() == GameState.Who.HOME;
+		if (toMaximize ? best >= beta : best <= alpha) {
+			return best;
+		}
+		if (toMaximize) {
+			alpha = Math.max(alpha, best);
+		} else {
+			beta = Math.min(beta, best);
+		}
+		BreakthroughMove [] mvs = qMoves[qDepth];
+		int cnt = BreakthroughBits.generateMoves(brd, mvs);
+		int goal = toMaximize ? BreakthroughState.N-1 : 0;
+		for (int i=0; i<cnt; i++) {
+			BreakthroughMove mv = mvs[i];
+			if (mv.endingRow != goal && BreakthroughBits.see(brd, mv) <= 0) {
+				continue;
+			}
+			char captured = brd.board[mv.endingRow][mv.endingCol];
+			brd.makeMove(mv);
+			nodes++;
+			int score = quiesce(brd, qDepth+1, alpha, beta);
+			brd.undoMove(mv, captured);
+			if (toMaximize ? score > best : score < best) {
+				best = score;
+				if (toMaximize ? best >= beta : best <= alpha) {
+					break;
+				}
+				if (toMaximize) {
+					alpha = Math.max(alpha, best);
+				} else {
+					beta = Math.min(beta, best);
+				}
+			}
+		}
+		return best;
+	}
+	/**
+	 * Fixed depth search from brd, without getMove's depth and time rules.
+	 * @return Best move found, with its score
+	 */
+	ScoredBreakthroughMove searchToDepth(BreakthroughState brd, int depth)
+	{
+		depthLimit = depth;
+		hashMoves.clear();
+		clearOrdering();
+		alphaBeta(brd, 0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		return mvStack[0];
+	}
+	/**
+	 * Forgets the killer moves and history scores of the last search.
+	 */
+	private void clearOrdering()
+	{
+		for (int [] k : killers) {
+			Arrays.fill(k, MovePicker.NONE);
+		}
+		for (int [] h : history) {
+			Arrays.fill(h, 0);
+		}
+	}
+	/**
+	 * Remembers a quiet move that caused a cutoff, as a killer for its
+	 * ply and in the history of its side.
+	 */
+	private void recordCutoff(BreakthroughState brd, int mv, int currDepth)
+	{
+		if (FastBoard.isCapture(mv)) {
+			return;
+		}
+		int [] k = killers[currDepth];
+		if (k[0] != mv) {
+			k[1] = k[0];
+			k[0] = mv;
+		}
+		int left = depthLimit - currDepth;
+		history[brd.getWho() == GameState.Who.HOME ? 0 : 1][mv & 0xFFFF] += left * left;
 	}
 	/**
 	 * Performs alpha beta pruning.
@@ -181,11 +392,16 @@ public class ABBreakthroughPlayer2 extends GamePlayer {
 	{
 		boolean toMaximize = (brd.getWho() == GameState.Who.HOME);
 		boolean toMinimize = !toMaximize;
+		nodes++;
 		
 		boolean isTerminal = terminalValue(brd, mvStack[currDepth]);
 		
 		if(currDepth == depthLimit){
-			mvStack[currDepth].set(0,0,0,0,evalBoard(brd));
+			if (quiescence) {
+				mvStack[currDepth].set(0,0,0,0,quiesce(brd, 0, alpha, beta));
+			} else {
+				mvStack[currDepth].set(0,0,0,0,cachedEval(brd));
+			}
 		}else if (!isTerminal){
 			//ScoredBreakthroughMove tempMv = new ScoredBreakthroughMove(0,0,0,0, Double.MAX_VALUE);
 			double bestScore = (toMaximize ? 
@@ -194,91 +410,53 @@ public class ABBreakthroughPlayer2 extends GamePlayer {
 			ScoredBreakthroughMove nextMove = mvStack[currDepth+1];
 			
 			bestMove.set(0,0,0,0, bestScore);
-			GameState.Who currTurn = brd.getWho();
-			char opp = brd.who == GameState.Who.HOME ?
-					BreakthroughState.awaySym : BreakthroughState.homeSym;
-			
-			ArrayList<BreakthroughMove> moves = new ArrayList<BreakthroughMove>();
-			ArrayList<BreakthroughMove> genericMoves = new ArrayList<BreakthroughMove>();
-			ArrayList<BreakthroughMove> takeMoves = new ArrayList<BreakthroughMove>();
-			BreakthroughMove mv = new BreakthroughMove();
-			int dir = brd.getWho() == GameState.Who.HOME ? +1 : -1;
 			
-			//Add all possible moves to arraylist so we can alphabeta them.
-			for (int r=0; r<BreakthroughState.N; r++) {
-				for (int c=0; c<BreakthroughState.N; c++) {
-					mv.startRow = r;
-					mv.startCol = c;
-					mv.endingRow = r+dir; 
-					mv.endingCol = c;
-					if (brd.moveOK(mv)) {
-						if (brd.board[mv.endingRow][mv.endingCol] == opp) {
-							takeMoves.add((BreakthroughMove)mv.clone());
-						}
-						else genericMoves.add((BreakthroughMove)mv.clone());
-					}
-					mv.endingRow = r+dir; mv.endingCol = c+1;
-					if (brd.moveOK(mv)) {
-						if (brd.board[mv.endingRow][mv.endingCol] == opp) {
-							takeMoves.add((BreakthroughMove)mv.clone());
-						}
-						else genericMoves.add((BreakthroughMove)mv.clone());
-					}
-					mv.endingRow = r+dir; mv.endingCol = c-1;
-					if (brd.moveOK(mv)) {
-						if (brd.board[mv.endingRow][mv.endingCol] == opp) {
-							takeMoves.add((BreakthroughMove)mv.clone());
-						}
-						else genericMoves.add((BreakthroughMove)mv.clone());
-					}
-				}
-			}
-			
-			moves.addAll(takeMoves);
-			moves.addAll(genericMoves);
+			// Moves come a stage at a time, so a cutoff on an early move
+			// saves generating (and ordering) the rest.
+			MovePicker picker = pickers[currDepth];
+			int hashMove = hashMoves.probe(brd.hash);
+			picker.init(brd, seeOrdering, hashMove == EvalCache.MISS ? MovePicker.NONE : hashMove,
+						killers[currDepth], history[toMaximize ? 0 : 1]);
+			int best = MovePicker.NONE;
 			
-			for(int i=0; i<moves.size(); i++) {
-				BreakthroughMove tmp = moves.get(i);
+			for (int m = picker.next(); m != MovePicker.NONE; m = picker.next()) {
+				BreakthroughMove tmp = picker.move;
 				char tmpchar = brd.board[tmp.endingRow][tmp.endingCol];
 				brd.makeMove(tmp);
 				
 				alphaBeta(brd, currDepth+1, alpha, beta);
 				
 				//Undo Move
-				/* What I will do instead to undo the move is set the board at the 
-				 * temp's end row/end col that there is nothing there and at the
-				 * temp's start row/col that there is a home or away piece, depending
-				 * and then subtract 1 from the number of moves				
-				 */
-				brd.who = currTurn;
-				char PLAYER = brd.who == GameState.Who.HOME ? BreakthroughState.homeSym : BreakthroughState.awaySym;
-				
-				brd.board[tmp.endingRow][tmp.endingCol] = tmpchar;
-				brd.board[tmp.startRow][tmp.startCol] = PLAYER;
-				brd.numMoves--;
-				brd.status = GameState.Status.GAME_ON;
+				brd.undoMove(tmp, tmpchar);
 				
 				
 				// Check out the results, relative to what we've seen before
 				if (toMaximize && nextMove.score > bestMove.score) {
 					bestMove.set(tmp.startRow, tmp.startCol, tmp.endingRow, tmp.endingCol, nextMove.score);
+					best = m;
 				} else if (!toMaximize && nextMove.score < bestMove.score) {
 					bestMove.set(tmp.startRow, tmp.startCol, tmp.endingRow, tmp.endingCol, nextMove.score);
+					best = m;
 				}
 				
 				// Update alpha and beta. Perform pruning, if possible.
 				if (toMinimize) {
 					beta = Math.min(bestMove.score, beta);
 					if (bestMove.score <= alpha || bestMove.score == -MAX_SCORE) {
-						return;
+						recordCutoff(brd, m, currDepth);
+						break;
 					}
 				} else {
 					alpha = Math.max(bestMove.score, alpha);
 					if (bestMove.score >= beta || bestMove.score == MAX_SCORE) {
-						return;
+						recordCutoff(brd, m, currDepth);
+						break;
 					}
 				}
 			}
+			if (best != MovePicker.NONE) {
+				hashMoves.store(brd.hash, best);
+			}
 		}
 	}
 	public void timeOfLastMove(double secs){
@@ -308,6 +486,8 @@ public class ABBreakthroughPlayer2 extends GamePlayer {
 				depthLimit = origDepth;
 			}
 		}
+		nodes = 0;
+		clearOrdering();
 		alphaBeta((BreakthroughState)brd, 0, Double.NEGATIVE_INFINITY, 
 										 Double.POSITIVE_INFINITY);
 		System.out.println(mvStack[0].score);
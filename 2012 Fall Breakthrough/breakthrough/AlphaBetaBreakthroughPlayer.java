@@ -120,18 +120,7 @@ public class AlphaBetaBreakthroughPlayer extends GamePlayer {
 					alphaBeta(brd, currDepth+1, alpha, beta);
 
 					//Undo Move
-					/* What I will do instead to undo the move is set the board at the 
-					 * temp's end row/end col that there is nothing there and at the
-					 * temp's start row/col that there is a home or away piece, depending
-					 * and then subtract 1 from the number of moves				
-					 */
-					brd.who = currTurn;
-					char PLAYER = brd.who == GameState.Who.HOME ? BreakthroughState.homeSym : BreakthroughState.awaySym;
-
-					brd.board[tmp.endingRow][tmp.endingCol] = tmpchar;
-					brd.board[tmp.startRow][tmp.startCol] = PLAYER;
-					brd.numMoves--;
-					brd.status = GameState.Status.GAME_ON;
+					brd.undoMove(tmp, tmpchar);
 
 
 					// Check out the results, relative to what we've seen before
@@ -188,9 +177,9 @@ public class AlphaBetaBreakthroughPlayer extends GamePlayer {
 		boolean isTerminal = true;
 		
 		if (status == GameState.Status.HOME_WIN) {
-			mv.set(0,0,6,0, MAX_SCORE);
+			mv.set(0,0,BreakthroughState.N-1,0, MAX_SCORE);
 		} else if (status == GameState.Status.AWAY_WIN) {
-			mv.set(6,0,6,6, - MAX_SCORE);
+			mv.set(BreakthroughState.N-1,0,BreakthroughState.N-1,BreakthroughState.N-1, - MAX_SCORE);
 		}else {
 			isTerminal = false;
 		}
@@ -260,44 +249,27 @@ public class AlphaBetaBreakthroughPlayer extends GamePlayer {
 		return num_home - num_away;
 	}
 	
-	private static int eval_steadybackline(BreakthroughState brd) {
+	static int eval_steadybackline(BreakthroughState brd) {
 		int home = 0, away = 0;
-		if(brd.board[1][0] == BreakthroughState.homeSym)
-			home += 2;
-		else if(brd.board[1][0] == BreakthroughState.awaySym)
-			away += 2;
-		if(brd.board[3][0] == BreakthroughState.homeSym)
-			home += 2;
-		else if(brd.board[3][0] == BreakthroughState.awaySym)
-			away += 2;
-		if(brd.board[5][0] == BreakthroughState.homeSym)
-			home += 2;
-		else if(brd.board[5][0] == BreakthroughState.awaySym)
-			away += 2;
-		
-		if(brd.board[1][6] == BreakthroughState.homeSym)
-			home += 2;
-		else if(brd.board[1][6] == BreakthroughState.awaySym)
-			away += 2;
-		if(brd.board[3][6] == BreakthroughState.homeSym)
-			home += 2;
-		else if(brd.board[3][6] == BreakthroughState.awaySym)
-			away += 2;
-		if(brd.board[5][6] == BreakthroughState.homeSym)
-			home += 2;
-		else if(brd.board[5][6] == BreakthroughState.awaySym)
-			away += 2;
-		
+		int N = BreakthroughState.N;
+		for (int r=1; r<N-1; r+=2) {
+			for (int c=0; c<N; c+=N-1) {
+				if(brd.board[r][c] == BreakthroughState.homeSym)
+					home += 2;
+				else if(brd.board[r][c] == BreakthroughState.awaySym)
+					away += 2;
+			}
+		}
 		return away - home;
 	}
 	
 	
 	//Evaluation Function
 	private static int evalBoard(BreakthroughState brd){
-		int h1 = eval_numpieces(brd);
-		//int h3 = eval_coverage(brd);
-		//int h4 = eval_steadybackline(brd);
-		return h1;
+		int h1 = brd.materialDiff();
+		int h3 = BreakthroughBits.coverage(brd);
+		int h4 = BreakthroughBits.steadyBackLine(brd);
+		return 10 * h1 + h3 - h4;
 	}
 	/**
 	 * Performs alpha beta pruning.
@@ -445,18 +417,7 @@ public class AlphaBetaBreakthroughPlayer extends GamePlayer {
 			AlphaBetaThread t1 = new AlphaBetaThread(i, (BreakthroughState)brd.clone());
 			threads.add(t1);
 			//Undo Move
-			/* What I will do instead to undo the move is set the board at the 
-			 * temp's end row/end col that there is nothing there and at the
-			 * temp's start row/col that there is a home or away piece, depending
-			 * and then subtract 1 from the number of moves				
-			*/
-			brd.who = curWho;
-			char PLAYER = brd.who == GameState.Who.HOME ? BreakthroughState.homeSym : BreakthroughState.awaySym;
-			
-			brd.board[tmp.endingRow][tmp.endingCol] = tmpchar;
-			brd.board[tmp.startRow][tmp.startCol] = PLAYER;
-			brd.numMoves--;
-			brd.status = GameState.Status.GAME_ON;  
+			brd.undoMove(tmp, tmpchar);  
 			i++; 
 		} 
 	}
@@ -0,0 +1,20 @@
+package breakthrough;
+
+/**
+ * Move generation and evaluation on the single-long bitboards of
+ * BreakthroughState (so only for N <= 8). KernelCompiler provides one
+ * specialized for the configured board size, or a generic one.
+ */
+public interface BitKernel {
+	/**
+	 * Fills mvs with the legal moves of the side to move, captures first,
+	 * encoded as in FastBoard (from | to << 8, plus FastBoard.CAPTURE).
+	 * @return The number of moves
+	 */
+	int generateMoves(long home, long away, boolean homeToMove, int [] mvs);
+	/**
+	 * ABBreakthroughPlayer2.evalBoard, without a network, using weights w
+	 */
+	int evaluate(BreakthroughState brd, int [] w);
+	String name();
+}
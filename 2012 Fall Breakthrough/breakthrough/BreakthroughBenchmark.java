@@ -0,0 +1,775 @@
+package breakthrough;
+import game.*;
+
+import java.util.*;
+
+/**
+ * Stand-alone timing harness for the Breakthrough engines. Run from the
+ * project directory (so config/ can be found) with the name of the
+ * comparison to run, e.g. "java breakthrough.BreakthroughBenchmark eval".
+ * With no arguments every comparison is run.
+ */
+public class BreakthroughBenchmark {
+	public static final int NUM_POSITIONS = 20;
+	public static final int SEARCH_DEPTH = 4;
+	public static final int MAX_MOVES = BreakthroughBits.MAX_MOVES;
+
+	// Fixed depth searches for the comparisons
+	private static final EvalMatch search = new EvalMatch();
+
+	/**
+	 * Searches every position to the given depth with the given evaluation.
+	 * @return nodes per second
+	 */
+	public static double nodesPerSec(List<BreakthroughState> positions, int depth, EvalMatch.Eval ev)
+	{
+		search.nodes = 0;
+		long start = System.nanoTime();
+		for (BreakthroughState pos : positions) {
+			BreakthroughState brd = (BreakthroughState)pos.clone();
+			search.alphaBeta(brd, depth, ev);
+		}
+		double secs = (System.nanoTime() - start) / 1e9;
+		return search.nodes / secs;
+	}
+	/**
+	 * Rescanning material count against the O(1) evaluations built from
+	 * the running sums. Every evaluation is timed on the same leaves, the
+	 * ones a fixed depth search with eval_numpieces reaches, so the
+	 * figures are the cost of the evaluation alone and not of searching
+	 * different trees.
+	 */
+	public static void compareIncrementalEval()
+	{
+		final int MAX_LEAVES = 200000, REPS = 20;
+		List<BreakthroughState> positions = EvalMatch.randomPositions(NUM_POSITIONS, 6, 16, 1);
+		final int [] w = ABBreakthroughPlayer2.weights;
+		final ArrayList<BreakthroughState> leaves = new ArrayList<BreakthroughState>();
+		EvalMatch.Eval record = new EvalMatch.Eval() {
+			public int eval(BreakthroughState brd)
+			{
+				if (leaves.size() < MAX_LEAVES) {
+					leaves.add((BreakthroughState)brd.clone());
+				}
+				return ABBreakthroughPlayer2.eval_numpieces(brd);
+			}
+		};
+		for (BreakthroughState pos : positions) {
+			search.alphaBeta((BreakthroughState)pos.clone(), SEARCH_DEPTH, record);
+		}
+		BreakthroughState [] leafArray = leaves.toArray(new BreakthroughState [0]);
+		int mismatches = 0;
+		for (BreakthroughState leaf : leafArray) {
+			if (leaf.materialDiff() != ABBreakthroughPlayer2.eval_numpieces(leaf)) {
+				mismatches++;
+			}
+		}
+		if (mismatches > 0) {
+			System.err.printf("Running material count disagrees with scan on %d leaves%n", mismatches);
+		}
+
+		String [] names = { "eval_numpieces scan", "running sums", "evalBoard" };
+		EvalMatch.Eval [] evals = {
+			new EvalMatch.Eval() {
+				public int eval(BreakthroughState brd)
+				{ return ABBreakthroughPlayer2.eval_numpieces(brd); }
+			},
+			new EvalMatch.Eval() {
+				public int eval(BreakthroughState brd)
+				{
+					return w[ABBreakthroughPlayer2.MATERIAL] * brd.materialDiff() +
+							w[ABBreakthroughPlayer2.PIECE_SQUARE] * brd.pieceSquare +
+							w[ABBreakthroughPlayer2.ADVANCE] * brd.advanceDiff();
+				}
+			},
+			new EvalMatch.Eval() {
+				public int eval(BreakthroughState brd)
+				{ return ABBreakthroughPlayer2.evalBoard(brd); }
+			},
+		};
+		System.out.printf("%d leaves of depth %d searches%n", leafArray.length, SEARCH_DEPTH);
+		double scanNs = 0;
+		for (int e=0; e<evals.length; e++) {
+			nsPerEval(leafArray, 3, evals[e]);
+			double ns = nsPerEval(leafArray, REPS, evals[e]);
+			if (e == 0) {
+				scanNs = ns;
+			}
+			System.out.printf("%-20s %6.1f ns/eval (%.2fx)%n", names[e] + ":", ns, scanNs / ns);
+		}
+	}
+	/**
+	 * Times one evaluation over every position.
+	 * @return nanoseconds per call
+	 */
+	public static double nsPerEval(BreakthroughState [] positions, int reps, EvalMatch.Eval ev)
+	{
+		long sum = 0;
+		long start = System.nanoTime();
+		for (int k=0; k<reps; k++) {
+			for (int i=0; i<positions.length; i++) {
+				sum += ev.eval(positions[i]);
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		if (sum == 42) {
+			System.out.print("");	// keep the JIT from discarding the loop
+		}
+		return (double)elapsed / ((long)reps * positions.length);
+	}
+	/**
+	 * Checks the bitboard heuristics against the char [][] loops on a large
+	 * random position set, then times each pair.
+	 */
+	public static void compareBitEvals()
+	{
+		final int NUM = 100000;
+		BreakthroughState [] positions =
+				EvalMatch.randomPositions(NUM, 0, 4 * BreakthroughState.N, 2).toArray(new BreakthroughState [0]);
+		String [] names = { "numpieces", "numus", "coverage", "win", "steadybackline" };
+		EvalMatch.Eval [] old = {
+			new EvalMatch.Eval() { public int eval(BreakthroughState b) { return ABBreakthroughPlayer2.eval_numpieces(b); } },
+			new EvalMatch.Eval() { public int eval(BreakthroughState b) { return ABBreakthroughPlayer2.eval_numus(b); } },
+			new EvalMatch.Eval() { public int eval(BreakthroughState b) { return ABBreakthroughPlayer2.eval_coverage(b); } },
+			new EvalMatch.Eval() { public int eval(BreakthroughState b) { return ABBreakthroughPlayer2.eval_win(b); } },
+			new EvalMatch.Eval() { public int eval(BreakthroughState b) { return AlphaBetaBreakthroughPlayer.eval_steadybackline(b); } },
+		};
+		EvalMatch.Eval [] bits = {
+			new EvalMatch.Eval() { public int eval(BreakthroughState b) { return BreakthroughBits.numPieces(b); } },
+			new EvalMatch.Eval() { public int eval(BreakthroughState b) { return BreakthroughBits.numUs(b); } },
+			new EvalMatch.Eval() { public int eval(BreakthroughState b) { return BreakthroughBits.coverage(b); } },
+			new EvalMatch.Eval() { public int eval(BreakthroughState b) { return BreakthroughBits.win(b); } },
+			new EvalMatch.Eval() { public int eval(BreakthroughState b) { return BreakthroughBits.steadyBackLine(b); } },
+		};
+		for (int h=0; h<names.length; h++) {
+			int mismatches = 0;
+			for (BreakthroughState pos : positions) {
+				if (old[h].eval(pos) != bits[h].eval(pos)) {
+					mismatches++;
+				}
+			}
+			nsPerEval(positions, 3, old[h]);
+			nsPerEval(positions, 3, bits[h]);
+			double oldNs = nsPerEval(positions, 10, old[h]);
+			double bitNs = nsPerEval(positions, 10, bits[h]);
+			System.out.printf("%-15s %8.1f ns  bits %6.1f ns  (%5.1fx)  %d/%d mismatches%n",
+					names[h], oldNs, bitNs, oldNs / bitNs, mismatches, NUM);
+		}
+	}
+	/**
+	 * Checks that the incrementally updated accumulator matches a fresh
+	 * one after searching, and compares search speed against evalBoard.
+	 * The network has random weights; only its speed matters here.
+	 */
+	public static void compareNNUE()
+	{
+		final NNUEEval net = NNUEEval.random(32, 3);
+		List<BreakthroughState> plain = EvalMatch.randomPositions(NUM_POSITIONS, 6, 16, 1);
+		List<BreakthroughState> withNet = new ArrayList<BreakthroughState>();
+		for (BreakthroughState pos : plain) {
+			BreakthroughState brd = (BreakthroughState)pos.clone();
+			net.attach(brd);
+			withNet.add(brd);
+		}
+		EvalMatch.Eval nnue = new EvalMatch.Eval() {
+			public int eval(BreakthroughState brd)
+			{ return brd.accumulator.evaluate(); }
+		};
+		EvalMatch.Eval hand = new EvalMatch.Eval() {
+			public int eval(BreakthroughState brd)
+			{ return ABBreakthroughPlayer2.evalBoard(brd); }
+		};
+		nodesPerSec(plain, SEARCH_DEPTH-1, hand);
+		nodesPerSec(withNet, SEARCH_DEPTH-1, nnue);
+		double handRate = nodesPerSec(plain, SEARCH_DEPTH, hand);
+		double nnueRate = nodesPerSec(withNet, SEARCH_DEPTH, nnue);
+
+		int mismatches = 0;
+		for (BreakthroughState pos : withNet) {
+			BreakthroughState brd = (BreakthroughState)pos.clone();
+			NNUEEval.Accumulator acc = net.attach(brd);
+			search.alphaBeta(brd, SEARCH_DEPTH, nnue);
+			NNUEEval.Accumulator fresh = net.newAccumulator();
+			fresh.refresh(brd);
+			if (!Arrays.equals(acc.values, fresh.values)) {
+				mismatches++;
+			}
+		}
+		System.out.printf("evalBoard:      %12.0f nodes/sec%n", handRate);
+		System.out.printf("NNUE (%d hidden):%11.0f nodes/sec (%.2fx)  %d accumulator mismatches%n",
+						net.hidden, nnueRate, nnueRate / handRate, mismatches);
+	}
+	/**
+	 * Cost of an n-tuple evaluation, per call and per table lookup.
+	 */
+	public static void timeNTuple()
+	{
+		final NTupleEval net = new NTupleEval();
+		BreakthroughState [] positions =
+				EvalMatch.randomPositions(100000, 0, 4 * BreakthroughState.N, 2).toArray(new BreakthroughState [0]);
+		EvalMatch.Eval ntuple = new EvalMatch.Eval() {
+			public int eval(BreakthroughState brd)
+			{ return net.evaluate(brd); }
+		};
+		nsPerEval(positions, 3, ntuple);
+		double ns = nsPerEval(positions, 10, ntuple);
+		int lookups = 2 * net.numInstances;
+		System.out.printf("n-tuple eval: %.1f ns (%d lookups, %.2f ns each)%n", ns, lookups, ns / lookups);
+	}
+	/**
+	 * Leaf evaluations per second for the children of a set of positions,
+	 * one evalBoard call per child against whole child lists scored by
+	 * LeafBatch's scalar and vector evaluators.
+	 */
+	public static void compareLeafBatch()
+	{
+		final int NUM = 4000, REPS = 50;
+		List<BreakthroughState> positions = EvalMatch.randomPositions(NUM, 0, 4 * BreakthroughState.N, 4);
+		LeafBatch [] batches = new LeafBatch [NUM];
+		ArrayList<BreakthroughState> children = new ArrayList<BreakthroughState>();
+		ArrayList<Integer> expected = new ArrayList<Integer>();
+		BreakthroughMove [] mvs = BreakthroughBits.newMoveArray();
+		for (int p=0; p<NUM; p++) {
+			BreakthroughState brd = positions.get(p);
+			int cnt = BreakthroughBits.generateMoves(brd, mvs);
+			batches[p] = new LeafBatch(cnt);
+			for (int i=0; i<cnt; i++) {
+				char captured = brd.board[mvs[i].endingRow][mvs[i].endingCol];
+				brd.makeMove(mvs[i]);
+				batches[p].add(brd);
+				children.add((BreakthroughState)brd.clone());
+				expected.add(ABBreakthroughPlayer2.evalBoard(brd));
+				brd.undoMove(mvs[i], captured);
+			}
+		}
+		BreakthroughState [] leaves = children.toArray(new BreakthroughState [0]);
+		EvalMatch.Eval hand = new EvalMatch.Eval() {
+			public int eval(BreakthroughState brd)
+			{ return ABBreakthroughPlayer2.evalBoard(brd); }
+		};
+		nsPerEval(leaves, 3, hand);
+		double handRate = 1e9 / nsPerEval(leaves, REPS, hand);
+		System.out.printf("evalBoard per leaf: %12.0f leaf evals/sec%n", handRate);
+
+		LeafBatch.Evaluator [] evaluators = { LeafBatch.SCALAR, LeafBatch.VECTOR };
+		for (LeafBatch.Evaluator ev : evaluators) {
+			if (ev == null) {
+				System.out.println("vector: not available (build vector/ and run with --add-modules jdk.incubator.vector)");
+				continue;
+			}
+			int mismatches = 0, k = 0;
+			for (LeafBatch batch : batches) {
+				ev.evaluate(batch);
+				for (int i=0; i<batch.size; i++, k++) {
+					if (batch.scores[i] != expected.get(k)) {
+						mismatches++;
+					}
+				}
+			}
+			for (int r=0; r<3; r++) {
+				for (LeafBatch batch : batches) {
+					ev.evaluate(batch);
+				}
+			}
+			long start = System.nanoTime();
+			for (int r=0; r<REPS; r++) {
+				for (LeafBatch batch : batches) {
+					ev.evaluate(batch);
+				}
+			}
+			double rate = (double)REPS * leaves.length / ((System.nanoTime() - start) / 1e9);
+			System.out.printf("batch, %-17s %12.0f leaf evals/sec (%.2fx)  %d/%d mismatches%n",
+							ev.name() + ":", rate, rate / handRate, mismatches, leaves.length);
+		}
+	}
+	/**
+	 * Iteratively deepens every position to each depth in turn, without
+	 * and with an EvalCache in front of the evaluation, and reports the
+	 * hit rate and the time saved. The cache is cleared between positions
+	 * but kept across the iterations of one search.
+	 */
+	public static void compareEvalCache(String name, final EvalMatch.Eval ev, int maxDepth)
+	{
+		List<BreakthroughState> positions = EvalMatch.randomPositions(NUM_POSITIONS, 6, 16, 1);
+		final EvalCache cache = new EvalCache(EvalCache.DEFAULT_ENTRIES);
+		EvalMatch.Eval cached = new EvalMatch.Eval() {
+			public int eval(BreakthroughState brd)
+			{
+				int score = cache.probe(brd.hash);
+				if (score == EvalCache.MISS) {
+					score = ev.eval(brd);
+					cache.store(brd.hash, score);
+				}
+				return score;
+			}
+		};
+		System.out.printf("%s, %d entry cache:%n", name, cache.size());
+		for (int depth=1; depth<=maxDepth; depth++) {
+			long plainNs = 0, cachedNs = 0, hits = 0, probes = 0;
+			for (int pass=0; pass<2; pass++) {		// first pass warms up
+				plainNs = cachedNs = hits = probes = 0;
+				for (BreakthroughState pos : positions) {
+					BreakthroughState brd = (BreakthroughState)pos.clone();
+					long start = System.nanoTime();
+					for (int d=1; d<=depth; d++) {
+						search.alphaBeta(brd, d, ev);
+					}
+					plainNs += System.nanoTime() - start;
+					cache.clear();
+					start = System.nanoTime();
+					for (int d=1; d<=depth; d++) {
+						search.alphaBeta(brd, d, cached);
+					}
+					cachedNs += System.nanoTime() - start;
+					hits += cache.hits;
+					probes += cache.hits + cache.misses;
+				}
+			}
+			System.out.printf("  depth %d: %9d leaf probes, %5.1f%% hits, %8.1f ms -> %8.1f ms (%+.1f%%)%n",
+							depth, probes, 100.0 * hits / probes, plainNs / 1e6, cachedNs / 1e6,
+							100.0 * (plainNs - cachedNs) / plainNs);
+		}
+	}
+	/**
+	 * Nodes ABBreakthroughPlayer2 searches to each depth with its old
+	 * ordering (captures, then quiet moves), with SEE ordering, and with
+	 * SEE ordering plus the capture search at the leaves. The first two
+	 * must agree on every score.
+	 */
+	public static void compareSEE(int maxDepth)
+	{
+		List<BreakthroughState> positions = EvalMatch.randomPositions(NUM_POSITIONS, 6, 16, 1);
+		ABBreakthroughPlayer2 player = new ABBreakthroughPlayer2("SEE", maxDepth);
+		player.init();
+		player.evalCache = null;
+		String [] names = { "captures first", "SEE ordering", "SEE + quiescence" };
+		for (int depth=2; depth<=maxDepth; depth++) {
+			long [] nodeCounts = new long [names.length];
+			long [] nanos = new long [names.length];
+			int disagreements = 0;
+			for (BreakthroughState pos : positions) {
+				double plainScore = 0;
+				for (int k=0; k<names.length; k++) {
+					player.seeOrdering = k > 0;
+					player.quiescence = k > 1;
+					player.nodes = 0;
+					BreakthroughState brd = (BreakthroughState)pos.clone();
+					long start = System.nanoTime();
+					double score = player.searchToDepth(brd, depth).score;
+					nanos[k] += System.nanoTime() - start;
+					nodeCounts[k] += player.nodes;
+					if (k == 0) {
+						plainScore = score;
+					} else if (k == 1 && score != plainScore) {
+						disagreements++;
+					}
+				}
+			}
+			System.out.printf("depth %d:", depth);
+			for (int k=0; k<names.length; k++) {
+				System.out.printf("  %s %9d nodes %7.1f ms", names[k], nodeCounts[k], nanos[k] / 1e6);
+			}
+			System.out.printf("  (%.2fx fewer nodes, %d score disagreements)%n",
+							(double)nodeCounts[0] / nodeCounts[1], disagreements);
+		}
+	}
+	/**
+	 * Hit rates of evalBoard caches of several sizes keyed by hash and by
+	 * canonicalHash, over one iteratively deepened search of each
+	 * position, for middle game positions and for positions at most two
+	 * plies from the (symmetric) start. Also checks that mirrored positions
+	 * share a canonical hash and an evaluation.
+	 */
+	public static void compareMirrorKeys(int depth)
+	{
+		int asymmetric = 0;
+		for (BreakthroughState pos : EvalMatch.randomPositions(10000, 0, 4 * BreakthroughState.N, 5)) {
+			BreakthroughState mirrored = (BreakthroughState)pos.clone();
+			for (int r=0; r<BreakthroughState.N; r++) {
+				for (int c=0; c<BreakthroughState.N; c++) {
+					mirrored.board[r][BreakthroughState.N-1-c] = pos.board[r][c];
+				}
+			}
+			mirrored.recomputeTotals();
+			if (mirrored.canonicalHash() != pos.canonicalHash() ||
+				ABBreakthroughPlayer2.evalBoard(mirrored) != ABBreakthroughPlayer2.evalBoard(pos)) {
+				asymmetric++;
+			}
+		}
+		System.out.printf("%d of 10000 mirrored positions differ in canonical hash or evalBoard%n", asymmetric);
+		System.out.println("middle game:");
+		compareMirrorKeys(EvalMatch.randomPositions(NUM_POSITIONS, 6, 16, 1), depth);
+		System.out.println("opening:");
+		compareMirrorKeys(EvalMatch.randomPositions(NUM_POSITIONS, 0, 2, 1), depth);
+	}
+	private static void compareMirrorKeys(List<BreakthroughState> positions, int depth)
+	{
+		for (int size=1<<10; size<=1<<16; size<<=2) {
+			double [] hitRates = new double [2];
+			for (int k=0; k<2; k++) {
+				final boolean canonical = k == 1;
+				final EvalCache cache = new EvalCache(size);
+				EvalMatch.Eval cached = new EvalMatch.Eval() {
+					public int eval(BreakthroughState brd)
+					{
+						long key = canonical ? brd.canonicalHash() : brd.hash;
+						int score = cache.probe(key);
+						if (score == EvalCache.MISS) {
+							score = ABBreakthroughPlayer2.evalBoard(brd);
+							cache.store(key, score);
+						}
+						return score;
+					}
+				};
+				long hits = 0, probes = 0;
+				for (BreakthroughState pos : positions) {
+					BreakthroughState brd = (BreakthroughState)pos.clone();
+					cache.clear();
+					for (int d=1; d<=depth; d++) {
+						search.alphaBeta(brd, d, cached);
+					}
+					hits += cache.hits;
+					probes += cache.hits + cache.misses;
+				}
+				hitRates[k] = 100.0 * hits / probes;
+			}
+			System.out.printf("%6d entries: hash %5.1f%% hits, canonicalHash %5.1f%% hits%n",
+							size, hitRates[0], hitRates[1]);
+		}
+	}
+	/**
+	 * Per-move cost of bringing a player's state up to date: reparsing
+	 * the server's board string, against making the move string and
+	 * checking the result with matchesMsgString (what GamePlayer does in
+	 * incremental sync mode).
+	 */
+	public static void compareSync()
+	{
+		final int GAMES = 2000, REPS = 5;
+		Random rand = new Random(6);
+		BreakthroughMove [] mvs = BreakthroughBits.newMoveArray();
+		ArrayList<String []> games = new ArrayList<String []>();
+		int numMoves = 0;
+		for (int g=0; g<GAMES; g++) {
+			BreakthroughState brd = new BreakthroughState();
+			ArrayList<String> record = new ArrayList<String>();
+			while (brd.getStatus() == GameState.Status.GAME_ON) {
+				int cnt = BreakthroughBits.generateMoves(brd, mvs);
+				BreakthroughMove mv = mvs[rand.nextInt(cnt)];
+				brd.makeMove(mv);
+				record.add(mv.toString());
+				record.add(brd.msgString());
+			}
+			games.add(record.toArray(new String [0]));
+			numMoves += record.size() / 2;
+		}
+		BreakthroughState brd = new BreakthroughState();
+		long [] nanos = new long [2];
+		int mismatches = 0;
+		for (int rep=0; rep<REPS; rep++) {
+			for (int k=0; k<2; k++) {
+				long start = System.nanoTime();
+				for (String [] record : games) {
+					brd.reset();
+					for (int i=0; i<record.length; i+=2) {
+						if (k == 0) {
+							brd.parseMsgString(record[i+1]);
+						} else if (!brd.makeMove(brd.parseMove(record[i])) ||
+									!brd.matchesMsgString(record[i+1])) {
+							mismatches++;
+							brd.parseMsgString(record[i+1]);
+						}
+					}
+				}
+				nanos[k] += System.nanoTime() - start;
+			}
+		}
+		double parseNs = (double)nanos[0] / (REPS * numMoves);
+		double syncNs = (double)nanos[1] / (REPS * numMoves);
+		System.out.printf("parseMsgString:             %7.1f ns/move%n", parseNs);
+		System.out.printf("makeMove + matchesMsgString: %6.1f ns/move (%.2fx)  %d mismatches%n",
+						syncNs, parseNs / syncNs, mismatches);
+	}
+	/**
+	 * Sum of FastBoard.evaluate over the leaves depth moves ahead, so
+	 * that the evaluation can't be optimized away.
+	 */
+	private static long evalLeaves(FastBoard b, int depth, int [][] mvs)
+	{
+		if (depth == 0 || b.gameOver()) {
+			return b.evaluate();
+		}
+		int [] list = mvs[depth];
+		int cnt = b.generateMoves(list);
+		long total = 0;
+		for (int i=0; i<cnt; i++) {
+			b.makeMove(list[i]);
+			total += evalLeaves(b, depth-1, mvs);
+			b.undoMove(list[i]);
+		}
+		return total;
+	}
+	/**
+	 * FastBoard at several board sizes. At the config size its moves and
+	 * scores are first checked against BreakthroughState and evalBoard.
+	 * Each size then runs perft (move generation, make and undo) and the
+	 * same tree with every leaf evaluated; at 7 and 8 the multi-word
+	 * board is also forced, to show what the one-word path saves.
+	 */
+	public static void compareBoardSizes()
+	{
+		int N = BreakthroughState.N;
+		int [] list = new int [FastBoard.MAX_MOVES];
+		BreakthroughMove [] mvs = BreakthroughBits.newMoveArray();
+		FastBoard fast = FastBoard.create(N);
+		int moveErrs = 0, evalErrs = 0;
+		ArrayList<BreakthroughState> positions = EvalMatch.randomPositions(2000, 0, 4*N, 11);
+		for (BreakthroughState brd : positions) {
+			fast.load(brd.board, brd.getWho() == GameState.Who.HOME);
+			HashSet<String> expected = new HashSet<String>();
+			int cnt = BreakthroughBits.generateMoves(brd, mvs);
+			for (int i=0; i<cnt; i++) {
+				expected.add(mvs[i].toString());
+			}
+			int fastCnt = fast.generateMoves(list);
+			for (int i=0; i<fastCnt; i++) {
+				BreakthroughMove mv = fast.toMove(list[i]);
+				char target = brd.board[mv.endingRow][mv.endingCol];
+				if (!expected.contains(mv.toString()) ||
+					FastBoard.isCapture(list[i]) != (target != BreakthroughState.emptySym)) {
+					moveErrs++;
+				}
+			}
+			moveErrs += Math.abs(cnt - fastCnt);
+			if (fast.evaluate() != ABBreakthroughPlayer2.evalBoard(brd)) {
+				evalErrs++;
+			}
+		}
+		System.out.printf("N=%d: %d positions, %d move mismatches, %d eval mismatches%n",
+						N, positions.size(), moveErrs, evalErrs);
+		// Fixed size: evalBoard on BreakthroughState's bitboards, where the
+		// board size is a compile-time constant to the JIT. The two are
+		// timed in turn, best round of each.
+		ArrayList<FastBoard> boards = new ArrayList<FastBoard>();
+		for (BreakthroughState brd : positions) {
+			FastBoard b = FastBoard.create(N);
+			b.load(brd.board, brd.getWho() == GameState.Who.HOME);
+			boards.add(b);
+		}
+		long fixedBest = Long.MAX_VALUE, fastBest = Long.MAX_VALUE, sum = 0;
+		for (int rep=0; rep<10; rep++) {
+			long t0 = System.nanoTime();
+			for (int k=0; k<100; k++) {
+				for (BreakthroughState brd : positions) {
+					sum += ABBreakthroughPlayer2.evalBoard(brd);
+				}
+			}
+			long t1 = System.nanoTime();
+			for (int k=0; k<100; k++) {
+				for (FastBoard b : boards) {
+					sum += b.evaluate();
+				}
+			}
+			long t2 = System.nanoTime();
+			fixedBest = Math.min(fixedBest, t1 - t0);
+			fastBest = Math.min(fastBest, t2 - t1);
+		}
+		double fixedNs = (double)fixedBest / (100 * positions.size());
+		double fastNs = (double)fastBest / (100 * boards.size());
+		System.out.printf("evalBoard %.1f ns, FastBoard.evaluate %.1f ns (%.2fx)  [%d]%n",
+						fixedNs, fastNs, fixedNs / fastNs, sum & 1);
+		// The first pass only warms up the JIT
+		timeBoardSizes(false);
+		timeBoardSizes(true);
+	}
+	private static void timeBoardSizes(boolean print)
+	{
+		final int REPS = 3;
+		int [] sizes = { 7, 8, 10, 12, 16 };
+		if (print) {
+			System.out.println(" N  board  depth     leaves   perft Mleaves/s  make+eval Mleaves/s");
+		}
+		for (int n : sizes) {
+			for (int wide=0; wide<2; wide++) {
+				if (wide == 1 && n*n > 64) {
+					continue;
+				}
+				FastBoard b = wide == 0 ? FastBoard.create(n) : new FastBoard.Wide(n);
+				b.reset();
+				int [][] stack = new int [8][FastBoard.MAX_MOVES];
+				int depth = 1;
+				while (depth < 7 && b.perft(depth+1, stack) < 3000000) {
+					depth++;
+				}
+				long leaves = 0, evalSum = 0;
+				long [] nanos = new long [2];
+				for (int rep=0; rep<=REPS; rep++) {
+					long t0 = System.nanoTime();
+					leaves = b.perft(depth, stack);
+					long t1 = System.nanoTime();
+					evalSum += evalLeaves(b, depth, stack);
+					long t2 = System.nanoTime();
+					if (rep > 0) {
+						nanos[0] += t1 - t0;
+						nanos[1] += t2 - t1;
+					}
+				}
+				if (print) {
+					System.out.printf("%2d  %-5s  %5d  %9d  %15.1f  %19.1f  [%d]%n",
+							n, b instanceof FastBoard.Narrow ? "one" : "multi", depth, leaves,
+							1e3 * REPS * leaves / nanos[0], 1e3 * REPS * leaves / nanos[1], evalSum & 1);
+				}
+			}
+		}
+	}
+	/**
+	 * The kernel from KernelCompiler.load() against the generic one:
+	 * same moves and scores on random positions, then time per call of
+	 * generateMoves and evaluate, best of several rounds taken in turn.
+	 */
+	public static void compareKernels()
+	{
+		BitKernel special = KernelCompiler.load();
+		if (special == null) {
+			System.out.println("No kernel for a board this size");
+			return;
+		}
+		System.out.printf("%s (%s, %.1f ms to compile)%n", special.name(),
+						KernelCompiler.origin, KernelCompiler.compileNanos / 1e6);
+		BitKernel [] kernels = { new KernelCompiler.Generic(), special };
+		ArrayList<BreakthroughState> positions = EvalMatch.randomPositions(2000, 0, 4*BreakthroughState.N, 12);
+		int num = positions.size();
+		long [] home = new long [num], away = new long [num];
+		boolean [] homeToMove = new boolean [num];
+		for (int i=0; i<num; i++) {
+			BreakthroughState brd = positions.get(i);
+			home[i] = brd.homeBits;
+			away[i] = brd.awayBits;
+			homeToMove[i] = brd.getWho() == GameState.Who.HOME;
+		}
+		int [] a = new int [FastBoard.MAX_MOVES], b = new int [FastBoard.MAX_MOVES];
+		int mismatches = 0;
+		for (int i=0; i<num; i++) {
+			int na = kernels[0].generateMoves(home[i], away[i], homeToMove[i], a);
+			int nb = kernels[1].generateMoves(home[i], away[i], homeToMove[i], b);
+			Arrays.sort(a, 0, na);
+			Arrays.sort(b, 0, nb);
+			if (na != nb || !Arrays.equals(a, 0, na, b, 0, nb) ||
+				kernels[1].evaluate(positions.get(i), ABBreakthroughPlayer2.weights) !=
+					ABBreakthroughPlayer2.evalBoard(positions.get(i))) {
+				mismatches++;
+			}
+		}
+		System.out.printf("%d positions, %d mismatches%n", num, mismatches);
+		long [][] best = new long [2][2];
+		for (long [] row : best) {
+			Arrays.fill(row, Long.MAX_VALUE);
+		}
+		long sum = 0;
+		int [] w = ABBreakthroughPlayer2.weights;
+		for (int rep=0; rep<10; rep++) {
+			for (int k=0; k<2; k++) {
+				BitKernel kernel = kernels[k];
+				long t0 = System.nanoTime();
+				for (int j=0; j<100; j++) {
+					for (int i=0; i<num; i++) {
+						sum += kernel.generateMoves(home[i], away[i], homeToMove[i], a);
+					}
+				}
+				long t1 = System.nanoTime();
+				for (int j=0; j<100; j++) {
+					for (BreakthroughState brd : positions) {
+						sum += kernel.evaluate(brd, w);
+					}
+				}
+				long t2 = System.nanoTime();
+				best[k][0] = Math.min(best[k][0], t1 - t0);
+				best[k][1] = Math.min(best[k][1], t2 - t1);
+			}
+		}
+		for (int k=0; k<2; k++) {
+			System.out.printf("%-16s movegen %6.1f ns  eval %6.1f ns%n", kernels[k].name(),
+							best[k][0] / (100.0 * num), best[k][1] / (100.0 * num));
+		}
+		System.out.printf("speedup: movegen %.2fx  eval %.2fx  [%d]%n",
+						(double)best[0][0] / best[1][0], (double)best[0][1] / best[1][1], sum & 1);
+	}
+	/**
+	 * How far ABBreakthroughPlayer2's staged move generation gets at the
+	 * interior nodes of a search: the share of nodes that reach each
+	 * stage, so one minus that is how often the stage is never generated.
+	 */
+	public static void comparePicker(int depth)
+	{
+		List<BreakthroughState> positions = EvalMatch.randomPositions(NUM_POSITIONS, 6, 16, 1);
+		ABBreakthroughPlayer2 player = new ABBreakthroughPlayer2("picker", depth);
+		player.init();
+		long nodeCount = 0, nanos = 0;
+		for (BreakthroughState pos : positions) {
+			player.nodes = 0;
+			long start = System.nanoTime();
+			player.searchToDepth((BreakthroughState)pos.clone(), depth);
+			nanos += System.nanoTime() - start;
+			nodeCount += player.nodes;
+		}
+		long inits = 0;
+		for (MovePicker picker : player.pickers) {
+			inits += picker.inits;
+		}
+		System.out.printf("depth %d: %d nodes, %d with moves to pick, %.1f ms%n",
+						depth, nodeCount, inits, nanos / 1e6);
+		for (int s=0; s<MovePicker.NUM_STAGES; s++) {
+			double share = (double)player.stageReached[s] / inits;
+			System.out.printf("  %-15s reached %5.1f%%  never generated %5.1f%%%n",
+							MovePicker.STAGE_NAMES[s], 100 * share, 100 * (1 - share));
+		}
+	}
+	public static void main(String [] args)
+	{
+		String which = args.length > 0 ? args[0] : "all";
+		if (which.equals("all") || which.equals("eval")) {
+			compareIncrementalEval();
+		}
+		if (which.equals("all") || which.equals("bits")) {
+			compareBitEvals();
+		}
+		if (which.equals("all") || which.equals("nnue")) {
+			compareNNUE();
+		}
+		if (which.equals("all") || which.equals("ntuple")) {
+			timeNTuple();
+		}
+		if (which.equals("all") || which.equals("batch")) {
+			compareLeafBatch();
+		}
+		if (which.equals("all") || which.equals("see")) {
+			compareSEE(SEARCH_DEPTH+1);
+		}
+		if (which.equals("all") || which.equals("picker")) {
+			comparePicker(SEARCH_DEPTH+1);
+		}
+		if (which.equals("all") || which.equals("mirror")) {
+			compareMirrorKeys(SEARCH_DEPTH+1);
+		}
+		if (which.equals("all") || which.equals("sync")) {
+			compareSync();
+		}
+		if (which.equals("all") || which.equals("cache")) {
+			compareEvalCache("evalBoard", new EvalMatch.Eval() {
+				public int eval(BreakthroughState brd)
+				{ return ABBreakthroughPlayer2.evalBoard(brd); }
+			}, SEARCH_DEPTH+1);
+			final NTupleEval net = new NTupleEval();
+			compareEvalCache("n-tuple", new EvalMatch.Eval() {
+				public int eval(BreakthroughState brd)
+				{ return net.evaluate(brd); }
+			}, SEARCH_DEPTH+1);
+		}
+		if (which.equals("all") || which.equals("sizes")) {
+			compareBoardSizes();
+		}
+		if (which.equals("all") || which.equals("kernel")) {
+			compareKernels();
+		}
+	}
+}
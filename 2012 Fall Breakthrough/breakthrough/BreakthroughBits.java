@@ -0,0 +1,273 @@
+package breakthrough;
+import game.*;
+
+/**
+ * Bit-parallel versions of the Breakthrough heuristics. They work off
+ * the homeBits/awayBits bitboards kept by BreakthroughState (square
+ * [r][c] is bit r*N+c), and compute the same values as the char [][]
+ * loops in the alpha-beta players. When the board is too big for one
+ * long (BreakthroughState.WIDE) the term functions read the state's
+ * multi-word FastBoard instead; WIDE is a constant, so boards that do
+ * fit pay nothing for the check.
+ */
+public class BreakthroughBits {
+	public static final int N = BreakthroughState.N;
+	public static final long BOARD = N*N == 64 ? -1L : (1L << (N*N)) - 1;
+	public static final long FIRST_COL = columnMask(0);
+	public static final long LAST_COL = columnMask(N-1);
+	public static final long NOT_FIRST_COL = BOARD & ~FIRST_COL;
+	public static final long NOT_LAST_COL = BOARD & ~LAST_COL;
+	public static final long HOME_ROW = rowMask(0);
+	public static final long AWAY_ROW = rowMask(N-1);
+	public static final long BACK_ROWS = HOME_ROW | AWAY_ROW;
+	public static final long STEADY_SQUARES = steadySquares();
+	// Most moves a side can have: three from every square
+	public static final int MAX_MOVES = 3 * N * N;
+
+	public static long rowMask(int r)
+	{ return ((1L << N) - 1) << (r*N); }
+	public static long columnMask(int c)
+	{
+		long mask = 0;
+		for (int r=0; r<N; r++) {
+			mask |= 1L << (r*N + c);
+		}
+		return mask;
+	}
+	public static long bit(int r, int c)
+	{ return 1L << (r*N + c); }
+	/**
+	 * The squares eval_steadybackline looks at (FastBoard.isSteadySquare)
+	 */
+	private static long steadySquares()
+	{
+		long mask = 0;
+		for (int r=0; r<N; r++) {
+			for (int c=0; c<N; c++) {
+				if (r*N + c < 64 && FastBoard.isSteadySquare(N, r, c))
+					mask |= bit(r, c);
+			}
+		}
+		return mask;
+	}
+	/**
+	 * Squares of bits that have a diagonal neighbour (in any of the four
+	 * directions) also in bits.
+	 */
+	public static long diagonallyCovered(long bits)
+	{
+		long nbrs = ((bits >>> (N+1)) & NOT_LAST_COL) |	// [r+1][c+1]
+					((bits >>> (N-1)) & NOT_FIRST_COL) |	// [r+1][c-1]
+					((bits << (N-1)) & NOT_LAST_COL) |		// [r-1][c+1]
+					((bits << (N+1)) & NOT_FIRST_COL);		// [r-1][c-1]
+		return bits & nbrs;
+	}
+	/**
+	 * Squares attacked by HOME pieces (HOME moves up the board)
+	 */
+	public static long homeAttacks(long home)
+	{ return ((home << (N+1)) & NOT_FIRST_COL) | ((home << (N-1)) & NOT_LAST_COL); }
+	/**
+	 * Squares attacked by AWAY pieces (AWAY moves down the board)
+	 */
+	public static long awayAttacks(long away)
+	{ return ((away >>> (N-1)) & NOT_FIRST_COL) | ((away >>> (N+1)) & NOT_LAST_COL); }
+
+	/**
+	 * HOME pieces in home that attack the squares in target. They sit
+	 * diagonally below, which is where an AWAY piece would attack.
+	 */
+	public static long homeAttackersOf(long target, long home)
+	{ return awayAttacks(target) & home; }
+	/**
+	 * AWAY pieces in away that attack the squares in target.
+	 */
+	public static long awayAttackersOf(long target, long away)
+	{ return homeAttacks(target) & away; }
+	/**
+	 * Static exchange evaluation: the material the side to move can
+	 * expect from mv once both sides have made every recapture on the
+	 * ending square that pays. Pieces are all worth 1 and only capture
+	 * diagonally forward, so each side's attackers of a square come from
+	 * at most two squares and can be counted from the masks. The result
+	 * is 1 for a capture that wins a piece, 0 for an even trade or a safe
+	 * move, and -1 for a move that loses the moving piece. A capture can
+	 * never lose material; only quiet moves come out negative. Moves
+	 * onto the goal row end the game, so nothing is recaptured there.
+	 */
+	public static int see(BreakthroughState brd, BreakthroughMove mv)
+	{
+		if (BreakthroughState.WIDE) {
+			return seeOnBoard(brd, mv);
+		}
+		boolean homeToMove = brd.who == GameState.Who.HOME;
+		long to = bit(mv.endingRow, mv.endingCol);
+		long us = (homeToMove ? brd.homeBits : brd.awayBits) & ~bit(mv.startRow, mv.startCol);
+		long them = homeToMove ? brd.awayBits : brd.homeBits;
+		int captured = (them & to) != 0 ? 1 : 0;
+		if (mv.endingRow == (homeToMove ? N-1 : 0)) {
+			return captured;
+		}
+		them &= ~to;
+		int ours = Long.bitCount(homeToMove ? homeAttackersOf(to, us) : awayAttackersOf(to, us));
+		int theirs = Long.bitCount(homeToMove ? awayAttackersOf(to, them) : homeAttackersOf(to, them));
+		return captured - swap(theirs, ours);
+	}
+	/**
+	 * see() read off the char board, for boards too big for the bitboards.
+	 */
+	private static int seeOnBoard(BreakthroughState brd, BreakthroughMove mv)
+	{
+		boolean homeToMove = brd.who == GameState.Who.HOME;
+		char us = homeToMove ? BreakthroughState.homeSym : BreakthroughState.awaySym;
+		char them = homeToMove ? BreakthroughState.awaySym : BreakthroughState.homeSym;
+		int r = mv.endingRow, c = mv.endingCol, dir = homeToMove ? 1 : -1;
+		int captured = brd.board[r][c] == them ? 1 : 0;
+		if (r == (homeToMove ? N-1 : 0)) {
+			return captured;
+		}
+		int ours = 0, theirs = 0;
+		for (int dc=-1; dc<=1; dc+=2) {
+			if (c+dc < 0 || c+dc >= N)
+				continue;
+			if (brd.board[r-dir][c+dc] == us && !(r-dir == mv.startRow && c+dc == mv.startCol))
+				ours++;
+			if (brd.board[r+dir][c+dc] == them)
+				theirs++;
+		}
+		return captured - swap(theirs, ours);
+	}
+	/**
+	 * What recapturing on a square is worth to the side with a attackers
+	 * against d defenders, given that either side may stop at any point.
+	 * With equal piece values this works out to winning one piece exactly
+	 * when the attackers outnumber the defenders.
+	 */
+	private static int swap(int a, int d)
+	{ return a > d ? 1 : 0; }
+	/**
+	 * Fills mvs with every legal move for the side to move.
+	 * @return number of moves generated
+	 */
+	public static int generateMoves(BreakthroughState brd, BreakthroughMove [] mvs)
+	{
+		int dir = brd.getWho() == GameState.Who.HOME ? +1 : -1;
+		char PLAYER = brd.getWho() == GameState.Who.HOME ?
+				BreakthroughState.homeSym : BreakthroughState.awaySym;
+		int cnt = 0;
+		for (int r=0; r<N; r++) {
+			int er = r + dir;
+			if (er < 0 || er >= N)
+				continue;
+			for (int c=0; c<N; c++) {
+				if (brd.board[r][c] != PLAYER)
+					continue;
+				for (int dc=-1; dc<=1; dc++) {
+					BreakthroughMove mv = mvs[cnt];
+					mv.startRow = r; mv.startCol = c;
+					mv.endingRow = er; mv.endingCol = c + dc;
+					if (brd.moveOK(mv)) {
+						cnt++;
+					}
+				}
+			}
+		}
+		return cnt;
+	}
+	/**
+	 * A move array big enough for generateMoves.
+	 */
+	public static BreakthroughMove [] newMoveArray()
+	{
+		BreakthroughMove [] mvs = new BreakthroughMove [MAX_MOVES];
+		for (int i=0; i<MAX_MOVES; i++) {
+			mvs[i] = new BreakthroughMove();
+		}
+		return mvs;
+	}
+	/**
+	 * Adds the captures and moves onto the goal row of the side to move
+	 * to mvs, encoded as in FastBoard, starting at mvs[cnt].
+	 * @return The new number of moves in mvs
+	 */
+	public static int generateTactical(BreakthroughState brd, int [] mvs, int cnt)
+	{ return generate(brd, mvs, cnt, true); }
+	/**
+	 * Adds the moves generateTactical leaves out.
+	 */
+	public static int generateQuiet(BreakthroughState brd, int [] mvs, int cnt)
+	{ return generate(brd, mvs, cnt, false); }
+	private static int generate(BreakthroughState brd, int [] mvs, int cnt, boolean tactical)
+	{
+		boolean homeToMove = brd.who == GameState.Who.HOME;
+		if (BreakthroughState.WIDE) {
+			FastBoard bits = brd.wideBits;
+			bits.homeToMove = homeToMove;
+			return tactical ? bits.generateTactical(mvs, cnt) : bits.generateQuiet(mvs, cnt);
+		}
+		long home = brd.homeBits, away = brd.awayBits;
+		long empty = BOARD & ~(home | away);
+		if (homeToMove) {
+			long left = (home << (N-1)) & NOT_LAST_COL;
+			long right = (home << (N+1)) & NOT_FIRST_COL;
+			long open = empty & (tactical ? AWAY_ROW : ~AWAY_ROW);
+			if (tactical) {
+				cnt = FastBoard.Narrow.emit(left & away, N-1, FastBoard.CAPTURE, mvs, cnt);
+				cnt = FastBoard.Narrow.emit(right & away, N+1, FastBoard.CAPTURE, mvs, cnt);
+			}
+			cnt = FastBoard.Narrow.emit(left & open, N-1, 0, mvs, cnt);
+			cnt = FastBoard.Narrow.emit(right & open, N+1, 0, mvs, cnt);
+			cnt = FastBoard.Narrow.emit((home << N) & open, N, 0, mvs, cnt);
+		} else {
+			long left = (away >>> (N+1)) & NOT_LAST_COL;
+			long right = (away >>> (N-1)) & NOT_FIRST_COL;
+			long open = empty & (tactical ? HOME_ROW : ~HOME_ROW);
+			if (tactical) {
+				cnt = FastBoard.Narrow.emit(left & home, -(N+1), FastBoard.CAPTURE, mvs, cnt);
+				cnt = FastBoard.Narrow.emit(right & home, -(N-1), FastBoard.CAPTURE, mvs, cnt);
+			}
+			cnt = FastBoard.Narrow.emit(left & open, -(N+1), 0, mvs, cnt);
+			cnt = FastBoard.Narrow.emit(right & open, -(N-1), 0, mvs, cnt);
+			cnt = FastBoard.Narrow.emit((away >>> N) & open, -N, 0, mvs, cnt);
+		}
+		return cnt;
+	}
+	public static int numPieces(BreakthroughState brd)
+	{
+		if (BreakthroughState.WIDE) {
+			return brd.materialDiff();
+		}
+		return Long.bitCount(brd.homeBits) - Long.bitCount(brd.awayBits);
+	}
+	public static int numUs(BreakthroughState brd)
+	{
+		if (BreakthroughState.WIDE) {
+			return brd.who == GameState.Who.HOME ? brd.homeCount : -brd.awayCount;
+		}
+		return brd.who == GameState.Who.HOME ?
+				Long.bitCount(brd.homeBits) : -Long.bitCount(brd.awayBits);
+	}
+	public static int coverage(BreakthroughState brd)
+	{
+		if (BreakthroughState.WIDE) {
+			return brd.wideBits.coverage();
+		}
+		return Long.bitCount(diagonallyCovered(brd.homeBits)) -
+				Long.bitCount(diagonallyCovered(brd.awayBits));
+	}
+	public static int win(BreakthroughState brd)
+	{
+		if (BreakthroughState.WIDE) {
+			return brd.wideBits.win();
+		}
+		return Long.bitCount(brd.homeBits & BACK_ROWS) - Long.bitCount(brd.awayBits & BACK_ROWS);
+	}
+	public static int steadyBackLine(BreakthroughState brd)
+	{
+		if (BreakthroughState.WIDE) {
+			return brd.wideBits.steadyBackLine();
+		}
+		return 2 * (Long.bitCount(brd.awayBits & STEADY_SQUARES) -
+					Long.bitCount(brd.homeBits & STEADY_SQUARES));
+	}
+}
@@ -0,0 +1,44 @@
+package breakthrough;
+import game.*;
+import game.search.*;
+
+/**
+ * BreakthroughState as seen by SearchEngine. Moves are FastBoard's
+ * encoding, generated captures and goal row moves first, and the
+ * evaluation is ABBreakthroughPlayer2.evalBoard.
+ */
+public class BreakthroughSearchState implements SearchableState {
+	public final BreakthroughState brd;
+	private final BreakthroughMove mv = new BreakthroughMove();
+
+	public BreakthroughSearchState(BreakthroughState brd)
+	{ this.brd = brd; }
+	public int maxMoves()
+	{ return FastBoard.MAX_MOVES; }
+	public int generateMoves(int [] mvs)
+	{ return BreakthroughBits.generateQuiet(brd, mvs, BreakthroughBits.generateTactical(brd, mvs, 0)); }
+	public void makeMove(int m)
+	{ brd.makeMove(MovePicker.toMove(m, mv)); }
+	public void unmakeMove(int m)
+	{
+		// the side to move now is the one that lost the piece, if any
+		char captured = !FastBoard.isCapture(m) ? BreakthroughState.emptySym :
+						brd.getWho() == GameState.Who.HOME ? BreakthroughState.homeSym : BreakthroughState.awaySym;
+		brd.undoMove(MovePicker.toMove(m, mv), captured);
+	}
+	public long hash()
+	{ return brd.hash; }
+	public int evaluate()
+	{
+		int score = ABBreakthroughPlayer2.evalBoard(brd);
+		return brd.getWho() == GameState.Who.HOME ? score : -score;
+	}
+	public boolean isTerminal()
+	{ return brd.getStatus() != GameState.Status.GAME_ON; }
+	public int terminalScore()
+	{ return SearchEngine.statusScore(brd); }
+	public SearchableState copy()
+	{ return new BreakthroughSearchState((BreakthroughState)brd.clone()); }
+	public GameMove toGameMove(int m)
+	{ return MovePicker.toMove(m, new BreakthroughMove()); }
+}
@@ -9,8 +9,34 @@ public class BreakthroughState extends GameState {
 	public static final char homeSym = gameParams.character("HOMESYM");
 	public static final char awaySym = gameParams.character("AWAYSYM");
 	public static final char emptySym = gameParams.character("EMPTYSYM");
+	/**
+	 * Piece-square values from HOME's point of view. An AWAY piece on
+	 * [r][c] is worth PIECE_SQUARE[N-1-r][c] to AWAY.
+	 */
+	public static final int [][] PIECE_SQUARE = pieceSquareTable(N);
+	// Zobrist keys: one per (side, square), and one for AWAY to move
+	public static final long [][] HOME_KEYS = zobristKeys(1);
+	public static final long [][] AWAY_KEYS = zobristKeys(2);
+	public static final long AWAY_TO_MOVE_KEY = new Random(3).nextLong();
+	// Boards too big for the single-long bitboards below
+	public static final boolean WIDE = N*N > 64;
 
 	public char [][] board;
+	// Running sums, kept current by makeMove/undoMove so that
+	// evaluation doesn't have to rescan the board.
+	public int homeCount, awayCount;
+	public int homeAdvance, awayAdvance;
+	public int pieceSquare;			// HOME total - AWAY total
+	// Bitboards: square [r][c] is bit r*N+c. Only kept up for N <= 8; on
+	// WIDE boards they stay 0, and wideBits holds the pieces instead.
+	public long homeBits, awayBits;
+	// Multi-word bitboards used instead when the board is WIDE, else null
+	public final FastBoard wideBits = WIDE ? FastBoard.create(N) : null;
+	// Zobrist hash of the pieces and the side to move, and the hash the
+	// left-right mirror image of the position would have
+	public long hash, mirrorHash;
+	// Optional neural network first layer, also kept current by makeMove/undoMove
+	public NNUEEval.Accumulator accumulator;
  
 	public BreakthroughState()
 	{
@@ -18,11 +44,47 @@ public class BreakthroughState extends GameState {
 		board = new char [N][N];
 		reset();
 	}
+	/**
+	 * Back row defenders and edge pieces (which can only be attacked from
+	 * one side) get a bonus, as do pieces within two rows of the goal.
+	 */
+	static int [][] pieceSquareTable(int n)
+	{
+		int [][] tbl = new int [n][n];
+		for (int r=0; r<n; r++) {
+			for (int c=0; c<n; c++) {
+				int v = 0;
+				if (r == 0)
+					v += 2;
+				if (c == 0 || c == n-1)
+					v += 1;
+				if (r >= n-3)
+					v += 2 * (r - (n-4));
+				tbl[r][c] = v;
+			}
+		}
+		return tbl;
+	}
+	private static long [][] zobristKeys(long seed)
+	{
+		Random rand = new Random(seed);
+		long [][] keys = new long [N][N];
+		for (int r=0; r<N; r++) {
+			for (int c=0; c<N; c++) {
+				keys[r][c] = rand.nextLong();
+			}
+		}
+		return keys;
+	}
 	public Object clone()
 	{
 		BreakthroughState res = new BreakthroughState();
 		res.copyInfo(this);
 		Util.copy(res.board, board);
+		if (accumulator != null) {
+			res.accumulator = accumulator.network().newAccumulator();
+		}
+		res.recomputeTotals();
 		return res;
 	}
 	public void reset()
@@ -33,7 +95,122 @@ public class BreakthroughState extends GameState {
 		Arrays.fill(board[1], homeSym);
 		Arrays.fill(board[N-2], awaySym);
 		Arrays.fill(board[N-1], awaySym);
+		recomputeTotals();
+	}
+	/**
+	 * Rebuilds the running sums from scratch. Only needed when the
+	 * board has been filled in by something other than makeMove.
+	 */
+	public void recomputeTotals()
+	{
+		NNUEEval.Accumulator acc = accumulator;
+		accumulator = null;			// refreshed in one pass below
+		homeCount = awayCount = 0;
+		homeBits = awayBits = 0;
+		homeAdvance = awayAdvance = 0;
+		pieceSquare = 0;
+		hash = who == GameState.Who.AWAY ? AWAY_TO_MOVE_KEY : 0;
+		mirrorHash = hash;
+		if (WIDE) {
+			wideBits.clear();
+		}
+		for (int r=0; r<N; r++) {
+			for (int c=0; c<N; c++) {
+				if (board[r][c] != emptySym) {
+					addPiece(board[r][c], r, c);
+				}
+			}
+		}
+		if (acc != null) {
+			acc.refresh(this);
+			accumulator = acc;
+		}
 	}
+	private void addPiece(char sym, int r, int c)
+	{
+		if (sym == homeSym) {
+			homeCount++;
+			if (WIDE)
+				wideBits.place(true, r*N + c);
+			else
+				homeBits |= 1L << (r*N + c);
+			homeAdvance += r;
+			pieceSquare += PIECE_SQUARE[r][c];
+			hash ^= HOME_KEYS[r][c];
+			mirrorHash ^= HOME_KEYS[r][N-1-c];
+			if (accumulator != null)
+				accumulator.add(NNUEEval.homeFeature(r, c));
+		} else {
+			awayCount++;
+			if (WIDE)
+				wideBits.place(false, r*N + c);
+			else
+				awayBits |= 1L << (r*N + c);
+			awayAdvance += N-1-r;
+			pieceSquare -= PIECE_SQUARE[N-1-r][c];
+			hash ^= AWAY_KEYS[r][c];
+			mirrorHash ^= AWAY_KEYS[r][N-1-c];
+			if (accumulator != null)
+				accumulator.add(NNUEEval.awayFeature(r, c));
+		}
+	}
+	private void removePiece(char sym, int r, int c)
+	{
+		if (sym == homeSym) {
+			homeCount--;
+			if (WIDE)
+				wideBits.remove(true, r*N + c);
+			else
+				homeBits &= ~(1L << (r*N + c));
+			homeAdvance -= r;
+			pieceSquare -= PIECE_SQUARE[r][c];
+			hash ^= HOME_KEYS[r][c];
+			mirrorHash ^= HOME_KEYS[r][N-1-c];
+			if (accumulator != null)
+				accumulator.sub(NNUEEval.homeFeature(r, c));
+		} else {
+			awayCount--;
+			if (WIDE)
+				wideBits.remove(false, r*N + c);
+			else
+				awayBits &= ~(1L << (r*N + c));
+			awayAdvance -= N-1-r;
+			pieceSquare += PIECE_SQUARE[N-1-r][c];
+			hash ^= AWAY_KEYS[r][c];
+			mirrorHash ^= AWAY_KEYS[r][N-1-c];
+			if (accumulator != null)
+				accumulator.sub(NNUEEval.awayFeature(r, c));
+		}
+	}
+	/**
+	 * Hash shared by this position and its left-right mirror image: the
+	 * smaller of hash and mirrorHash. Tables keyed by it hold one entry
+	 * for both positions, so anything they store must be the same for
+	 * both (a score), or be translated with mirror() (a move).
+	 */
+	public long canonicalHash()
+	{ return Math.min(hash, mirrorHash); }
+	/**
+	 * @return true if the canonical form is the mirror image of this
+	 * position, so moves found under canonicalHash need mirror()ing
+	 */
+	public boolean isMirrored()
+	{ return mirrorHash < hash; }
+	/**
+	 * The move that corresponds to mv in the mirror image of the board.
+	 */
+	public static BreakthroughMove mirror(BreakthroughMove mv)
+	{ return new BreakthroughMove(mv.startRow, N-1-mv.startCol, mv.endingRow, N-1-mv.endingCol); }
+	/**
+	 * Number of HOME pieces minus number of AWAY pieces
+	 */
+	public int materialDiff()
+	{ return homeCount - awayCount; }
+	/**
+	 * Total HOME advancement minus total AWAY advancement
+	 */
+	public int advanceDiff()
+	{ return homeAdvance - awayAdvance; }
 	public boolean moveOK(GameMove m)
 	{
 		BreakthroughMove mv = (BreakthroughMove)m;
@@ -55,20 +232,7 @@ public class BreakthroughState extends GameState {
 		return OK;
 	}
 	private boolean oneSideEliminated()
-	{
-		int home = 0, away = 0;
-		for (int r=0; r<N; r++) {
-			for (int c=0; c<N; c++) {
-				char ch = board[r][c];
-				if (ch == homeSym) {
-					home++;
-				} else if (ch == awaySym) {
-					away++;
-				}
-			}
-		}
-		return home == 0 || away == 0;
-	}
+	{ return homeCount == 0 || awayCount == 0; }
 	public boolean makeMove(GameMove m)
 	{
 		BreakthroughMove mv = (BreakthroughMove)m;
@@ -78,20 +242,58 @@ public class BreakthroughState extends GameState {
 		GameState.Status possibleStatus = 
 				who == GameState.Who.HOME ? GameState.Status.HOME_WIN: GameState.Status.AWAY_WIN;
 		if (moveOK(m)) {
+			char captured = board[mv.endingRow][mv.endingCol];
+			if (captured != emptySym) {
+				removePiece(captured, mv.endingRow, mv.endingCol);
+			}
+			removePiece(PLAYER, mv.startRow, mv.startCol);
+			addPiece(PLAYER, mv.endingRow, mv.endingCol);
 			board[mv.startRow][mv.startCol] = emptySym;
 			board[mv.endingRow][mv.endingCol] = PLAYER;
 			OK = true;
 			super.newMove();
+			hash ^= AWAY_TO_MOVE_KEY;
+			mirrorHash ^= AWAY_TO_MOVE_KEY;
 			status = (mv.endingRow == goal || oneSideEliminated()) ?
 								possibleStatus :  GameState.Status.GAME_ON;
 		}
 		return OK;
 	}
+	/**
+	 * Takes back a move made by makeMove. The move must be the last one made.
+	 * @param mv Move to be undone
+	 * @param captured What was on the ending square before the move
+	 */
+	public void undoMove(BreakthroughMove mv, char captured)
+	{
+		togglePlayer();
+		hash ^= AWAY_TO_MOVE_KEY;
+		mirrorHash ^= AWAY_TO_MOVE_KEY;
+		numMoves--;
+		status = GameState.Status.GAME_ON;
+		char PLAYER = who == GameState.Who.HOME ? homeSym : awaySym;
+		removePiece(PLAYER, mv.endingRow, mv.endingCol);
+		addPiece(PLAYER, mv.startRow, mv.startCol);
+		board[mv.endingRow][mv.endingCol] = captured;
+		board[mv.startRow][mv.startCol] = PLAYER;
+		if (captured != emptySym) {
+			addPiece(captured, mv.endingRow, mv.endingCol);
+		}
+	}
+	public GameMove parseMove(String s)
+	{
+		BreakthroughMove mv = new BreakthroughMove();
+		mv.parseMove(s);
+		return mv;
+	}
+	public boolean matchesMsgString(String s)
+	{ return Util.matchesMsgString(s, board) && s.substring(N*N).equals(msgSuffix()); }
 	public void parseMsgString(String s)
 	{
 		reset();
 		Util.parseMsgString(s, board, emptySym);
 		parseMsgSuffix(s.substring(s.indexOf('[')));
+		recomputeTotals();
 	}
 	public String toString()
 	{ return Util.toString(board) + msgSuffix(); }
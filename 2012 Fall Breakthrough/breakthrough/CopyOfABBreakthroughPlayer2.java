@@ -206,18 +206,7 @@ public class CopyOfABBreakthroughPlayer2 extends GamePlayer {
 				alphaBeta(brd, currDepth+1, alpha, beta);
 				
 				//Undo Move
-				/* What I will do instead to undo the move is set the board at the 
-				 * temp's end row/end col that there is nothing there and at the
-				 * temp's start row/col that there is a home or away piece, depending
-				 * and then subtract 1 from the number of moves				
-				 */
-				brd.who = currTurn;
-				char PLAYER = brd.who == GameState.Who.HOME ? BreakthroughState.homeSym : BreakthroughState.awaySym;
-				
-				brd.board[tmp.endingRow][tmp.endingCol] = tmpchar;
-				brd.board[tmp.startRow][tmp.startCol] = PLAYER;
-				brd.numMoves--;
-				brd.status = GameState.Status.GAME_ON;
+				brd.undoMove(tmp, tmpchar);
 				
 				
 				// Check out the results, relative to what we've seen before
@@ -0,0 +1,20 @@
+package breakthrough;
+import game.*;
+import game.search.*;
+
+/**
+ * Breakthrough by the shared game.search engine.
+ */
+public class EngineBreakthroughPlayer extends EnginePlayer {
+	public EngineBreakthroughPlayer(String nname, int depth, long moveMillis, int threads)
+	{ super(nname, new BreakthroughState(), depth, moveMillis, threads); }
+	protected SearchableState searchable(GameState brd)
+	{ return new BreakthroughSearchState((BreakthroughState)brd); }
+
+	public static void main(String [] args)
+	{
+		GamePlayer p = new EngineBreakthroughPlayer("Engine", 20, 5000,
+											Runtime.getRuntime().availableProcessors());
+		p.compete(args);
+	}
+}
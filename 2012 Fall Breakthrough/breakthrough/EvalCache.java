@@ -0,0 +1,66 @@
+package breakthrough;
+
+import java.util.Arrays;
+
+/**
+ * Direct-mapped cache of leaf evaluations, keyed by
+ * BreakthroughState.hash. It is separate from any transposition table:
+ * it only remembers static scores, never bounds or moves.
+ *
+ * Each entry is two longs, (hash ^ data, data). A probe only believes an
+ * entry whose two halves xor back to the probing hash, so threads can
+ * share one cache without locking; an entry torn by a simultaneous store
+ * just fails the check and counts as a miss. The hit and miss counters
+ * are plain fields and may undercount when shared.
+ */
+public class EvalCache {
+	public static final int MISS = Integer.MIN_VALUE;	// returned by probe
+	public static final int DEFAULT_ENTRIES = 1 << 16;
+
+	private final long [] table;
+	private final int mask;
+	public long hits, misses;
+
+	/**
+	 * @param entries Number of entries; rounded down to a power of two
+	 */
+	public EvalCache(int entries)
+	{
+		int size = Integer.highestOneBit(Math.max(1, entries));
+		table = new long [2 * size];
+		mask = size - 1;
+	}
+	public int size()
+	{ return mask + 1; }
+	/**
+	 * @return The score stored for hash, or MISS
+	 */
+	public int probe(long hash)
+	{
+		int i = 2 * ((int)hash & mask);
+		long data = table[i+1];
+		if ((table[i] ^ data) == hash) {
+			hits++;
+			return (int)data;
+		}
+		misses++;
+		return MISS;
+	}
+	public void store(long hash, int score)
+	{
+		int i = 2 * ((int)hash & mask);
+		long data = score;
+		table[i] = hash ^ data;
+		table[i+1] = data;
+	}
+	public void clear()
+	{
+		Arrays.fill(table, 0);
+		hits = misses = 0;
+	}
+	/**
+	 * @return Fraction of probes that hit
+	 */
+	public double hitRate()
+	{ return hits + misses == 0 ? 0 : (double)hits / (hits + misses); }
+}
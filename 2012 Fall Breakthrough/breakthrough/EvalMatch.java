@@ -0,0 +1,169 @@
+package breakthrough;
+import game.*;
+
+import java.util.*;
+
+/**
+ * Plain alpha-beta for comparing Breakthrough evaluations: no table, no
+ * move ordering, nothing but the evaluation to tell two searches apart.
+ * Searches go to a fixed depth, or deepen iteratively against the
+ * clock, and playMatch plays two evaluations against each other that
+ * way from random openings. An EvalMatch keeps its own move stacks and
+ * node count, so give each thread its own.
+ */
+public class EvalMatch {
+	public static final int MAX_ITER = 20;
+
+	public interface Eval {
+		int eval(BreakthroughState brd);
+	}
+
+	public long nodes;
+	private long deadline;		// System.nanoTime() to stop by, or 0
+	private boolean aborted;
+	private BreakthroughMove [][] moveStack = new BreakthroughMove [0][];
+	private char [][] capturedStack;
+
+	/**
+	 * Builds a reproducible set of positions by playing random moves from
+	 * the opening, between minPly and maxPly of them.
+	 */
+	public static ArrayList<BreakthroughState> randomPositions(int num, int minPly, int maxPly, long seed)
+	{
+		Random rand = new Random(seed);
+		ArrayList<BreakthroughState> list = new ArrayList<BreakthroughState>();
+		BreakthroughMove [] mvs = BreakthroughBits.newMoveArray();
+		while (list.size() < num) {
+			BreakthroughState brd = new BreakthroughState();
+			int plies = minPly + rand.nextInt(maxPly - minPly + 1);
+			for (int i=0; i<plies && brd.getStatus() == GameState.Status.GAME_ON; i++) {
+				int cnt = BreakthroughBits.generateMoves(brd, mvs);
+				brd.makeMove(mvs[rand.nextInt(cnt)]);
+			}
+			if (brd.getStatus() == GameState.Status.GAME_ON) {
+				list.add(brd);
+			}
+		}
+		return list;
+	}
+	private void allocateStacks(int depth)
+	{
+		if (moveStack.length > depth) {
+			return;
+		}
+		moveStack = new BreakthroughMove [depth+1][];
+		capturedStack = new char [depth+1][BreakthroughBits.MAX_MOVES];
+		for (int d=0; d<=depth; d++) {
+			moveStack[d] = BreakthroughBits.newMoveArray();
+		}
+	}
+	/**
+	 * Fixed depth search of brd, which is left as it was.
+	 * @return score from HOME's point of view
+	 */
+	public int alphaBeta(BreakthroughState brd, int depth, Eval ev)
+	{
+		allocateStacks(depth);
+		return alphaBeta(brd, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, ev);
+	}
+	private int alphaBeta(BreakthroughState brd, int depth, int alpha, int beta, Eval ev)
+	{
+		nodes++;
+		if (deadline != 0 && (nodes & 1023) == 0 && System.nanoTime() > deadline) {
+			aborted = true;
+		}
+		if (aborted) {
+			return 0;
+		} else if (brd.getStatus() == GameState.Status.HOME_WIN) {
+			return Integer.MAX_VALUE - 1;
+		} else if (brd.getStatus() == GameState.Status.AWAY_WIN) {
+			return -(Integer.MAX_VALUE - 1);
+		} else if (depth == 0) {
+			return ev.eval(brd);
+		}
+		boolean toMaximize = brd.getWho() == GameState.Who.HOME;
+		BreakthroughMove [] mvs = moveStack[depth];
+		char [] captured = capturedStack[depth];
+		int cnt = BreakthroughBits.generateMoves(brd, mvs);
+		int best = toMaximize ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+		for (int i=0; i<cnt; i++) {
+			BreakthroughMove mv = mvs[i];
+			captured[i] = brd.board[mv.endingRow][mv.endingCol];
+			brd.makeMove(mv);
+			int score = alphaBeta(brd, depth-1, alpha, beta, ev);
+			brd.undoMove(mv, captured[i]);
+			if (toMaximize) {
+				best = Math.max(best, score);
+				alpha = Math.max(alpha, best);
+			} else {
+				best = Math.min(best, score);
+				beta = Math.min(beta, best);
+			}
+			if (alpha >= beta)
+				break;
+		}
+		return best;
+	}
+	/**
+	 * Iterative deepening alpha-beta with a time limit, used to compare
+	 * evaluations at equal time.
+	 * @return the best move found by the last completed iteration
+	 */
+	public BreakthroughMove timedSearch(BreakthroughState brd, Eval ev, long millis)
+	{
+		allocateStacks(MAX_ITER);
+		BreakthroughMove [] mvs = moveStack[MAX_ITER];
+		int cnt = BreakthroughBits.generateMoves(brd, mvs);
+		boolean toMaximize = brd.getWho() == GameState.Who.HOME;
+		BreakthroughMove best = (BreakthroughMove)mvs[0].clone();
+		deadline = System.nanoTime() + millis * 1000000L;
+		aborted = false;
+		for (int depth=1; depth<MAX_ITER && !aborted; depth++) {
+			int bestScore = toMaximize ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+			int bestIdx = 0;
+			for (int i=0; i<cnt && !aborted; i++) {
+				BreakthroughMove mv = mvs[i];
+				char captured = brd.board[mv.endingRow][mv.endingCol];
+				brd.makeMove(mv);
+				int score = alphaBeta(brd, depth-1, Integer.MIN_VALUE, Integer.MAX_VALUE, ev);
+				brd.undoMove(mv, captured);
+				if (toMaximize ? score > bestScore : score < bestScore) {
+					bestScore = score;
+					bestIdx = i;
+				}
+			}
+			if (!aborted) {
+				best = (BreakthroughMove)mvs[bestIdx].clone();
+			}
+		}
+		deadline = 0;
+		aborted = false;
+		return best;
+	}
+	/**
+	 * Plays pairs of games between two evaluations, each searching for the
+	 * same time per move. Each pair starts from the same random opening,
+	 * with the sides swapped.
+	 * @return number of games won by a
+	 */
+	public static int playMatch(Eval a, Eval b, int pairs, long millis)
+	{
+		EvalMatch search = new EvalMatch();
+		List<BreakthroughState> openings = randomPositions(pairs, 2, 4, 7);
+		int aWins = 0;
+		for (int p=0; p<pairs; p++) {
+			for (int aIsHome=0; aIsHome<2; aIsHome++) {
+				BreakthroughState brd = (BreakthroughState)openings.get(p).clone();
+				while (brd.getStatus() == GameState.Status.GAME_ON) {
+					boolean aToMove = (brd.getWho() == GameState.Who.HOME) == (aIsHome == 1);
+					brd.makeMove(search.timedSearch(brd, aToMove ? a : b, millis));
+				}
+				boolean homeWon = brd.getStatus() == GameState.Status.HOME_WIN;
+				if (homeWon == (aIsHome == 1)) {
+					aWins++;
+				}
+			}
+		}
+		return aWins;
+	}
+}
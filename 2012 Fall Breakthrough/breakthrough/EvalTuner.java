@@ -0,0 +1,434 @@
+package breakthrough;
+import game.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fits the weights of ABBreakthroughPlayer2.evalBoard to game results.
+ *
+ * "extract" collects positions, each labelled with the final result of its
+ * game, from noisy self-play and from the tournament logs under Dumps/,
+ * and writes them to a compact binary file (two bitboards and one flag
+ * byte per position).
+ *
+ * "tune" reads such a file, computes the evalBoard terms of every position
+ * once, and fits the weights by logistic regression: full-batch gradient
+ * descent, with each gradient summed in parallel over slices of the
+ * dataset. The weights are written as a Params file, which
+ * ABBreakthroughPlayer2 reads at init().
+ *
+ * Usage:
+ *   java breakthrough.EvalTuner extract datafile [selfPlayGames [dumpsDir]]
+ *   java breakthrough.EvalTuner tune datafile [weightsfile [iterations]]
+ */
+public class EvalTuner {
+	public static final int MAGIC = 0x42544453;		// "BTDS"
+	public static final double EPSILON = 0.1;		// chance of a random move in self-play
+	public static final double LEARNING_RATE = 1.0;
+	public static final int EVAL_SCALE = 1000;		// evalBoard units per unit of log-odds
+	public static final int MIN_SLICE = 16384;		// positions summed by one task
+	private static final byte HOME_TO_MOVE = 1;
+	private static final byte HOME_WON = 2;
+
+	// Positions, stored as bitboards, with who was to move and who won
+	private long [] homeBits = new long [1024];
+	private long [] awayBits = new long [1024];
+	private byte [] flags = new byte [1024];
+	private int numPositions;
+	// Games read from the logs; each is logged once for each player
+	private final HashSet<String> loggedGames = new HashSet<String>();
+
+	private void addPosition(long home, long away, boolean homeToMove, boolean homeWon)
+	{
+		if (numPositions == homeBits.length) {
+			homeBits = Arrays.copyOf(homeBits, 2 * numPositions);
+			awayBits = Arrays.copyOf(awayBits, 2 * numPositions);
+			flags = Arrays.copyOf(flags, 2 * numPositions);
+		}
+		homeBits[numPositions] = home;
+		awayBits[numPositions] = away;
+		flags[numPositions] = (byte)((homeToMove ? HOME_TO_MOVE : 0) | (homeWon ? HOME_WON : 0));
+		numPositions++;
+	}
+	private void addGame(ArrayList<BreakthroughState> positions, boolean homeWon)
+	{
+		for (BreakthroughState brd : positions) {
+			addPosition(brd.homeBits, brd.awayBits, brd.getWho() == GameState.Who.HOME, homeWon);
+		}
+	}
+	/**
+	 * Sets up brd from a stored position.
+	 */
+	private void position(int p, BreakthroughState brd)
+	{
+		int N = BreakthroughState.N;
+		for (int r=0; r<N; r++) {
+			for (int c=0; c<N; c++) {
+				long b = BreakthroughBits.bit(r, c);
+				brd.board[r][c] = (homeBits[p] & b) != 0 ? BreakthroughState.homeSym :
+								(awayBits[p] & b) != 0 ? BreakthroughState.awaySym :
+								BreakthroughState.emptySym;
+			}
+		}
+		brd.who = (flags[p] & HOME_TO_MOVE) != 0 ? GameState.Who.HOME : GameState.Who.AWAY;
+		brd.recomputeTotals();
+	}
+	/**
+	 * Plays games of noisy one-ply search over evalBoard against itself.
+	 */
+	public void selfPlay(int games, long seed)
+	{
+		Random rand = new Random(seed);
+		BreakthroughMove [] mvs = BreakthroughBits.newMoveArray();
+		ArrayList<BreakthroughState> positions = new ArrayList<BreakthroughState>();
+		for (int g=0; g<games; g++) {
+			BreakthroughState brd = new BreakthroughState();
+			positions.clear();
+			while (brd.getStatus() == GameState.Status.GAME_ON) {
+				positions.add((BreakthroughState)brd.clone());
+				int cnt = BreakthroughBits.generateMoves(brd, mvs);
+				int pick = rand.nextDouble() < EPSILON ? rand.nextInt(cnt) : bestMove(brd, mvs, cnt, rand);
+				brd.makeMove(mvs[pick]);
+			}
+			addGame(positions, brd.getStatus() == GameState.Status.HOME_WIN);
+		}
+	}
+	private static int bestMove(BreakthroughState brd, BreakthroughMove [] mvs, int cnt, Random rand)
+	{
+		boolean toMaximize = brd.getWho() == GameState.Who.HOME;
+		int best = 0;
+		int bestScore = toMaximize ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+		for (int i=0; i<cnt; i++) {
+			BreakthroughMove mv = mvs[i];
+			char captured = brd.board[mv.endingRow][mv.endingCol];
+			brd.makeMove(mv);
+			int score;
+			if (brd.getStatus() == GameState.Status.HOME_WIN) {
+				score = Integer.MAX_VALUE - 1;
+			} else if (brd.getStatus() == GameState.Status.AWAY_WIN) {
+				score = Integer.MIN_VALUE + 1;
+			} else {
+				score = ABBreakthroughPlayer2.evalBoard(brd) + rand.nextInt(3) - 1;
+			}
+			brd.undoMove(mv, captured);
+			if (toMaximize ? score > bestScore : score < bestScore) {
+				bestScore = score;
+				best = i;
+			}
+		}
+		return best;
+	}
+	/**
+	 * Reads every game log below dir. A log holds the position after each
+	 * move (the board, top row first, then the message suffix), and its
+	 * name ends in "Player(W) vs Other(B) #n WIN.txt" or LOSS.txt, from
+	 * the first player's point of view. The copy of a game already read
+	 * from the other player's directory is skipped.
+	 * @return Number of games read
+	 */
+	public int readDumps(File dir)
+	{
+		int games = 0;
+		File [] files = dir.listFiles();
+		if (files == null) {
+			return 0;
+		}
+		Arrays.sort(files);
+		for (File f : files) {
+			if (f.isDirectory()) {
+				games += readDumps(f);
+			} else if (readDump(f)) {
+				games++;
+			}
+		}
+		return games;
+	}
+	private boolean readDump(File f)
+	{
+		String name = f.getName();
+		boolean won = name.endsWith(" WIN.txt");
+		if (!won && !name.endsWith(" LOSS.txt") || name.indexOf(") vs ") < 1) {
+			return false;
+		}
+		int vs = name.indexOf(") vs ");
+		int num = name.lastIndexOf(" #");
+		if (num < vs) {
+			return false;
+		}
+		char color = name.charAt(vs - 1);
+		boolean homeWon = (color == BreakthroughState.homeSym) == won;
+		String first = name.substring(0, vs + 1), second = name.substring(vs + 5, num);
+		boolean firstHome = color == BreakthroughState.homeSym;
+		File tournament = f.getAbsoluteFile().getParentFile().getParentFile();
+		String game = tournament + "|" + (firstHome ? first + "|" + second : second + "|" + first) +
+						name.substring(num, name.lastIndexOf(' ')) + "|" + homeWon;
+		if (!loggedGames.add(game)) {
+			return false;
+		}
+
+		int N = BreakthroughState.N;
+		ArrayList<BreakthroughState> positions = new ArrayList<BreakthroughState>();
+		LinkedList<String> rows = new LinkedList<String>();
+		try {
+			BufferedReader in = new BufferedReader(new FileReader(f));
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.startsWith("[") && line.endsWith("]") && rows.size() == N) {
+					StringBuilder msg = new StringBuilder();
+					for (String row : rows) {
+						msg.append(row);
+					}
+					msg.append(line);
+					BreakthroughState brd = new BreakthroughState();
+					brd.parseMsgString(msg.toString());
+					if (brd.getStatus() == GameState.Status.GAME_ON) {
+						positions.add(brd);
+					}
+					rows.clear();
+				} else {
+					if (line.length() == N) {
+						rows.add(line);
+					} else {
+						rows.clear();
+					}
+					if (rows.size() > N) {
+						rows.removeFirst();
+					}
+				}
+			}
+			in.close();
+		}
+		catch (Exception e) {
+			System.err.printf("Problem reading %s%n", f);
+			return false;
+		}
+		addGame(positions, homeWon);
+		return !positions.isEmpty();
+	}
+	public void save(String fname) throws IOException
+	{
+		DataOutputStream out =
+			new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname)));
+		out.writeInt(MAGIC);
+		out.writeInt(BreakthroughState.N);
+		out.writeInt(numPositions);
+		for (int i=0; i<numPositions; i++) {
+			out.writeLong(homeBits[i]);
+			out.writeLong(awayBits[i]);
+			out.writeByte(flags[i]);
+		}
+		out.close();
+	}
+	public static EvalTuner load(String fname) throws IOException
+	{
+		DataInputStream in =
+			new DataInputStream(new BufferedInputStream(new FileInputStream(fname)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != BreakthroughState.N) {
+				throw new IOException(fname + " is not a dataset for this board size");
+			}
+			EvalTuner data = new EvalTuner();
+			int num = in.readInt();
+			data.homeBits = new long [num];
+			data.awayBits = new long [num];
+			data.flags = new byte [num];
+			for (int i=0; i<num; i++) {
+				data.homeBits[i] = in.readLong();
+				data.awayBits[i] = in.readLong();
+				data.flags[i] = in.readByte();
+			}
+			data.numPositions = num;
+			return data;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * The evalBoard terms of every position, standardized, with the
+	 * results as 0 or 1.
+	 */
+	private static class Problem {
+		final int num;
+		final float [] x;			// num x NUM_TERMS
+		final float [] y;
+		final double [] scale = new double [ABBreakthroughPlayer2.NUM_TERMS];
+		final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+		Problem(EvalTuner data)
+		{
+			int T = ABBreakthroughPlayer2.NUM_TERMS;
+			num = data.numPositions;
+			x = new float [num * T];
+			y = new float [num];
+			BreakthroughState brd = new BreakthroughState();
+			int [] terms = new int [T];
+			double [] sumSq = new double [T];
+			for (int p=0; p<num; p++) {
+				data.position(p, brd);
+				ABBreakthroughPlayer2.evalTerms(brd, terms);
+				for (int t=0; t<T; t++) {
+					x[p * T + t] = terms[t];
+					sumSq[t] += (double)terms[t] * terms[t];
+				}
+				y[p] = (data.flags[p] & HOME_WON) != 0 ? 1 : 0;
+			}
+			// Terms are all roughly centred on zero, so they are only
+			// scaled (to unit root mean square), never shifted; that keeps
+			// the fitted evaluation free of a constant term.
+			for (int t=0; t<T; t++) {
+				scale[t] = sumSq[t] > 0 ? Math.sqrt(sumSq[t] / num) : 1;
+				for (int p=0; p<num; p++) {
+					x[p * T + t] /= scale[t];
+				}
+			}
+		}
+		/**
+		 * @return Mean loss followed by the gradient of each weight
+		 */
+		double [] lossAndGradient(double [] w)
+		{
+			double [] sums = pool.invoke(new Slice(this, w, 0, num));
+			for (int i=0; i<sums.length; i++) {
+				sums[i] /= num;
+			}
+			return sums;
+		}
+	}
+	private static class Slice extends RecursiveTask<double []> {
+		private static final long serialVersionUID = 1L;
+		private final Problem prob;
+		private final double [] w;
+		private final int lo, hi;
+		Slice(Problem prob, double [] w, int lo, int hi)
+		{ this.prob = prob; this.w = w; this.lo = lo; this.hi = hi; }
+		protected double [] compute()
+		{
+			int T = w.length;
+			if (hi - lo > MIN_SLICE) {
+				int mid = (lo + hi) >>> 1;
+				Slice left = new Slice(prob, w, lo, mid);
+				left.fork();
+				double [] res = new Slice(prob, w, mid, hi).compute();
+				double [] other = left.join();
+				for (int i=0; i<=T; i++) {
+					res[i] += other[i];
+				}
+				return res;
+			}
+			double [] res = new double [T+1];
+			float [] x = prob.x;
+			float [] y = prob.y;
+			for (int p=lo; p<hi; p++) {
+				int off = p * T;
+				double z = 0;
+				for (int t=0; t<T; t++) {
+					z += w[t] * x[off + t];
+				}
+				double pred = 1 / (1 + Math.exp(-z));
+				res[0] -= y[p] * Math.log(pred + 1e-12) + (1 - y[p]) * Math.log(1 - pred + 1e-12);
+				double err = pred - y[p];
+				for (int t=0; t<T; t++) {
+					res[t+1] += err * x[off + t];
+				}
+			}
+			return res;
+		}
+	}
+	/**
+	 * Fits the weights and converts them to evalBoard units.
+	 * @return Integer weights, in the order of ABBreakthroughPlayer2.TERM_NAMES
+	 */
+	public int [] tune(int iterations)
+	{
+		int T = ABBreakthroughPlayer2.NUM_TERMS;
+		long start = System.currentTimeMillis();
+		Problem prob = new Problem(this);
+		System.out.printf("Computed terms of %d positions in %.1f secs%n", prob.num,
+						(System.currentTimeMillis() - start) / 1000.0);
+
+		// The current weights, at the best overall scale, as a baseline
+		double [] hand = new double [T];
+		for (int t=0; t<T; t++) {
+			hand[t] = ABBreakthroughPlayer2.weights[t] * prob.scale[t];
+		}
+		double bestLoss = Double.MAX_VALUE, bestK = 0;
+		for (double k=1e-4; k<1; k*=1.25) {
+			double [] w = new double [T];
+			for (int t=0; t<T; t++) {
+				w[t] = k * hand[t];
+			}
+			double loss = prob.lossAndGradient(w)[0];
+			if (loss < bestLoss) {
+				bestLoss = loss;
+				bestK = k;
+			}
+		}
+		System.out.printf("Current weights: loss %.5f (at %.4f log-odds per unit)%n", bestLoss, bestK);
+
+		start = System.currentTimeMillis();
+		double [] w = new double [T];
+		double loss = 0;
+		for (int i=0; i<iterations; i++) {
+			double [] lg = prob.lossAndGradient(w);
+			loss = lg[0];
+			for (int t=0; t<T; t++) {
+				w[t] -= LEARNING_RATE * lg[t+1];
+			}
+		}
+		prob.pool.shutdown();
+		System.out.printf("Tuned weights: loss %.5f after %d iterations on %d threads (%.1f secs)%n",
+						loss, iterations, Runtime.getRuntime().availableProcessors(),
+						(System.currentTimeMillis() - start) / 1000.0);
+		int [] res = new int [T];
+		for (int t=0; t<T; t++) {
+			res[t] = (int)Math.round(EVAL_SCALE * w[t] / prob.scale[t]);
+		}
+		return res;
+	}
+	/**
+	 * Writes weights in the form read by ABBreakthroughPlayer2.loadWeights.
+	 */
+	public static void saveWeights(String fname, int [] weights) throws IOException
+	{
+		PrintWriter out = new PrintWriter(new FileWriter(fname));
+		out.printf("# Written by EvalTuner; %d evalBoard units per unit of log-odds%n", EVAL_SCALE);
+		for (int t=0; t<weights.length; t++) {
+			out.printf("%s=%d%n", ABBreakthroughPlayer2.TERM_NAMES[t], weights[t]);
+		}
+		out.close();
+	}
+	public static void main(String [] args) throws IOException
+	{
+		if (args.length >= 2 && args[0].equals("extract")) {
+			int games = args.length > 2 ? Integer.parseInt(args[2]) : 25000;
+			String dumps = args.length > 3 ? args[3] : "Dumps";
+			EvalTuner data = new EvalTuner();
+			long start = System.currentTimeMillis();
+			int logged = data.readDumps(new File(dumps));
+			int fromLogs = data.numPositions;
+			data.selfPlay(games, 1);
+			System.out.printf("%d positions from %d logged games, %d from %d self-play games (%.1f secs)%n",
+							fromLogs, logged, data.numPositions - fromLogs, games,
+							(System.currentTimeMillis() - start) / 1000.0);
+			data.save(args[1]);
+			System.out.printf("Wrote %s%n", args[1]);
+		} else if (args.length >= 2 && args[0].equals("tune")) {
+			String outFile = args.length > 2 ? args[2] : ABBreakthroughPlayer2.WEIGHTS_FILE;
+			int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+			int [] weights = load(args[1]).tune(iterations);
+			for (int t=0; t<weights.length; t++) {
+				System.out.printf("%s=%d%n", ABBreakthroughPlayer2.TERM_NAMES[t], weights[t]);
+			}
+			saveWeights(outFile, weights);
+			System.out.printf("Wrote %s%n", outFile);
+		} else {
+			System.err.println("Usage: java breakthrough.EvalTuner extract datafile [selfPlayGames [dumpsDir]]");
+			System.err.println("       java breakthrough.EvalTuner tune datafile [weightsfile [iterations]]");
+		}
+	}
+}
@@ -0,0 +1,538 @@
+package breakthrough;
+
+import java.util.Arrays;
+
+/**
+ * Bitboard Breakthrough position for any board size from 4 to MAX_N,
+ * independent of the size in the config file. Square [r][c] is bit
+ * r*n+c of the board, spread over as many longs as it takes: a single
+ * long up to 8x8 (Narrow), an array of them beyond (Wide). create()
+ * picks the implementation; both give the same moves and scores.
+ *
+ * Moves are ints, from | to << 8, with CAPTURE or'd in when the move
+ * takes a piece, so make/undo need nothing else. Material, advancement
+ * and piece-square values are running sums as in BreakthroughState;
+ * the other evalBoard terms are mask and popcount operations.
+ *
+ * BreakthroughState keeps one of these current (wideBits) when its own
+ * single-long bitboards are too small for the board.
+ */
+public abstract class FastBoard {
+	public static final int MIN_N = 4;
+	public static final int MAX_N = 16;
+	public static final int CAPTURE = 1 << 16;
+	// At most 2n pieces a side, each with at most 3 moves
+	public static final int MAX_MOVES = 6 * MAX_N;
+
+	public final int n;
+	public boolean homeToMove;
+	public int homeCount, awayCount;
+	public int homeAdvance, awayAdvance;
+	public int pieceSquare;			// HOME total - AWAY total
+	// Piece-square value of each square for HOME and for AWAY
+	private final int [] homeValue, awayValue;
+	private final int [] rowOf;
+
+	protected FastBoard(int n)
+	{
+		this.n = n;
+		int [][] tbl = BreakthroughState.pieceSquareTable(n);
+		homeValue = new int [n*n];
+		awayValue = new int [n*n];
+		rowOf = new int [n*n];
+		for (int r=0; r<n; r++) {
+			for (int c=0; c<n; c++) {
+				homeValue[r*n + c] = tbl[r][c];
+				awayValue[r*n + c] = tbl[n-1-r][c];
+				rowOf[r*n + c] = r;
+			}
+		}
+	}
+	/**
+	 * @param n Board size, MIN_N to MAX_N
+	 * @return An empty board of that size, HOME to move
+	 */
+	public static FastBoard create(int n)
+	{
+		if (n < MIN_N || n > MAX_N) {
+			throw new IllegalArgumentException("board size " + n + " not in " + MIN_N + ".." + MAX_N);
+		}
+		return n*n <= 64 ? new Narrow(n) : new Wide(n);
+	}
+	public static int from(int mv)
+	{ return mv & 0xFF; }
+	public static int to(int mv)
+	{ return (mv >>> 8) & 0xFF; }
+	public static boolean isCapture(int mv)
+	{ return (mv & CAPTURE) != 0; }
+	public BreakthroughMove toMove(int mv)
+	{
+		BreakthroughMove res = new BreakthroughMove();
+		res.startRow = from(mv) / n;
+		res.startCol = from(mv) % n;
+		res.endingRow = to(mv) / n;
+		res.endingCol = to(mv) % n;
+		return res;
+	}
+
+	/**
+	 * Empties the board; HOME to move.
+	 */
+	public void clear()
+	{
+		clearBits();
+		homeToMove = true;
+		homeCount = awayCount = 0;
+		homeAdvance = awayAdvance = 0;
+		pieceSquare = 0;
+	}
+	/**
+	 * Two full rows of pieces for each side; HOME to move.
+	 */
+	public void reset()
+	{
+		clear();
+		for (int c=0; c<n; c++) {
+			place(true, c);
+			place(true, n + c);
+			place(false, (n-2)*n + c);
+			place(false, (n-1)*n + c);
+		}
+	}
+	/**
+	 * Sets the board from a BreakthroughState style char board of size n.
+	 */
+	public void load(char [][] board, boolean homeToMove)
+	{
+		clear();
+		for (int r=0; r<n; r++) {
+			for (int c=0; c<n; c++) {
+				if (board[r][c] == BreakthroughState.homeSym) {
+					place(true, r*n + c);
+				} else if (board[r][c] == BreakthroughState.awaySym) {
+					place(false, r*n + c);
+				}
+			}
+		}
+		this.homeToMove = homeToMove;
+	}
+	/**
+	 * Puts a piece on an empty square.
+	 */
+	public void place(boolean home, int sq)
+	{
+		setBit(home, sq);
+		if (home) {
+			homeCount++;
+			homeAdvance += rowOf[sq];
+			pieceSquare += homeValue[sq];
+		} else {
+			awayCount++;
+			awayAdvance += n-1 - rowOf[sq];
+			pieceSquare -= awayValue[sq];
+		}
+	}
+	/**
+	 * Takes a piece off the board.
+	 */
+	public void remove(boolean home, int sq)
+	{
+		clearBit(home, sq);
+		if (home) {
+			homeCount--;
+			homeAdvance -= rowOf[sq];
+			pieceSquare -= homeValue[sq];
+		} else {
+			awayCount--;
+			awayAdvance -= n-1 - rowOf[sq];
+			pieceSquare += awayValue[sq];
+		}
+	}
+	/**
+	 * Makes a move from generateMoves for the side to move.
+	 */
+	public void makeMove(int mv)
+	{
+		int from = from(mv), to = to(mv);
+		boolean home = homeToMove;
+		flipBits(home, from, to);
+		if (home) {
+			homeAdvance++;
+			pieceSquare += homeValue[to] - homeValue[from];
+		} else {
+			awayAdvance++;
+			pieceSquare -= awayValue[to] - awayValue[from];
+		}
+		if ((mv & CAPTURE) != 0) {
+			remove(!home, to);
+		}
+		homeToMove = !home;
+	}
+	/**
+	 * Takes back mv, which must be the last move made.
+	 */
+	public void undoMove(int mv)
+	{
+		int from = from(mv), to = to(mv);
+		boolean home = !homeToMove;
+		homeToMove = home;
+		if ((mv & CAPTURE) != 0) {
+			place(!home, to);
+		}
+		flipBits(home, from, to);
+		if (home) {
+			homeAdvance--;
+			pieceSquare -= homeValue[to] - homeValue[from];
+		} else {
+			awayAdvance--;
+			pieceSquare += awayValue[to] - awayValue[from];
+		}
+	}
+	/**
+	 * @return true if a side has reached the far row or lost every piece
+	 */
+	public boolean gameOver()
+	{ return homeCount == 0 || awayCount == 0 || reachedGoal(); }
+	/**
+	 * ABBreakthroughPlayer2.evalBoard (without a network) for this board.
+	 */
+	public int evaluate()
+	{
+		int [] w = ABBreakthroughPlayer2.weights;
+		return w[ABBreakthroughPlayer2.MATERIAL] * (homeCount - awayCount) +
+				w[ABBreakthroughPlayer2.PIECE_SQUARE] * pieceSquare +
+				w[ABBreakthroughPlayer2.ADVANCE] * (homeAdvance - awayAdvance) +
+				w[ABBreakthroughPlayer2.COVERAGE] * coverage() +
+				w[ABBreakthroughPlayer2.BACK_ROW] * win() +
+				w[ABBreakthroughPlayer2.NUM_US] * (homeToMove ? homeCount : -awayCount) +
+				w[ABBreakthroughPlayer2.STEADY] * steadyBackLine();
+	}
+	/**
+	 * Number of leaf positions depth moves ahead.
+	 * @param mvs Move lists, one per ply, each MAX_MOVES long
+	 */
+	public long perft(int depth, int [][] mvs)
+	{
+		if (depth == 0 || gameOver()) {
+			return depth == 0 ? 1 : 0;
+		}
+		int [] list = mvs[depth];
+		int cnt = generateMoves(list);
+		if (depth == 1) {
+			return cnt;
+		}
+		long total = 0;
+		for (int i=0; i<cnt; i++) {
+			makeMove(list[i]);
+			total += perft(depth-1, mvs);
+			undoMove(list[i]);
+		}
+		return total;
+	}
+
+	/**
+	 * Fills mvs with the legal moves of the side to move, tactical moves
+	 * first.
+	 * @return The number of moves
+	 */
+	public int generateMoves(int [] mvs)
+	{ return generateQuiet(mvs, generateTactical(mvs, 0)); }
+	/**
+	 * Adds the captures and the moves onto the goal row to mvs, starting
+	 * at mvs[cnt].
+	 * @return The new number of moves in mvs
+	 */
+	public abstract int generateTactical(int [] mvs, int cnt);
+	/**
+	 * Adds the moves generateTactical leaves out.
+	 */
+	public abstract int generateQuiet(int [] mvs, int cnt);
+	// Same values as the BreakthroughBits functions of the same names
+	public abstract int coverage();
+	public abstract int win();
+	public abstract int steadyBackLine();
+	protected abstract boolean reachedGoal();
+	protected abstract void clearBits();
+	protected abstract void setBit(boolean home, int sq);
+	protected abstract void clearBit(boolean home, int sq);
+	protected abstract void flipBits(boolean home, int from, int to);
+
+	/**
+	 * Squares eval_steadybackline looks at: the odd rows short of the
+	 * last one, in the first and last columns.
+	 */
+	static boolean isSteadySquare(int n, int r, int c)
+	{ return r % 2 == 1 && r < n-1 && (c == 0 || c == n-1); }
+
+	/**
+	 * Boards of up to 64 squares, in one long per side.
+	 */
+	static final class Narrow extends FastBoard {
+		private final long board, notFirstCol, notLastCol;
+		private final long homeRow, awayRow, steady;
+		public long home, away;
+
+		Narrow(int n)
+		{
+			super(n);
+			long first = 0, last = 0, st = 0;
+			for (int r=0; r<n; r++) {
+				first |= 1L << (r*n);
+				last |= 1L << (r*n + n-1);
+				for (int c=0; c<n; c++) {
+					if (isSteadySquare(n, r, c))
+						st |= 1L << (r*n + c);
+				}
+			}
+			board = n*n == 64 ? -1L : (1L << (n*n)) - 1;
+			notFirstCol = board & ~first;
+			notLastCol = board & ~last;
+			homeRow = (1L << n) - 1;
+			awayRow = homeRow << ((n-1)*n);
+			steady = st;
+		}
+		static int emit(long targets, int delta, int flag, int [] mvs, int cnt)
+		{
+			while (targets != 0) {
+				int to = Long.numberOfTrailingZeros(targets);
+				targets &= targets - 1;
+				mvs[cnt++] = (to - delta) | to << 8 | flag;
+			}
+			return cnt;
+		}
+		private int generate(int [] mvs, int cnt, boolean tactical)
+		{
+			int n = this.n;
+			long empty = board & ~(home | away);
+			if (homeToMove) {
+				long left = (home << (n-1)) & notLastCol;
+				long right = (home << (n+1)) & notFirstCol;
+				long open = empty & (tactical ? awayRow : ~awayRow);
+				if (tactical) {
+					cnt = emit(left & away, n-1, CAPTURE, mvs, cnt);
+					cnt = emit(right & away, n+1, CAPTURE, mvs, cnt);
+				}
+				cnt = emit(left & open, n-1, 0, mvs, cnt);
+				cnt = emit(right & open, n+1, 0, mvs, cnt);
+				cnt = emit((home << n) & open, n, 0, mvs, cnt);
+			} else {
+				long left = (away >>> (n+1)) & notLastCol;
+				long right = (away >>> (n-1)) & notFirstCol;
+				long open = empty & (tactical ? homeRow : ~homeRow);
+				if (tactical) {
+					cnt = emit(left & home, -(n+1), CAPTURE, mvs, cnt);
+					cnt = emit(right & home, -(n-1), CAPTURE, mvs, cnt);
+				}
+				cnt = emit(left & open, -(n+1), 0, mvs, cnt);
+				cnt = emit(right & open, -(n-1), 0, mvs, cnt);
+				cnt = emit((away >>> n) & open, -n, 0, mvs, cnt);
+			}
+			return cnt;
+		}
+		public int generateTactical(int [] mvs, int cnt)
+		{ return generate(mvs, cnt, true); }
+		public int generateQuiet(int [] mvs, int cnt)
+		{ return generate(mvs, cnt, false); }
+		private long diagonallyCovered(long bits)
+		{
+			int n = this.n;
+			long nbrs = ((bits >>> (n+1)) & notLastCol) |
+						((bits >>> (n-1)) & notFirstCol) |
+						((bits << (n-1)) & notLastCol) |
+						((bits << (n+1)) & notFirstCol);
+			return bits & nbrs;
+		}
+		public int coverage()
+		{ return Long.bitCount(diagonallyCovered(home)) - Long.bitCount(diagonallyCovered(away)); }
+		public int win()
+		{
+			long backRows = homeRow | awayRow;
+			return Long.bitCount(home & backRows) - Long.bitCount(away & backRows);
+		}
+		public int steadyBackLine()
+		{ return 2 * (Long.bitCount(away & steady) - Long.bitCount(home & steady)); }
+		protected boolean reachedGoal()
+		{ return (home & awayRow) != 0 || (away & homeRow) != 0; }
+		protected void clearBits()
+		{ home = away = 0; }
+		protected void setBit(boolean h, int sq)
+		{
+			if (h)
+				home |= 1L << sq;
+			else
+				away |= 1L << sq;
+		}
+		protected void clearBit(boolean h, int sq)
+		{
+			if (h)
+				home &= ~(1L << sq);
+			else
+				away &= ~(1L << sq);
+		}
+		protected void flipBits(boolean h, int from, int to)
+		{
+			long b = 1L << from | 1L << to;
+			if (h)
+				home ^= b;
+			else
+				away ^= b;
+		}
+	}
+
+	/**
+	 * Boards of more than 64 squares. Square s is bit s%64 of word s/64;
+	 * shifts carry bits between neighbouring words, and every mask is
+	 * kept per word.
+	 */
+	static final class Wide extends FastBoard {
+		private final int words;
+		private final long [] board, notFirstCol, notLastCol;
+		private final long [] homeRow, awayRow, backRows, steady;
+		public final long [] home, away;
+
+		Wide(int n)
+		{
+			super(n);
+			words = (n*n + 63) / 64;
+			board = new long [words];
+			notFirstCol = new long [words];
+			notLastCol = new long [words];
+			homeRow = new long [words];
+			awayRow = new long [words];
+			backRows = new long [words];
+			steady = new long [words];
+			home = new long [words];
+			away = new long [words];
+			for (int r=0; r<n; r++) {
+				for (int c=0; c<n; c++) {
+					int sq = r*n + c;
+					long b = 1L << sq;
+					int i = sq >>> 6;
+					board[i] |= b;
+					if (c != 0)
+						notFirstCol[i] |= b;
+					if (c != n-1)
+						notLastCol[i] |= b;
+					if (r == 0)
+						homeRow[i] |= b;
+					if (r == n-1)
+						awayRow[i] |= b;
+					if (isSteadySquare(n, r, c))
+						steady[i] |= b;
+				}
+			}
+			for (int i=0; i<words; i++) {
+				backRows[i] = homeRow[i] | awayRow[i];
+			}
+		}
+		/**
+		 * Word i of bits << k, for 0 < k < 64
+		 */
+		private static long shl(long [] bits, int i, int k)
+		{ return i == 0 ? bits[0] << k : bits[i] << k | bits[i-1] >>> (64-k); }
+		/**
+		 * Word i of bits >>> k, for 0 < k < 64
+		 */
+		private long shr(long [] bits, int i, int k)
+		{ return i == words-1 ? bits[i] >>> k : bits[i] >>> k | bits[i+1] << (64-k); }
+		private static int emit(long targets, int base, int delta, int flag, int [] mvs, int cnt)
+		{
+			while (targets != 0) {
+				int to = base + Long.numberOfTrailingZeros(targets);
+				targets &= targets - 1;
+				mvs[cnt++] = (to - delta) | to << 8 | flag;
+			}
+			return cnt;
+		}
+		private int generate(int [] mvs, int cnt, boolean tactical)
+		{
+			int n = this.n;
+			long [] home = this.home, away = this.away;
+			for (int i=0; i<words; i++) {
+				long empty = board[i] & ~(home[i] | away[i]);
+				int base = i << 6;
+				if (homeToMove) {
+					long left = shl(home, i, n-1) & notLastCol[i];
+					long right = shl(home, i, n+1) & notFirstCol[i];
+					long open = empty & (tactical ? awayRow[i] : ~awayRow[i]);
+					if (tactical) {
+						cnt = emit(left & away[i], base, n-1, CAPTURE, mvs, cnt);
+						cnt = emit(right & away[i], base, n+1, CAPTURE, mvs, cnt);
+					}
+					cnt = emit(left & open, base, n-1, 0, mvs, cnt);
+					cnt = emit(right & open, base, n+1, 0, mvs, cnt);
+					cnt = emit(shl(home, i, n) & open, base, n, 0, mvs, cnt);
+				} else {
+					long left = shr(away, i, n+1) & notLastCol[i];
+					long right = shr(away, i, n-1) & notFirstCol[i];
+					long open = empty & (tactical ? homeRow[i] : ~homeRow[i]);
+					if (tactical) {
+						cnt = emit(left & home[i], base, -(n+1), CAPTURE, mvs, cnt);
+						cnt = emit(right & home[i], base, -(n-1), CAPTURE, mvs, cnt);
+					}
+					cnt = emit(left & open, base, -(n+1), 0, mvs, cnt);
+					cnt = emit(right & open, base, -(n-1), 0, mvs, cnt);
+					cnt = emit(shr(away, i, n) & open, base, -n, 0, mvs, cnt);
+				}
+			}
+			return cnt;
+		}
+		public int generateTactical(int [] mvs, int cnt)
+		{ return generate(mvs, cnt, true); }
+		public int generateQuiet(int [] mvs, int cnt)
+		{ return generate(mvs, cnt, false); }
+		private int countCovered(long [] bits)
+		{
+			int n = this.n, total = 0;
+			for (int i=0; i<words; i++) {
+				long nbrs = (shr(bits, i, n+1) & notLastCol[i]) |
+							(shr(bits, i, n-1) & notFirstCol[i]) |
+							(shl(bits, i, n-1) & notLastCol[i]) |
+							(shl(bits, i, n+1) & notFirstCol[i]);
+				total += Long.bitCount(bits[i] & nbrs);
+			}
+			return total;
+		}
+		public int coverage()
+		{ return countCovered(home) - countCovered(away); }
+		public int win()
+		{
+			int total = 0;
+			for (int i=0; i<words; i++) {
+				total += Long.bitCount(home[i] & backRows[i]) - Long.bitCount(away[i] & backRows[i]);
+			}
+			return total;
+		}
+		public int steadyBackLine()
+		{
+			int total = 0;
+			for (int i=0; i<words; i++) {
+				total += Long.bitCount(away[i] & steady[i]) - Long.bitCount(home[i] & steady[i]);
+			}
+			return 2 * total;
+		}
+		protected boolean reachedGoal()
+		{
+			for (int i=0; i<words; i++) {
+				if ((home[i] & awayRow[i]) != 0 || (away[i] & homeRow[i]) != 0)
+					return true;
+			}
+			return false;
+		}
+		protected void clearBits()
+		{
+			Arrays.fill(home, 0);
+			Arrays.fill(away, 0);
+		}
+		protected void setBit(boolean h, int sq)
+		{ (h ? home : away)[sq >>> 6] |= 1L << sq; }
+		protected void clearBit(boolean h, int sq)
+		{ (h ? home : away)[sq >>> 6] &= ~(1L << sq); }
+		protected void flipBits(boolean h, int from, int to)
+		{
+			long [] bits = h ? home : away;
+			bits[from >>> 6] ^= 1L << from;
+			bits[to >>> 6] ^= 1L << to;
+		}
+	}
+}
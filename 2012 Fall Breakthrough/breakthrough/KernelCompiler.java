@@ -0,0 +1,218 @@
+package breakthrough;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.*;
+import javax.tools.*;
+
+/**
+ * Writes out a BitKernel specialized for the configured board size:
+ * every shift amount, mask and weight index is a literal, and the move
+ * generator is unrolled into one loop per direction with no calls. The
+ * source can be generated ahead of time (run main, add the file to the
+ * build), or compiled at startup with javax.tools and defined as a
+ * hidden class. load() takes whichever is available, in that order,
+ * and otherwise falls back to the generic kernel.
+ *
+ * The JIT already treats BreakthroughBits' static finals as constants;
+ * what the generated class saves is the per-instance state of FastBoard
+ * and the helper calls. BreakthroughBenchmark's "kernel" comparison
+ * measures what that is worth.
+ */
+public class KernelCompiler {
+	public static final int N = BreakthroughState.N;
+	public static final String CLASS_NAME = "GeneratedKernel" + N;
+
+	// Where the kernel returned by load() came from
+	public static String origin = "";
+	public static long compileNanos;
+
+	/**
+	 * The move generator of FastBoard and the terms of evalBoard, at
+	 * whatever size the bitboards are. Not thread-safe: it works on a
+	 * board of its own.
+	 */
+	public static class Generic implements BitKernel {
+		private final FastBoard.Narrow board = (FastBoard.Narrow)FastBoard.create(N);
+
+		public int generateMoves(long home, long away, boolean homeToMove, int [] mvs)
+		{
+			board.home = home;
+			board.away = away;
+			board.homeToMove = homeToMove;
+			return board.generateMoves(mvs);
+		}
+		public int evaluate(BreakthroughState brd, int [] w)
+		{
+			return w[ABBreakthroughPlayer2.MATERIAL] * brd.materialDiff() +
+					w[ABBreakthroughPlayer2.PIECE_SQUARE] * brd.pieceSquare +
+					w[ABBreakthroughPlayer2.ADVANCE] * brd.advanceDiff() +
+					w[ABBreakthroughPlayer2.COVERAGE] * BreakthroughBits.coverage(brd) +
+					w[ABBreakthroughPlayer2.BACK_ROW] * BreakthroughBits.win(brd) +
+					w[ABBreakthroughPlayer2.NUM_US] * BreakthroughBits.numUs(brd) +
+					w[ABBreakthroughPlayer2.STEADY] * BreakthroughBits.steadyBackLine(brd);
+		}
+		public String name()
+		{ return "generic"; }
+	}
+
+	private static String hex(long v)
+	{ return String.format("0x%XL", v); }
+	/**
+	 * One loop emitting a move for each bit of targets, which lie delta
+	 * squares on from their starting squares.
+	 */
+	private static void emit(StringBuilder src, String targets, int delta, boolean capture)
+	{
+		String from = delta > 0 ? "to - " + delta : "to + " + (-delta);
+		src.append("\t\t\tfor (t = ").append(targets).append("; t != 0; t &= t - 1) {\n");
+		src.append("\t\t\t\tint to = Long.numberOfTrailingZeros(t);\n");
+		src.append("\t\t\t\tmvs[cnt++] = (").append(from).append(") | to << 8")
+			.append(capture ? String.format(" | 0x%X", FastBoard.CAPTURE) : "").append(";\n");
+		src.append("\t\t\t}\n");
+	}
+	private static String covered(String bits)
+	{
+		String nlc = hex(BreakthroughBits.NOT_LAST_COL), nfc = hex(BreakthroughBits.NOT_FIRST_COL);
+		return String.format("%s & (((%s >>> %d) & %s) | ((%s >>> %d) & %s) | ((%s << %d) & %s) | ((%s << %d) & %s))",
+				bits, bits, N+1, nlc, bits, N-1, nfc, bits, N-1, nlc, bits, N+1, nfc);
+	}
+	/**
+	 * @return Java source for the kernel of the configured board size
+	 */
+	public static String source()
+	{
+		String nlc = hex(BreakthroughBits.NOT_LAST_COL), nfc = hex(BreakthroughBits.NOT_FIRST_COL);
+		String back = hex(BreakthroughBits.BACK_ROWS), steady = hex(BreakthroughBits.STEADY_SQUARES);
+		StringBuilder src = new StringBuilder();
+		src.append("package breakthrough;\n\n");
+		src.append("// Generated by KernelCompiler for N = ").append(N).append("; do not edit.\n");
+		src.append("final class ").append(CLASS_NAME).append(" implements BitKernel {\n");
+		src.append("\tpublic int generateMoves(long home, long away, boolean homeToMove, int [] mvs)\n\t{\n");
+		src.append("\t\tlong empty = ~(home | away) & ").append(hex(BreakthroughBits.BOARD)).append(";\n");
+		src.append("\t\tint cnt = 0;\n\t\tlong t;\n");
+		src.append("\t\tif (homeToMove) {\n");
+		src.append("\t\t\tlong left = (home << ").append(N-1).append(") & ").append(nlc).append(";\n");
+		src.append("\t\t\tlong right = (home << ").append(N+1).append(") & ").append(nfc).append(";\n");
+		emit(src, "left & away", N-1, true);
+		emit(src, "right & away", N+1, true);
+		emit(src, "left & empty", N-1, false);
+		emit(src, "right & empty", N+1, false);
+		emit(src, "(home << " + N + ") & empty", N, false);
+		src.append("\t\t} else {\n");
+		src.append("\t\t\tlong left = (away >>> ").append(N+1).append(") & ").append(nlc).append(";\n");
+		src.append("\t\t\tlong right = (away >>> ").append(N-1).append(") & ").append(nfc).append(";\n");
+		emit(src, "left & home", -(N+1), true);
+		emit(src, "right & home", -(N-1), true);
+		emit(src, "left & empty", -(N+1), false);
+		emit(src, "right & empty", -(N-1), false);
+		emit(src, "(away >>> " + N + ") & empty", -N, false);
+		src.append("\t\t}\n\t\treturn cnt;\n\t}\n");
+		src.append("\tpublic int evaluate(BreakthroughState brd, int [] w)\n\t{\n");
+		src.append("\t\tlong home = brd.homeBits, away = brd.awayBits;\n");
+		src.append("\t\tint numUs = brd.who == game.GameState.Who.HOME ? Long.bitCount(home) : -Long.bitCount(away);\n");
+		src.append("\t\treturn w[").append(ABBreakthroughPlayer2.MATERIAL).append("] * brd.materialDiff() +\n");
+		src.append("\t\t\t\tw[").append(ABBreakthroughPlayer2.PIECE_SQUARE).append("] * brd.pieceSquare +\n");
+		src.append("\t\t\t\tw[").append(ABBreakthroughPlayer2.ADVANCE).append("] * brd.advanceDiff() +\n");
+		src.append("\t\t\t\tw[").append(ABBreakthroughPlayer2.COVERAGE).append("] * (Long.bitCount(")
+			.append(covered("home")).append(") -\n\t\t\t\t\tLong.bitCount(").append(covered("away")).append(")) +\n");
+		src.append("\t\t\t\tw[").append(ABBreakthroughPlayer2.BACK_ROW).append("] * (Long.bitCount(home & ")
+			.append(back).append(") - Long.bitCount(away & ").append(back).append(")) +\n");
+		src.append("\t\t\t\tw[").append(ABBreakthroughPlayer2.NUM_US).append("] * numUs +\n");
+		src.append("\t\t\t\tw[").append(ABBreakthroughPlayer2.STEADY).append("] * 2 * (Long.bitCount(away & ")
+			.append(steady).append(") - Long.bitCount(home & ").append(steady).append("));\n");
+		src.append("\t}\n");
+		src.append("\tpublic String name()\n\t{ return \"generated N=").append(N).append("\"; }\n");
+		src.append("}\n");
+		return src.toString();
+	}
+	/**
+	 * Compiles the source in memory, against the classes this one was
+	 * loaded with, and defines the result as a hidden class of this
+	 * package.
+	 * @return The new kernel, or null if there is no compiler or it fails
+	 */
+	public static BitKernel compile()
+	{
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if (javac == null) {
+			return null;
+		}
+		final String source = source();
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		JavaFileObject srcFile = new SimpleJavaFileObject(
+				URI.create("string:///breakthrough/" + CLASS_NAME + ".java"), JavaFileObject.Kind.SOURCE) {
+			public CharSequence getCharContent(boolean ignoreEncodingErrors)
+			{ return source; }
+		};
+		JavaFileManager files = new ForwardingJavaFileManager<JavaFileManager>(
+				javac.getStandardFileManager(null, null, null)) {
+			public JavaFileObject getJavaFileForOutput(Location loc, String name,
+														JavaFileObject.Kind kind, FileObject sibling)
+			{
+				return new SimpleJavaFileObject(URI.create("bytes:///" + name + kind.extension), kind) {
+					public OutputStream openOutputStream()
+					{ return bytes; }
+				};
+			}
+		};
+		StringWriter errors = new StringWriter();
+		List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-g:none");
+		try {
+			if (!javac.getTask(errors, files, null, options, null, Arrays.asList(srcFile)).call()) {
+				System.err.printf("Kernel source didn't compile:%n%s", errors);
+				return null;
+			}
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes.toByteArray(), true);
+			return (BitKernel)lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+		}
+		catch (Throwable e) {
+			System.err.printf("Kernel not loaded: %s%n", e);
+			return null;
+		}
+	}
+	/**
+	 * The fastest kernel available: one generated ahead of time, one
+	 * compiled now, or the generic one. Sets origin and compileNanos.
+	 * @return null if the board is too big for single-long bitboards
+	 */
+	public static BitKernel load()
+	{
+		if (BreakthroughState.WIDE) {
+			return null;
+		}
+		try {
+			origin = "ahead of time";
+			compileNanos = 0;
+			return (BitKernel)Class.forName("breakthrough." + CLASS_NAME).getDeclaredConstructor().newInstance();
+		}
+		catch (Throwable e) {
+			// not in the build; compile it
+		}
+		long start = System.nanoTime();
+		BitKernel kernel = compile();
+		compileNanos = System.nanoTime() - start;
+		if (kernel != null) {
+			origin = "hidden class";
+			return kernel;
+		}
+		origin = "fallback";
+		return new Generic();
+	}
+	/**
+	 * Writes the kernel source for the configured board size, to be
+	 * compiled along with the rest of the package.
+	 * @param args Directory to write to (default: breakthrough)
+	 */
+	public static void main(String [] args) throws IOException
+	{
+		File dir = new File(args.length > 0 ? args[0] : "breakthrough");
+		File out = new File(dir, CLASS_NAME + ".java");
+		Writer w = new FileWriter(out);
+		w.write(source());
+		w.close();
+		System.out.printf("Wrote %s%n", out);
+	}
+}
@@ -0,0 +1,121 @@
+package breakthrough;
+import game.*;
+
+/**
+ * A batch of sibling leaves, evaluated together with
+ * ABBreakthroughPlayer2's evalBoard terms. add() copies what each leaf
+ * needs into primitive arrays: the bitboards, the bits of the side to
+ * move, and the terms BreakthroughState already keeps as running sums.
+ * evaluate() then scores the whole batch with the bitboard terms done in
+ * one pass. It works on the single-long bitboards, so only on boards of
+ * at most 8 x 8.
+ *
+ * The vector evaluator (VectorLeafEval) needs the jdk.incubator.vector
+ * module, both to compile and to run, so its source is kept apart, under
+ * vector/, and built on its own (see VectorLeafEval). It is loaded by
+ * name, so when it hasn't been built, or the module is missing at run
+ * time, evaluate() quietly uses the scalar loop instead.
+ */
+public class LeafBatch {
+	public interface Evaluator {
+		/**
+		 * Fills batch.scores[0..batch.size-1].
+		 */
+		void evaluate(LeafBatch batch);
+		String name();
+	}
+
+	public static final Evaluator SCALAR = new Evaluator() {
+		public void evaluate(LeafBatch batch)
+		{
+			int [] w = ABBreakthroughPlayer2.weights;
+			long [] home = batch.home, away = batch.away, mover = batch.mover, sign = batch.moverSign;
+			int [] base = batch.base, scores = batch.scores;
+			int size = batch.size;
+			for (int i=0; i<size; i++) {
+				scores[i] = base[i] + bitTerms(w, home[i], away[i], mover[i], sign[i]);
+			}
+		}
+		public String name()
+		{ return "scalar"; }
+	};
+	// Vector evaluator, or null if it or jdk.incubator.vector isn't available
+	public static final Evaluator VECTOR = loadVector();
+	public static final Evaluator BEST = VECTOR != null ? VECTOR : SCALAR;
+
+	public final long [] home, away;
+	public final long [] mover;			// bits of the side to move
+	public final long [] moverSign;		// +1 if HOME is to move, else -1
+	public final int [] base;			// weighted running-sum terms
+	public final int [] scores;
+	public final long [] sums;			// evaluators' scratch
+	public int size;
+
+	public LeafBatch(int capacity)
+	{
+		if (BreakthroughState.WIDE) {
+			throw new IllegalStateException("LeafBatch is for boards of at most 8 x 8");
+		}
+		home = new long [capacity];
+		away = new long [capacity];
+		mover = new long [capacity];
+		moverSign = new long [capacity];
+		base = new int [capacity];
+		scores = new int [capacity];
+		sums = new long [capacity];
+	}
+	private static Evaluator loadVector()
+	{
+		try {
+			// a class of a module that isn't in the boot layer can't be found
+			Class.forName("jdk.incubator.vector.LongVector");
+			return (Evaluator)Class.forName("breakthrough.VectorLeafEval").getDeclaredConstructor().newInstance();
+		}
+		catch (Exception e) {
+			return null;
+		}
+		catch (LinkageError e) {
+			return null;
+		}
+	}
+	public void clear()
+	{ size = 0; }
+	/**
+	 * Adds brd as the next leaf of the batch.
+	 */
+	public void add(BreakthroughState brd)
+	{
+		int [] w = ABBreakthroughPlayer2.weights;
+		int i = size++;
+		home[i] = brd.homeBits;
+		away[i] = brd.awayBits;
+		boolean homeToMove = brd.getWho() == GameState.Who.HOME;
+		mover[i] = homeToMove ? brd.homeBits : brd.awayBits;
+		moverSign[i] = homeToMove ? 1 : -1;
+		base[i] = w[ABBreakthroughPlayer2.MATERIAL] * brd.materialDiff() +
+					w[ABBreakthroughPlayer2.PIECE_SQUARE] * brd.pieceSquare +
+					w[ABBreakthroughPlayer2.ADVANCE] * brd.advanceDiff();
+	}
+	/**
+	 * Scores every leaf with the best evaluator available.
+	 */
+	public void evaluate()
+	{ BEST.evaluate(this); }
+	/**
+	 * Weighted coverage, back row, side-to-move and steady terms of one
+	 * leaf; the same values as the BreakthroughBits functions.
+	 */
+	static int bitTerms(int [] w, long home, long away, long mover, long moverSign)
+	{
+		return w[ABBreakthroughPlayer2.COVERAGE] *
+					(Long.bitCount(BreakthroughBits.diagonallyCovered(home)) -
+					 Long.bitCount(BreakthroughBits.diagonallyCovered(away))) +
+				w[ABBreakthroughPlayer2.BACK_ROW] *
+					(Long.bitCount(home & BreakthroughBits.BACK_ROWS) -
+					 Long.bitCount(away & BreakthroughBits.BACK_ROWS)) +
+				w[ABBreakthroughPlayer2.NUM_US] * (int)moverSign * Long.bitCount(mover) +
+				w[ABBreakthroughPlayer2.STEADY] * 2 *
+					(Long.bitCount(away & BreakthroughBits.STEADY_SQUARES) -
+					 Long.bitCount(home & BreakthroughBits.STEADY_SQUARES));
+	}
+}
@@ -0,0 +1,265 @@
+package breakthrough;
+import game.*;
+
+/**
+ * Hands out the moves of one node of ABBreakthroughPlayer2's search a
+ * stage at a time, generating each stage only when the ones before it
+ * have run out:
+ * <ol>
+ * <li>HASH: the best move stored for the position, if it is legal here
+ * <li>GOOD_TACTICAL: moves onto the goal row, then captures that win
+ *	material by SEE
+ * <li>KILLERS: quiet moves that caused cutoffs at the same ply
+ * <li>OTHER_CAPTURES: the even captures held back from GOOD_TACTICAL
+ * <li>QUIET: everything else, highest history score first, with moves
+ *	that lose the moving piece by SEE last
+ * </ol>
+ * A node that cuts off early never pays for its later stages. reached[]
+ * counts the nodes that got as far as each stage, against inits.
+ *
+ * Without ordering, moves come out as generated: captures and goal row
+ * moves, then the rest.
+ */
+public class MovePicker {
+	public static final int NONE = -1;
+	// Stages, indexes into reached and STAGE_NAMES
+	public static final int HASH = 0;
+	public static final int GOOD_TACTICAL = 1;
+	public static final int KILLERS = 2;
+	public static final int OTHER_CAPTURES = 3;
+	public static final int QUIET = 4;
+	public static final int NUM_STAGES = 5;
+	public static final String [] STAGE_NAMES =
+		{ "hash", "good tactical", "killers", "other captures", "quiet" };
+	private static final int N = BreakthroughState.N;
+	private static final int LOSING = -(1 << 30);	// added to the scores of losing quiet moves
+	// Steps of next(): generating a stage, then handing out its moves
+	private static final int GEN_TACTICAL = 10, GEN_QUIET = 11, DONE = 12;
+
+	private final int [] moves = new int [FastBoard.MAX_MOVES];
+	private final int [] scores = new int [FastBoard.MAX_MOVES];
+	private final int [] deferred = new int [FastBoard.MAX_MOVES];
+	private final int [] killersTried = new int [2];
+	private int step, next, end, numDeferred, numKillersTried;
+	private BreakthroughState brd;
+	private boolean ordered;
+	private int hashMove;
+	private int [] killers;
+	private int [] history;
+	private final BreakthroughMove scratch = new BreakthroughMove();
+	// The move last returned by next()
+	public final BreakthroughMove move = new BreakthroughMove();
+	public final long [] reached;
+	public long inits;
+
+	/**
+	 * @param reached Per stage counts, may be shared by several pickers
+	 */
+	public MovePicker(long [] reached)
+	{ this.reached = reached; }
+	/**
+	 * Starts on a new node.
+	 * @param ordered false to hand out moves as generated
+	 * @param hashMove Best move stored for brd, or NONE
+	 * @param killers Killer moves of this ply, NONE where there are none
+	 * @param history History scores of the side to move, by move & 0xFFFF
+	 */
+	public void init(BreakthroughState brd, boolean ordered, int hashMove, int [] killers, int [] history)
+	{
+		this.brd = brd;
+		this.ordered = ordered;
+		this.hashMove = ordered ? hashMove : NONE;
+		this.killers = killers;
+		this.history = history;
+		numKillersTried = 0;
+		step = HASH;
+		inits++;
+	}
+	/**
+	 * @return The next move, or NONE when there are no more
+	 */
+	public int next()
+	{
+		while (true) {
+			switch (step) {
+			case HASH:
+				step = GEN_TACTICAL;
+				if (hashMove != NONE && legal(hashMove)) {
+					reached[HASH]++;
+					return handOut(hashMove);
+				}
+				break;
+			case GEN_TACTICAL:
+				reached[GOOD_TACTICAL]++;
+				generateTactical();
+				step = GOOD_TACTICAL;
+				break;
+			case GOOD_TACTICAL:
+				if (next < end) {
+					return handOut(ordered ? pickBest() : moves[next++]);
+				}
+				step = ordered ? KILLERS : GEN_QUIET;
+				next = 0;
+				if (ordered) {
+					reached[KILLERS]++;
+				}
+				break;
+			case KILLERS:
+				while (next < killers.length) {
+					int mv = killers[next++];
+					if (mv != NONE && mv != hashMove && legal(mv) && !onGoalRow(mv)) {
+						killersTried[numKillersTried++] = mv;
+						return handOut(mv);
+					}
+				}
+				step = OTHER_CAPTURES;
+				next = 0;
+				reached[OTHER_CAPTURES]++;
+				break;
+			case OTHER_CAPTURES:
+				while (next < numDeferred) {
+					int mv = deferred[next++];
+					if (mv != hashMove) {
+						return handOut(mv);
+					}
+				}
+				step = GEN_QUIET;
+				break;
+			case GEN_QUIET:
+				reached[QUIET]++;
+				generateQuiet();
+				step = QUIET;
+				break;
+			case QUIET:
+				if (next < end) {
+					return handOut(ordered ? pickBest() : moves[next++]);
+				}
+				step = DONE;
+				break;
+			default:
+				return NONE;
+			}
+		}
+	}
+	/**
+	 * Fills moves with the tactical moves, minus the hash move, scored
+	 * 2 for the goal row and 1 for a capture that wins by SEE. Even
+	 * captures go to deferred.
+	 */
+	private void generateTactical()
+	{
+		int cnt = BreakthroughBits.generateTactical(brd, moves, 0);
+		int goal = brd.getWho() == GameState.Who.HOME ? N-1 : 0;
+		end = next = numDeferred = 0;
+		for (int i=0; i<cnt; i++) {
+			int mv = moves[i];
+			if (!ordered) {
+				moves[end++] = mv;
+				continue;
+			}
+			if (mv == hashMove) {
+				continue;
+			}
+			int score = FastBoard.to(mv) / N == goal ? 2 :
+						BreakthroughBits.see(brd, toMove(mv, scratch)) > 0 ? 1 : 0;
+			if (score == 0) {
+				deferred[numDeferred++] = mv;
+			} else {
+				scores[end] = score;
+				moves[end++] = mv;
+			}
+		}
+	}
+	/**
+	 * Fills moves with the quiet moves not already handed out, scored
+	 * by history.
+	 */
+	private void generateQuiet()
+	{
+		int cnt = BreakthroughBits.generateQuiet(brd, moves, 0);
+		end = next = 0;
+		for (int i=0; i<cnt; i++) {
+			int mv = moves[i];
+			if (!ordered) {
+				moves[end++] = mv;
+				continue;
+			}
+			if (mv == hashMove || tried(mv)) {
+				continue;
+			}
+			int score = history[mv & 0xFFFF];
+			if (BreakthroughBits.see(brd, toMove(mv, scratch)) < 0) {
+				score += LOSING;
+			}
+			scores[end] = score;
+			moves[end++] = mv;
+		}
+	}
+	private boolean tried(int mv)
+	{
+		for (int i=0; i<numKillersTried; i++) {
+			if (killersTried[i] == mv)
+				return true;
+		}
+		return false;
+	}
+	/**
+	 * Swaps the best scored of the remaining moves to the front and
+	 * takes it.
+	 */
+	private int pickBest()
+	{
+		int best = next;
+		for (int i=next+1; i<end; i++) {
+			if (scores[i] > scores[best])
+				best = i;
+		}
+		int mv = moves[best], score = scores[best];
+		moves[best] = moves[next];
+		scores[best] = scores[next];
+		moves[next] = mv;
+		scores[next] = score;
+		next++;
+		return mv;
+	}
+	private int handOut(int mv)
+	{
+		toMove(mv, move);
+		return mv;
+	}
+	/**
+	 * Sets mv to the move encoded in m.
+	 */
+	public static BreakthroughMove toMove(int m, BreakthroughMove mv)
+	{
+		mv.startRow = FastBoard.from(m) / N;
+		mv.startCol = FastBoard.from(m) % N;
+		mv.endingRow = FastBoard.to(m) / N;
+		mv.endingCol = FastBoard.to(m) % N;
+		return mv;
+	}
+	private boolean onGoalRow(int mv)
+	{ return FastBoard.to(mv) / N == (brd.getWho() == GameState.Who.HOME ? N-1 : 0); }
+	/**
+	 * Whether a stored move (which may come from another position with
+	 * the same hash slot, or another ply) can be made here as encoded.
+	 */
+	private boolean legal(int mv)
+	{
+		int from = FastBoard.from(mv), to = FastBoard.to(mv);
+		if (from >= N*N || to >= N*N) {
+			return false;
+		}
+		boolean homeToMove = brd.getWho() == GameState.Who.HOME;
+		int fr = from / N, fc = from % N, tr = to / N, tc = to % N;
+		char us = homeToMove ? BreakthroughState.homeSym : BreakthroughState.awaySym;
+		char them = homeToMove ? BreakthroughState.awaySym : BreakthroughState.homeSym;
+		if (tr != fr + (homeToMove ? 1 : -1) || Math.abs(tc - fc) > 1 || brd.board[fr][fc] != us) {
+			return false;
+		}
+		if (FastBoard.isCapture(mv)) {
+			return tc != fc && brd.board[tr][tc] == them;
+		}
+		return brd.board[tr][tc] == BreakthroughState.emptySym;
+	}
+}
@@ -0,0 +1,230 @@
+package breakthrough;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Small quantized neural evaluation for Breakthrough. There is one input
+ * per (side, square) pair, one clipped-ReLU hidden layer held as int16,
+ * and a single output. Everything on the inference path is integer
+ * arithmetic.
+ *
+ * The first layer's sums live in an Accumulator attached to a
+ * BreakthroughState. makeMove/undoMove add and subtract one weight column
+ * per piece that appears or disappears, so evaluating a leaf only
+ * touches the hidden layer. Weights are written by NNUETrainer.
+ *
+ * The sums are int16, so a network is only usable if no position can
+ * push one out of range: each hidden unit's bias plus its MAX_PIECES
+ * largest (or smallest) weights from each side's inputs must fit in a
+ * short (see worstSum). A sum may wrap for a moment while a move is
+ * made, since a piece can be added before another is taken off, but
+ * wrapping arithmetic comes back exactly once it is.
+ */
+public class NNUEEval {
+	public static final int MAGIC = 0x4E4E5545;		// "NNUE"
+	public static final int SQUARES = BreakthroughState.N * BreakthroughState.N;
+	public static final int INPUTS = 2 * SQUARES;
+	public static final int QA = 127;		// hidden activations are in [0, QA]
+	public static final int QB = 64;		// output weight scale
+	public static final int EVAL_SCALE = 100;	// eval units per unit of network output
+	public static final String DEFAULT_FILE = "config" + File.separatorChar + "breakthrough.nnue";
+	// Most pieces a side can have, so most inputs of each side ever on
+	public static final int MAX_PIECES = 2 * BreakthroughState.N;
+
+	public final int hidden;
+	final short [] inputWeights;	// INPUTS x hidden, feature major
+	final short [] hiddenBias;
+	final short [] outputWeights;
+	final int outputBias;
+
+	/**
+	 * First layer sums for one position.
+	 */
+	public class Accumulator {
+		public final short [] values = new short [hidden];
+
+		public void add(int feature)
+		{
+			short [] v = values;
+			short [] w = inputWeights;
+			int off = feature * v.length;
+			for (int i=0; i<v.length; i++) {
+				v[i] += w[off + i];
+			}
+		}
+		public void sub(int feature)
+		{
+			short [] v = values;
+			short [] w = inputWeights;
+			int off = feature * v.length;
+			for (int i=0; i<v.length; i++) {
+				v[i] -= w[off + i];
+			}
+		}
+		/**
+		 * Recomputes the sums from scratch for brd's pieces.
+		 */
+		public void refresh(BreakthroughState brd)
+		{
+			System.arraycopy(hiddenBias, 0, values, 0, hidden);
+			int N = BreakthroughState.N;
+			for (int r=0; r<N; r++) {
+				for (int c=0; c<N; c++) {
+					if (brd.board[r][c] == BreakthroughState.homeSym) {
+						add(homeFeature(r, c));
+					} else if (brd.board[r][c] == BreakthroughState.awaySym) {
+						add(awayFeature(r, c));
+					}
+				}
+			}
+		}
+		/**
+		 * @return Evaluation from HOME's point of view
+		 */
+		public int evaluate()
+		{
+			short [] vals = values;
+			short [] w = outputWeights;
+			int sum = outputBias;
+			for (int i=0; i<vals.length; i++) {
+				int v = Math.min(QA, Math.max(0, vals[i]));
+				sum += v * w[i];
+			}
+			return (int)((long)sum * EVAL_SCALE / (QA * QB));
+		}
+		public NNUEEval network()
+		{ return NNUEEval.this; }
+	}
+
+	public NNUEEval(int hidden, short [] inputWeights, short [] hiddenBias,
+					short [] outputWeights, int outputBias)
+	{
+		this.hidden = hidden;
+		this.inputWeights = inputWeights;
+		this.hiddenBias = hiddenBias;
+		this.outputWeights = outputWeights;
+		this.outputBias = outputBias;
+	}
+	/**
+	 * The largest magnitude hidden unit j's sum can reach in any position:
+	 * its bias, plus the MAX_PIECES largest weights from each side's
+	 * inputs, or minus the MAX_PIECES most negative.
+	 */
+	public static int worstSum(short [] inputWeights, short [] hiddenBias, int hidden, int j)
+	{
+		int most = hiddenBias[j], least = hiddenBias[j];
+		int [] col = new int [SQUARES];
+		for (int side=0; side<2; side++) {
+			for (int sq=0; sq<SQUARES; sq++) {
+				col[sq] = inputWeights[(side * SQUARES + sq) * hidden + j];
+			}
+			Arrays.sort(col);
+			for (int k=0; k<MAX_PIECES && k<SQUARES; k++) {
+				most += Math.max(0, col[SQUARES-1-k]);
+				least += Math.min(0, col[k]);
+			}
+		}
+		return Math.max(most, -least);
+	}
+	public static int homeFeature(int r, int c)
+	{ return r * BreakthroughState.N + c; }
+	public static int awayFeature(int r, int c)
+	{ return SQUARES + r * BreakthroughState.N + c; }
+	public Accumulator newAccumulator()
+	{ return new Accumulator(); }
+	/**
+	 * Attaches a fresh accumulator to brd, so that makeMove/undoMove keep
+	 * it up to date.
+	 */
+	public Accumulator attach(BreakthroughState brd)
+	{
+		Accumulator acc = new Accumulator();
+		acc.refresh(brd);
+		brd.accumulator = acc;
+		return acc;
+	}
+	/**
+	 * A network with small random weights. Useful only for timing.
+	 */
+	public static NNUEEval random(int hidden, long seed)
+	{
+		Random rand = new Random(seed);
+		short [] w1 = new short [INPUTS * hidden];
+		short [] b1 = new short [hidden];
+		short [] w2 = new short [hidden];
+		for (int i=0; i<w1.length; i++) {
+			w1[i] = (short)(rand.nextInt(65) - 32);
+		}
+		for (int i=0; i<hidden; i++) {
+			b1[i] = (short)rand.nextInt(QA);
+			w2[i] = (short)(rand.nextInt(129) - 64);
+		}
+		return new NNUEEval(hidden, w1, b1, w2, 0);
+	}
+	/**
+	 * Reads a network written by save.
+	 * @param fname File to be read
+	 * @return The network, or null if it couldn't be read
+	 */
+	public static NNUEEval load(String fname)
+	{
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(fname)));
+			if (in.readInt() != MAGIC || in.readInt() != BreakthroughState.N) {
+				System.err.printf("%s is not a network for this board size%n", fname);
+				return null;
+			}
+			int hidden = in.readInt();
+			short [] w1 = readShorts(in, INPUTS * hidden);
+			short [] b1 = readShorts(in, hidden);
+			short [] w2 = readShorts(in, hidden);
+			int b2 = in.readInt();
+			for (int j=0; j<hidden; j++) {
+				if (worstSum(w1, b1, hidden, j) > Short.MAX_VALUE) {
+					System.err.printf("%s: hidden unit %d can overflow its 16 bit sum%n", fname, j);
+					return null;
+				}
+			}
+			return new NNUEEval(hidden, w1, b1, w2, b2);
+		}
+		catch (Exception e) {
+			System.err.printf("Problem reading %s%n", fname);
+			return null;
+		}
+		finally {
+			if (in != null) {
+				try { in.close(); } catch (IOException e) { }
+			}
+		}
+	}
+	public void save(String fname) throws IOException
+	{
+		DataOutputStream out =
+			new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname)));
+		out.writeInt(MAGIC);
+		out.writeInt(BreakthroughState.N);
+		out.writeInt(hidden);
+		writeShorts(out, inputWeights);
+		writeShorts(out, hiddenBias);
+		writeShorts(out, outputWeights);
+		out.writeInt(outputBias);
+		out.close();
+	}
+	private static short [] readShorts(DataInputStream in, int n) throws IOException
+	{
+		short [] ary = new short [n];
+		for (int i=0; i<n; i++) {
+			ary[i] = in.readShort();
+		}
+		return ary;
+	}
+	private static void writeShorts(DataOutputStream out, short [] ary) throws IOException
+	{
+		for (int i=0; i<ary.length; i++) {
+			out.writeShort(ary[i]);
+		}
+	}
+}
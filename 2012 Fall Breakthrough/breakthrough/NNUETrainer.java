@@ -0,0 +1,254 @@
+package breakthrough;
+import game.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Trains an NNUEEval from self-play. Games are played by a noisy one-ply
+ * search over ABBreakthroughPlayer2.evalBoard (or over an existing
+ * network, if one is given), and every position is labelled with the
+ * final result. The float network is fitted by stochastic gradient descent
+ * on logistic loss and then quantized.
+ *
+ * Usage: java breakthrough.NNUETrainer [games [epochs [hidden [outfile [startnet]]]]]
+ */
+public class NNUETrainer {
+	public static final double EPSILON = 0.1;		// chance of a random move in self-play
+	public static final double LEARNING_RATE = 0.01;
+
+	private final int hidden;
+	private final float [] w1;		// INPUTS x hidden
+	private final float [] b1;
+	private final float [] w2;
+	private float b2;
+	private final Random rand;
+
+	// Positions, stored as bitboards, with the result: 1 HOME win, 0 AWAY win
+	private long [] homeBits = new long [1024];
+	private long [] awayBits = new long [1024];
+	private float [] results = new float [1024];
+	private int numPositions;
+
+	public NNUETrainer(int hidden, long seed)
+	{
+		this.hidden = hidden;
+		rand = new Random(seed);
+		w1 = new float [NNUEEval.INPUTS * hidden];
+		b1 = new float [hidden];
+		w2 = new float [hidden];
+		for (int i=0; i<w1.length; i++) {
+			w1[i] = (float)(rand.nextGaussian() * 0.1);
+		}
+		for (int i=0; i<hidden; i++) {
+			b1[i] = 0.5f;
+			w2[i] = (float)(rand.nextGaussian() * 0.1);
+		}
+	}
+	private void addPosition(long home, long away)
+	{
+		if (numPositions == homeBits.length) {
+			homeBits = Arrays.copyOf(homeBits, 2 * numPositions);
+			awayBits = Arrays.copyOf(awayBits, 2 * numPositions);
+			results = Arrays.copyOf(results, 2 * numPositions);
+		}
+		homeBits[numPositions] = home;
+		awayBits[numPositions] = away;
+		numPositions++;
+	}
+	/**
+	 * Reflects a bitboard left to right.
+	 */
+	static long mirror(long bits)
+	{
+		int N = BreakthroughState.N;
+		long res = 0;
+		for (int c=0; c<N; c++) {
+			res |= ((bits >>> c) & BreakthroughBits.FIRST_COL) << (N-1-c);
+		}
+		return res;
+	}
+	/**
+	 * Plays one game against itself, recording every position.
+	 * @param net Network used to pick moves, or null for evalBoard
+	 */
+	public void selfPlay(NNUEEval net)
+	{
+		BreakthroughState brd = new BreakthroughState();
+		if (net != null) {
+			net.attach(brd);
+		}
+		BreakthroughMove [] mvs = BreakthroughBits.newMoveArray();
+		int first = numPositions;
+		while (brd.getStatus() == GameState.Status.GAME_ON) {
+			// The position and its mirror image, so that the network
+			// learns to score both alike (eval caches assume it does)
+			addPosition(brd.homeBits, brd.awayBits);
+			addPosition(mirror(brd.homeBits), mirror(brd.awayBits));
+			int cnt = BreakthroughBits.generateMoves(brd, mvs);
+			int pick;
+			if (rand.nextDouble() < EPSILON) {
+				pick = rand.nextInt(cnt);
+			} else {
+				pick = bestMove(brd, mvs, cnt);
+			}
+			brd.makeMove(mvs[pick]);
+		}
+		float result = brd.getStatus() == GameState.Status.HOME_WIN ? 1 : 0;
+		for (int i=first; i<numPositions; i++) {
+			results[i] = result;
+		}
+	}
+	private int bestMove(BreakthroughState brd, BreakthroughMove [] mvs, int cnt)
+	{
+		boolean toMaximize = brd.getWho() == GameState.Who.HOME;
+		int best = 0;
+		int bestScore = toMaximize ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+		for (int i=0; i<cnt; i++) {
+			BreakthroughMove mv = mvs[i];
+			char captured = brd.board[mv.endingRow][mv.endingCol];
+			brd.makeMove(mv);
+			int score;
+			if (brd.getStatus() == GameState.Status.HOME_WIN) {
+				score = Integer.MAX_VALUE - 1;
+			} else if (brd.getStatus() == GameState.Status.AWAY_WIN) {
+				score = Integer.MIN_VALUE + 1;
+			} else if (brd.accumulator != null) {
+				score = brd.accumulator.evaluate();
+			} else {
+				score = ABBreakthroughPlayer2.evalBoard(brd);
+			}
+			brd.undoMove(mv, captured);
+			score += rand.nextInt(3) - 1;		// break ties
+			if (toMaximize ? score > bestScore : score < bestScore) {
+				bestScore = score;
+				best = i;
+			}
+		}
+		return best;
+	}
+	private static int features(long home, long away, int [] feats)
+	{
+		int cnt = 0;
+		while (home != 0) {
+			feats[cnt++] = Long.numberOfTrailingZeros(home);
+			home &= home - 1;
+		}
+		while (away != 0) {
+			feats[cnt++] = NNUEEval.SQUARES + Long.numberOfTrailingZeros(away);
+			away &= away - 1;
+		}
+		return cnt;
+	}
+	/**
+	 * One pass of stochastic gradient descent over the positions.
+	 * @return mean logistic loss
+	 */
+	public double epoch(double lr)
+	{
+		int [] order = new int [numPositions];
+		for (int i=0; i<numPositions; i++) {
+			order[i] = i;
+		}
+		for (int i=numPositions-1; i>0; i--) {
+			int j = rand.nextInt(i+1);
+			int tmp = order[i]; order[i] = order[j]; order[j] = tmp;
+		}
+		int [] feats = new int [NNUEEval.INPUTS];
+		float [] h = new float [hidden];
+		double loss = 0;
+		for (int k=0; k<numPositions; k++) {
+			int p = order[k];
+			int nf = features(homeBits[p], awayBits[p], feats);
+			float out = b2;
+			for (int i=0; i<hidden; i++) {
+				float v = b1[i];
+				for (int f=0; f<nf; f++) {
+					v += w1[feats[f] * hidden + i];
+				}
+				h[i] = v;
+				out += w2[i] * Math.min(1f, Math.max(0f, v));
+			}
+			double pred = 1 / (1 + Math.exp(-out));
+			double y = results[p];
+			loss -= y * Math.log(pred + 1e-12) + (1 - y) * Math.log(1 - pred + 1e-12);
+			float d = (float)((pred - y) * lr);
+			b2 -= d;
+			for (int i=0; i<hidden; i++) {
+				float act = Math.min(1f, Math.max(0f, h[i]));
+				float dh = h[i] > 0 && h[i] < 1 ? d * w2[i] : 0;
+				w2[i] -= d * act;
+				if (dh != 0) {
+					b1[i] -= dh;
+					for (int f=0; f<nf; f++) {
+						w1[feats[f] * hidden + i] -= dh;
+					}
+				}
+			}
+		}
+		return loss / numPositions;
+	}
+	private static short quantize(double v)
+	{
+		long q = Math.round(v);
+		return (short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, q));
+	}
+	/**
+	 * Converts the float network to the integer one used in play. A hidden
+	 * unit whose int16 sum could overflow in some position has its input
+	 * weights clamped to a bound that rules that out (see
+	 * NNUEEval.worstSum).
+	 */
+	public NNUEEval quantize()
+	{
+		short [] qw1 = new short [w1.length];
+		short [] qb1 = new short [hidden];
+		short [] qw2 = new short [hidden];
+		for (int i=0; i<w1.length; i++) {
+			qw1[i] = quantize(w1[i] * NNUEEval.QA);
+		}
+		for (int i=0; i<hidden; i++) {
+			qb1[i] = quantize(b1[i] * NNUEEval.QA);
+			qw2[i] = quantize(w2[i] * NNUEEval.QB);
+		}
+		int clamped = 0;
+		for (int j=0; j<hidden; j++) {
+			if (NNUEEval.worstSum(qw1, qb1, hidden, j) <= Short.MAX_VALUE) {
+				continue;
+			}
+			int bound = (Short.MAX_VALUE - Math.abs(qb1[j])) / (2 * NNUEEval.MAX_PIECES);
+			for (int f=0; f<NNUEEval.INPUTS; f++) {
+				int i = f * hidden + j;
+				qw1[i] = (short)Math.max(-bound, Math.min(bound, qw1[i]));
+			}
+			clamped++;
+		}
+		if (clamped > 0) {
+			System.out.printf("Clamped the input weights of %d hidden units to keep their sums in 16 bits%n", clamped);
+		}
+		int qb2 = Math.round(b2 * NNUEEval.QA * NNUEEval.QB);
+		return new NNUEEval(hidden, qw1, qb1, qw2, qb2);
+	}
+	public static void main(String [] args) throws IOException
+	{
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int epochs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int hidden = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+		String outFile = args.length > 3 ? args[3] : NNUEEval.DEFAULT_FILE;
+		NNUEEval start = args.length > 4 ? NNUEEval.load(args[4]) : null;
+
+		NNUETrainer trainer = new NNUETrainer(hidden, 1);
+		long t0 = System.currentTimeMillis();
+		for (int g=0; g<games; g++) {
+			trainer.selfPlay(start);
+		}
+		System.out.printf("%d games, %d positions (%.1f secs)%n", games, trainer.numPositions,
+						(System.currentTimeMillis() - t0) / 1000.0);
+		for (int e=0; e<epochs; e++) {
+			double loss = trainer.epoch(LEARNING_RATE);
+			System.out.printf("epoch %d loss %.4f%n", e, loss);
+		}
+		trainer.quantize().save(outFile);
+		System.out.printf("Wrote %s%n", outFile);
+	}
+}
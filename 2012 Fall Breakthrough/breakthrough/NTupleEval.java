@@ -0,0 +1,173 @@
+package breakthrough;
+
+import java.io.*;
+
+/**
+ * N-tuple network evaluation. Every 2x3 block of squares is a tuple; the
+ * contents of its six squares (empty, HOME or AWAY) index a table of
+ * 3^6 weights. Two symmetries are used so that positions share weights:
+ * <ul>
+ * <li>left-right mirror: a block and its mirror image read the same table,
+ *	with the squares visited in mirrored order.
+ * <li>colour flip: the position seen from AWAY's side (rows reversed,
+ *	colours swapped) is looked up in the same tables and subtracted, so
+ *	value(p) == -value(flip(p)) exactly.
+ * </ul>
+ * Values are from HOME's point of view, in (-1, 1). Only for boards that
+ * fit the BreakthroughState bitboards (N <= 8).
+ */
+public class NTupleEval {
+	public static final int MAGIC = 0x4E545550;		// "NTUP"
+	public static final int TUPLE_ROWS = 2;
+	public static final int TUPLE_COLS = 3;
+	public static final int TUPLE_SIZE = TUPLE_ROWS * TUPLE_COLS;
+	public static final int ENTRIES = 729;			// 3^TUPLE_SIZE
+	public static final int EVAL_SCALE = 1000;		// search units per unit of value
+	public static final String DEFAULT_FILE = "config" + File.separatorChar + "breakthrough.ntuple";
+
+	public final int numTables;
+	final int numInstances;
+	// Per instance: bit index of the lowest square of each of the block's
+	// two rows, as seen from HOME (shift) and from AWAY (flipShift), and
+	// whether the columns are read right to left (mirror).
+	final int [] shift0, shift1, flipShift0, flipShift1;
+	final int [] mirror;
+	final int [] tableOffset;		// per instance, start of its table in weights
+	public final float [] weights;
+	// Base 3 value of three squares, indexed by mirror<<6 | mine<<3 | theirs,
+	// where mine and theirs are the 3-bit occupancy of the squares.
+	private static final int [] TRIPLE = tripleTable();
+
+	private static int [] tripleTable()
+	{
+		int [] tbl = new int [128];
+		for (int m=0; m<2; m++) {
+			for (int mine=0; mine<8; mine++) {
+				for (int theirs=0; theirs<8; theirs++) {
+					int v = 0;
+					for (int k=0; k<TUPLE_COLS; k++) {
+						int bit = m == 1 ? TUPLE_COLS - 1 - k : k;
+						int digit = ((mine >> bit) & 1) + 2 * ((theirs >> bit) & 1);
+						v += digit * (k == 0 ? 1 : k == 1 ? 3 : 9);
+					}
+					tbl[(m << 6) | (mine << 3) | theirs] = v;
+				}
+			}
+		}
+		return tbl;
+	}
+	public NTupleEval()
+	{
+		int N = BreakthroughState.N;
+		int blockCols = N - TUPLE_COLS + 1;
+		int blockRows = N - TUPLE_ROWS + 1;
+		int canonicalCols = (blockCols + 1) / 2;
+		numTables = blockRows * canonicalCols;
+		numInstances = 2 * numTables;
+		weights = new float [numTables * ENTRIES];
+		shift0 = new int [numInstances];
+		shift1 = new int [numInstances];
+		flipShift0 = new int [numInstances];
+		flipShift1 = new int [numInstances];
+		mirror = new int [numInstances];
+		tableOffset = new int [numInstances];
+		int inst = 0;
+		// Each block left of (or on) the centre is read as it is and as
+		// its mirror image; the mirror of the centre block is itself,
+		// with its squares visited in the opposite order.
+		for (int r=0; r<blockRows; r++) {
+			for (int c=0; c<canonicalCols; c++) {
+				for (int m=0; m<2; m++, inst++) {
+					int lowCol = m == 1 ? N - TUPLE_COLS - c : c;
+					tableOffset[inst] = (r * canonicalCols + c) * ENTRIES;
+					mirror[inst] = m << 6;
+					shift0[inst] = r * N + lowCol;
+					shift1[inst] = (r + 1) * N + lowCol;
+					flipShift0[inst] = (N - 1 - r) * N + lowCol;
+					flipShift1[inst] = (N - 2 - r) * N + lowCol;
+				}
+			}
+		}
+	}
+	private static int index(long mine, long theirs, int m, int s0, int s1)
+	{
+		int lo = TRIPLE[m | (int)((mine >>> s0) & 7) << 3 | (int)((theirs >>> s0) & 7)];
+		int hi = TRIPLE[m | (int)((mine >>> s1) & 7) << 3 | (int)((theirs >>> s1) & 7)];
+		return lo + 27 * hi;
+	}
+	/**
+	 * Sum of the table entries before squashing.
+	 */
+	public float rawValue(long home, long away)
+	{
+		float sum = 0;
+		for (int i=0; i<numInstances; i++) {
+			int off = tableOffset[i];
+			sum += weights[off + index(home, away, mirror[i], shift0[i], shift1[i])];
+			sum -= weights[off + index(away, home, mirror[i], flipShift0[i], flipShift1[i])];
+		}
+		return sum;
+	}
+	/**
+	 * @return value in (-1, 1), from HOME's point of view
+	 */
+	public float value(long home, long away)
+	{ return (float)Math.tanh(rawValue(home, away)); }
+	/**
+	 * Evaluation scaled for use in a search.
+	 */
+	public int evaluate(BreakthroughState brd)
+	{ return (int)(EVAL_SCALE * value(brd.homeBits, brd.awayBits)); }
+	/**
+	 * Moves the value of a position by delta (in raw, pre-tanh units).
+	 * Updates are plain unsynchronized writes: threads training at the
+	 * same time may occasionally overwrite each other's updates, which
+	 * costs far less than locking.
+	 */
+	public void update(long home, long away, float delta)
+	{
+		for (int i=0; i<numInstances; i++) {
+			int off = tableOffset[i];
+			weights[off + index(home, away, mirror[i], shift0[i], shift1[i])] += delta;
+			weights[off + index(away, home, mirror[i], flipShift0[i], flipShift1[i])] -= delta;
+		}
+	}
+	public static NTupleEval load(String fname)
+	{
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(fname)));
+			NTupleEval net = new NTupleEval();
+			if (in.readInt() != MAGIC || in.readInt() != BreakthroughState.N ||
+				in.readInt() != net.weights.length) {
+					System.err.printf("%s is not an n-tuple network for this board size%n", fname);
+					return null;
+			}
+			for (int i=0; i<net.weights.length; i++) {
+				net.weights[i] = in.readFloat();
+			}
+			return net;
+		}
+		catch (Exception e) {
+			System.err.printf("Problem reading %s%n", fname);
+			return null;
+		}
+		finally {
+			if (in != null) {
+				try { in.close(); } catch (IOException e) { }
+			}
+		}
+	}
+	public void save(String fname) throws IOException
+	{
+		DataOutputStream out =
+			new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname)));
+		out.writeInt(MAGIC);
+		out.writeInt(BreakthroughState.N);
+		out.writeInt(weights.length);
+		for (int i=0; i<weights.length; i++) {
+			out.writeFloat(weights[i]);
+		}
+		out.close();
+	}
+}
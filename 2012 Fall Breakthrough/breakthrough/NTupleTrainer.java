@@ -0,0 +1,154 @@
+package breakthrough;
+import game.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Trains an NTupleEval by temporal-difference learning, TD(0) on
+ * afterstates, from self-play. Games are split across a ForkJoinPool and
+ * all workers update the one shared weight array without locking.
+ *
+ * Usage: java breakthrough.NTupleTrainer [games [outfile [matchpairs [millis]]]]
+ * When matchpairs is given, the trained network then plays that many
+ * pairs of games against material counting at millis per move.
+ */
+public class NTupleTrainer {
+	public static final double EPSILON = 0.1;
+	public static final float ALPHA = 0.002f;
+	public static final int GAMES_PER_TASK = 16;
+
+	private final NTupleEval net;
+
+	public NTupleTrainer(NTupleEval net)
+	{ this.net = net; }
+
+	private class SelfPlay extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int lo, hi;
+		public SelfPlay(int lo, int hi)
+		{ this.lo = lo; this.hi = hi; }
+		protected void compute()
+		{
+			if (hi - lo <= GAMES_PER_TASK) {
+				Random rand = new Random(lo * 31L + hi);
+				BreakthroughMove [] mvs = BreakthroughBits.newMoveArray();
+				for (int g=lo; g<hi; g++) {
+					playGame(rand, mvs);
+				}
+			} else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new SelfPlay(lo, mid), new SelfPlay(mid, hi));
+			}
+		}
+	}
+	/**
+	 * Value of the position after mv, from HOME's point of view.
+	 */
+	private float afterstateValue(BreakthroughState brd, BreakthroughMove mv)
+	{
+		char captured = brd.board[mv.endingRow][mv.endingCol];
+		brd.makeMove(mv);
+		float v;
+		if (brd.getStatus() == GameState.Status.HOME_WIN) {
+			v = 1;
+		} else if (brd.getStatus() == GameState.Status.AWAY_WIN) {
+			v = -1;
+		} else {
+			v = net.value(brd.homeBits, brd.awayBits);
+		}
+		brd.undoMove(mv, captured);
+		return v;
+	}
+	/**
+	 * Plays one game, nudging the value of each position toward the value
+	 * of the one that followed it (or the final result).
+	 */
+	private void playGame(Random rand, BreakthroughMove [] mvs)
+	{
+		BreakthroughState brd = new BreakthroughState();
+		long prevHome = 0, prevAway = 0;
+		boolean havePrev = false;
+		while (brd.getStatus() == GameState.Status.GAME_ON) {
+			int cnt = BreakthroughBits.generateMoves(brd, mvs);
+			int pick;
+			if (rand.nextDouble() < EPSILON) {
+				pick = rand.nextInt(cnt);
+			} else {
+				boolean toMaximize = brd.getWho() == GameState.Who.HOME;
+				pick = 0;
+				float bestValue = toMaximize ? -2 : 2;
+				for (int i=0; i<cnt; i++) {
+					float v = afterstateValue(brd, mvs[i]);
+					if (toMaximize ? v > bestValue : v < bestValue) {
+						bestValue = v;
+						pick = i;
+					}
+				}
+			}
+			brd.makeMove(mvs[pick]);
+			float target;
+			if (brd.getStatus() == GameState.Status.HOME_WIN) {
+				target = 1;
+			} else if (brd.getStatus() == GameState.Status.AWAY_WIN) {
+				target = -1;
+			} else {
+				target = net.value(brd.homeBits, brd.awayBits);
+			}
+			if (havePrev) {
+				learn(prevHome, prevAway, target);
+			}
+			prevHome = brd.homeBits;
+			prevAway = brd.awayBits;
+			havePrev = brd.getStatus() == GameState.Status.GAME_ON;
+		}
+	}
+	private void learn(long home, long away, float target)
+	{
+		float v = net.value(home, away);
+		float delta = ALPHA * (target - v) * (1 - v * v);
+		net.update(home, away, delta);
+	}
+	/**
+	 * Plays the given number of self-play games on all cores.
+	 */
+	public void train(int games)
+	{
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		pool.invoke(new SelfPlay(0, games));
+		pool.shutdown();
+	}
+	public static void main(String [] args) throws IOException
+	{
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		String outFile = args.length > 1 ? args[1] : NTupleEval.DEFAULT_FILE;
+		int pairs = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		long millis = args.length > 3 ? Long.parseLong(args[3]) : 100;
+
+		final NTupleEval net = new NTupleEval();
+		NTupleTrainer trainer = new NTupleTrainer(net);
+		long start = System.currentTimeMillis();
+		trainer.train(games);
+		System.out.printf("%d self-play games on %d threads in %.1f secs%n", games,
+				Runtime.getRuntime().availableProcessors(),
+				(System.currentTimeMillis() - start) / 1000.0);
+		net.save(outFile);
+		System.out.printf("Wrote %s%n", outFile);
+
+		if (pairs > 0) {
+			EvalMatch.Eval ntuple = new EvalMatch.Eval() {
+				public int eval(BreakthroughState brd)
+				{ return net.evaluate(brd); }
+			};
+			EvalMatch.Eval material = new EvalMatch.Eval() {
+				public int eval(BreakthroughState brd)
+				{ return brd.materialDiff(); }
+			};
+			int wins = EvalMatch.playMatch(ntuple, material, pairs, millis);
+			System.out.printf("n-tuple vs material at %d ms/move: %d of %d games won%n",
+								millis, wins, 2 * pairs);
+		}
+	}
+}
@@ -1,4 +1,5 @@
 package connect4;
+import java.util.Random;
 import game.*;
 
 
@@ -9,6 +10,8 @@ public class AlphaBetaConnect4Player extends MiniMaxConnect4Player {
 	
 	public AlphaBetaConnect4Player(String nname, int d)
 	{ super(nname, d); }
+	public AlphaBetaConnect4Player(String nname, int d, Random tieBreak)
+	{ super(nname, d, tieBreak); }
 
 	/**
 	 * Performs alpha beta pruning.
@@ -24,71 +27,71 @@ public class AlphaBetaConnect4Player extends MiniMaxConnect4Player {
 		boolean toMinimize = !toMaximize;
 
 		boolean isTerminal = terminalValue(brd, mvStack[currDepth]);
+		nodes++;
 		
 		if (isTerminal) {
 			;
 		} else if (currDepth == depthLimit) {
-			mvStack[currDepth].set(0, evalBoard(brd));
+			mvStack[currDepth].set(0, evaluate(brd));
 		} else {
-			ScoredConnect4Move tempMv = new ScoredConnect4Move(0, 0);
-
 			double bestScore = (toMaximize ? 
 					Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
 			ScoredConnect4Move bestMove = mvStack[currDepth];
 			ScoredConnect4Move nextMove = mvStack[currDepth+1];
 
 			bestMove.set(0, bestScore);
-			GameState.Who currTurn = brd.getWho();
 
-			int [] columns = new int [COLS];
-			for (int j=0; j<COLS; j++) {
-				columns[j] = j;
-			}
-			shuffle(columns);
-			for (int i=0; i<Connect4State.NUM_COLS; i++) {
+			int [] columns = order[currDepth];
+			int cnt = orderMoves(brd, currDepth);
+			for (int i=0; i<cnt; i++) {
 				int c = columns[i];
-				if (brd.numInCol[c] < Connect4State.NUM_ROWS) {
-					tempMv.col = c;				// initialize move
-					brd.makeMove(tempMv);
-		
-					alphaBeta(brd, currDepth+1, alpha, beta);  // Check out move
-					
-					// Undo move
-					brd.numInCol[c]--;
-					int row = brd.numInCol[c]; 
-					brd.board[row][c] = Connect4State.emptySym;
-					brd.numMoves--;
-					brd.status = GameState.Status.GAME_ON;
-					brd.who = currTurn;
-					
-					// Check out the results, relative to what we've seen before
-					if (toMaximize && nextMove.score > bestMove.score) {
-						bestMove.set(c, nextMove.score);
-					} else if (!toMaximize && nextMove.score < bestMove.score) {
-						bestMove.set(c, nextMove.score);
-					}
+				tempMv.col = c;				// initialize move
+				brd.makeMove(tempMv);
+	
+				alphaBeta(brd, currDepth+1, alpha, beta);  // Check out move
+				
+				// Undo move
+				brd.undoMove(c);
+				
+				// Check out the results, relative to what we've seen before
+				if (toMaximize && nextMove.score > bestMove.score) {
+					bestMove.set(c, nextMove.score);
+				} else if (!toMaximize && nextMove.score < bestMove.score) {
+					bestMove.set(c, nextMove.score);
+				}
 
-					// Update alpha and beta. Perform pruning, if possible.
-					if (toMinimize) {
-						beta = Math.min(bestMove.score, beta);
-						if (bestMove.score <= alpha || bestMove.score == -MAX_SCORE) {
-							return;
-						}
-					} else {
-						alpha = Math.max(bestMove.score, alpha);
-						if (bestMove.score >= beta || bestMove.score == MAX_SCORE) {
-							return;
-						}
+				// Update alpha and beta. Perform pruning, if possible.
+				if (toMinimize) {
+					beta = Math.min(bestMove.score, beta);
+					if (bestMove.score <= alpha || bestMove.score == -MAX_SCORE) {
+						recordCutoff(brd, c, currDepth);
+						return;
+					}
+				} else {
+					alpha = Math.max(bestMove.score, alpha);
+					if (bestMove.score >= beta || bestMove.score == MAX_SCORE) {
+						recordCutoff(brd, c, currDepth);
+						return;
 					}
 				}
 			}
 		}
 	}
 		
+	/**
+	 * Searches brd to depth, with fresh killers and history.
+	 * @return Score of brd
+	 */
+	public double searchToDepth(Connect4State brd, int depth)
+	{
+		depthLimit = depth;
+		clearOrdering();
+		alphaBeta(brd, 0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		return mvStack[0].score;
+	}
 	public GameMove getMove(GameState brd, String lastMove)
 	{ 
-		alphaBeta((Connect4State)brd, 0, Double.NEGATIVE_INFINITY, 
-										 Double.POSITIVE_INFINITY);
+		searchToDepth((Connect4State)brd, depthLimit);
 		System.out.println(mvStack[0].score);
 		return mvStack[0];
 	}
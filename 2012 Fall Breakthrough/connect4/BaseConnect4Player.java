@@ -46,11 +46,20 @@ public abstract class BaseConnect4Player extends GamePlayer {
 		return cnt;
 	}
 	/**
-	 * The evaluation function
+	 * The evaluation function, kept up to date by Connect4State as discs
+	 * are dropped and taken back: for each line of four squares that only
+	 * one side has discs in, that side's discs.
 	 * @param brd board to be evaluated
 	 * @return Black evaluation - Red evaluation
 	 */
 	public static int evalBoard(Connect4State brd)
+	{ return brd.windowScore; }
+	/**
+	 * evalBoard, counted out from the board.
+	 * @param brd board to be evaluated
+	 * @return Black evaluation - Red evaluation
+	 */
+	public static int scanEvalBoard(Connect4State brd)
 	{ 
 		int score = eval(brd, Connect4State.homeSym) - eval(brd, Connect4State.awaySym);
 		if (Math.abs(score) > MAX_SCORE) {
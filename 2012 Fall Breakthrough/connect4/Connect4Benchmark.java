@@ -0,0 +1,189 @@
+package connect4;
+import game.*;
+
+import java.util.*;
+
+/**
+ * Stand-alone timing harness for the Connect 4 players. Run from the
+ * project directory (so config/ can be found) with the name of the
+ * comparison to run, e.g. "java connect4.Connect4Benchmark ordering".
+ * With no arguments every comparison is run.
+ */
+public class Connect4Benchmark {
+	public static final int NUM_POSITIONS = 8;
+
+	/**
+	 * Builds a reproducible set of unfinished positions by playing random
+	 * moves from the start.
+	 */
+	public static ArrayList<Connect4State> randomPositions(int num, int minPly, int maxPly, long seed)
+	{
+		Random rand = new Random(seed);
+		ArrayList<Connect4State> list = new ArrayList<Connect4State>();
+		Connect4Move mv = new Connect4Move(0);
+		while (list.size() < num) {
+			Connect4State brd = new Connect4State();
+			int plies = minPly + rand.nextInt(maxPly - minPly + 1);
+			for (int i=0; i<plies && brd.getStatus() == GameState.Status.GAME_ON; i++) {
+				do {
+					mv.col = rand.nextInt(Connect4State.NUM_COLS);
+				} while (!brd.moveOK(mv));
+				brd.makeMove(mv);
+			}
+			if (brd.getStatus() == GameState.Status.GAME_ON) {
+				list.add(brd);
+			}
+		}
+		return list;
+	}
+	/**
+	 * Nodes AlphaBetaConnect4Player searches with columns in random
+	 * order, as it used to, against center-first, killer and history
+	 * ordering, for each depth from minDepth to maxDepth. Both use a
+	 * seeded tie-break, and should agree on every score.
+	 */
+	public static void compareOrdering(int minDepth, int maxDepth)
+	{
+		List<Connect4State> positions = randomPositions(NUM_POSITIONS, 0, 10, 1);
+		AlphaBetaConnect4Player [] players = {
+			new AlphaBetaConnect4Player("shuffled", minDepth, new Random(1)),
+			new AlphaBetaConnect4Player("ordered", minDepth, new Random(1))
+		};
+		players[0].ordered = false;
+		System.out.printf("%5s %12s %9s %12s %9s %9s %s%n", "depth",
+						"shuffled", "ms", "ordered", "ms", "reduction", "disagree");
+		for (int depth=minDepth; depth<=maxDepth; depth++) {
+			long [] nodes = new long [2], nanos = new long [2];
+			int disagree = 0;
+			for (Connect4State pos : positions) {
+				double [] score = new double [2];
+				for (int p=0; p<2; p++) {
+					players[p].init();
+					players[p].nodes = 0;
+					long start = System.nanoTime();
+					score[p] = players[p].searchToDepth((Connect4State)pos.clone(), depth);
+					nanos[p] += System.nanoTime() - start;
+					nodes[p] += players[p].nodes;
+				}
+				if (score[0] != score[1]) {
+					disagree++;
+				}
+			}
+			System.out.printf("%5d %12d %9.1f %12d %9.1f %8.1f%% %d%n", depth,
+							nodes[0], nanos[0] / 1e6, nodes[1], nanos[1] / 1e6,
+							100.0 * (nodes[0] - nodes[1]) / nodes[0], disagree);
+		}
+	}
+	/**
+	 * The incremental window evaluation against counting the windows out
+	 * from the board: time per evaluation (and whether they ever differ),
+	 * then alpha-beta nodes per second with each, and how deep each gets
+	 * by iterative deepening in millis per position.
+	 */
+	public static void compareEval(long millis)
+	{
+		List<Connect4State> positions = randomPositions(200, 0, 30, 2);
+		int differ = 0;
+		for (Connect4State pos : positions) {
+			if (BaseConnect4Player.evalBoard(pos) != BaseConnect4Player.scanEvalBoard(pos)) {
+				differ++;
+			}
+		}
+		long [] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+		long sum = 0;
+		for (int round=0; round<10; round++) {
+			for (int e=0; e<2; e++) {
+				long start = System.nanoTime();
+				for (int rep=0; rep<50; rep++) {
+					for (Connect4State pos : positions) {
+						sum += e == 0 ? BaseConnect4Player.scanEvalBoard(pos) : BaseConnect4Player.evalBoard(pos);
+					}
+				}
+				best[e] = Math.min(best[e], System.nanoTime() - start);
+			}
+		}
+		System.out.printf("scan %.1f ns/eval, incremental %.1f ns/eval, %d differ (%d)%n",
+						best[0] / 50.0 / positions.size(), best[1] / 50.0 / positions.size(), differ, sum & 1);
+
+		AlphaBetaConnect4Player [] players = {
+			new AlphaBetaConnect4Player("scan", 1, null) {
+				protected int evaluate(Connect4State brd)
+				{ return scanEvalBoard(brd); }
+			},
+			new AlphaBetaConnect4Player("incremental", 1, null)
+		};
+		String [] names = { "scan", "incremental" };
+		List<Connect4State> searched = randomPositions(NUM_POSITIONS, 0, 10, 1);
+		for (int p=0; p<2; p++) {
+			players[p].init();
+			long nodes = 0, nanos = 0;
+			int depths = 0;
+			for (Connect4State pos : searched) {
+				long deadline = System.nanoTime() + millis * 1000000L;
+				int depth = 0;
+				// a depth counts if it finished inside the budget
+				for (int d=1; d<=Connect4State.NUM_SPOTS - pos.getNumMoves(); d++) {
+					long iterStart = System.nanoTime();
+					players[p].nodes = 0;
+					players[p].searchToDepth((Connect4State)pos.clone(), d);
+					if (System.nanoTime() > deadline) {
+						break;
+					}
+					nanos += System.nanoTime() - iterStart;
+					nodes += players[p].nodes;
+					depth = d;
+				}
+				depths += depth;
+			}
+			System.out.printf("%-12s %8.0f nodes/s, mean depth %.2f in %d ms%n", names[p],
+							nodes / (nanos / 1e9), (double)depths / searched.size(), millis);
+		}
+	}
+	/**
+	 * Time Connect4Solver takes to solve positions from the opening to the
+	 * middle game, each with an empty table, using the opening book if
+	 * there is one. Without a book the empty board is left out: it takes
+	 * far too long.
+	 */
+	public static void timeSolver(int minPly, int maxPly)
+	{
+		Connect4Solver solver = new Connect4Solver();
+		Connect4Book book = Connect4Book.open(Connect4Book.DEFAULT_FILE);
+		solver.setBook(book);
+		System.out.printf("book: %s%n", book == null ? "none" :
+						book.entries + " positions, up to " + book.plies + " discs");
+		if (book != null) {
+			minPly = 0;
+		}
+		System.out.printf("%5s %9s %12s %10s %10s%n", "discs", "positions", "nodes/pos", "ms/pos", "max ms");
+		for (int ply=minPly; ply<=maxPly; ply+=2) {
+			List<Connect4State> positions = randomPositions(NUM_POSITIONS / 2, ply, ply, ply);
+			long nodes = 0, nanos = 0, most = 0;
+			for (Connect4State pos : positions) {
+				solver.clear();
+				solver.nodes = 0;
+				long start = System.nanoTime();
+				solver.solve(pos);
+				long t = System.nanoTime() - start;
+				nanos += t;
+				most = Math.max(most, t);
+				nodes += solver.nodes;
+			}
+			System.out.printf("%5d %9d %12d %10.1f %10.1f%n", ply, positions.size(),
+							nodes / positions.size(), nanos / 1e6 / positions.size(), most / 1e6);
+		}
+	}
+	public static void main(String [] args)
+	{
+		String which = args.length > 0 ? args[0] : "all";
+		if (which.equals("all") || which.equals("ordering")) {
+			compareOrdering(8, 12);
+		}
+		if (which.equals("all") || which.equals("eval")) {
+			compareEval(1000);
+		}
+		if (which.equals("all") || which.equals("solver")) {
+			timeSolver(8, 24);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package connect4;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import game.GameState;
+
+/**
+ * Exact scores of every unfinished position within some number of moves
+ * of a root position (the empty board, for an opening book), as
+ * Connect4Solver scores them, for Connect4Solver to look up rather than
+ * search. Positions are stored by Connect4Solver.canonicalKey, so
+ * a position and its mirror image are one entry.
+ *
+ * The file is a header (MAGIC, rows, columns, plies, entries), plies
+ * being the most discs of any position in the book, then the
+ * keys as longs in increasing order, then one score byte per key. It is
+ * memory-mapped rather than read, and searched in place.
+ */
+public class Connect4Book {
+	public static final int MAGIC = 0x43344243;		// "C4BC"
+	public static final int NONE = Integer.MIN_VALUE;
+	public static final String DEFAULT_FILE = "config" + File.separatorChar + "connect4-book.bin";
+	private static final int HEADER = 5 * 4;
+
+	public final int plies, entries;
+	private final MappedByteBuffer buf;
+
+	private Connect4Book(MappedByteBuffer buf)
+	{
+		this.buf = buf;
+		if (buf.getInt(0) != MAGIC || buf.getInt(4) != Connect4State.NUM_ROWS ||
+			buf.getInt(8) != Connect4State.NUM_COLS) {
+			throw new IllegalArgumentException("Not a book for this board");
+		}
+		plies = buf.getInt(12);
+		entries = buf.getInt(16);
+		if (entries < 0 || buf.capacity() != HEADER + 9L * entries) {
+			throw new IllegalArgumentException(entries + " entries, but " + buf.capacity() + " bytes");
+		}
+	}
+	/**
+	 * Maps a book file. A missing file is no book; a file that is there
+	 * but can't be used is reported on System.err.
+	 * @return The book, or null if fname can't be read as one
+	 */
+	public static Connect4Book open(String fname)
+	{
+		if (!new File(fname).exists()) {
+			return null;
+		}
+		try {
+			RandomAccessFile file = new RandomAccessFile(fname, "r");
+			try {
+				FileChannel ch = file.getChannel();
+				// the mapping stays valid once the file is closed
+				return new Connect4Book(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+			}
+			finally {
+				file.close();
+			}
+		}
+		catch (Exception e) {
+			System.err.printf("Not using %s as an opening book: %s%n", fname, e);
+			return null;
+		}
+	}
+	/**
+	 * @return Score of the position with key (a canonical key), or NONE
+	 */
+	public int probe(long key)
+	{
+		int lo = 0, hi = entries - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			long k = buf.getLong(HEADER + 8 * mid);
+			if (k < key) {
+				lo = mid + 1;
+			} else if (k > key) {
+				hi = mid - 1;
+			} else {
+				return buf.get(HEADER + 8 * entries + mid);
+			}
+		}
+		return NONE;
+	}
+	/**
+	 * Adds the canonical keys of every unfinished position reachable
+	 * from (current, mask) in at most plies more moves.
+	 */
+	private static void collect(long current, long mask, int plies, Set<Long> keys)
+	{
+		if (!keys.add(Connect4Solver.canonicalKey(current, mask)) || plies == 0) {
+			return;
+		}
+		int H1 = Connect4State.COL_BITS;
+		for (int c=0; c<Connect4State.NUM_COLS; c++) {
+			long move = (mask + (1L << (c * H1))) & (((1L << Connect4State.NUM_ROWS) - 1) << (c * H1));
+			if (move == 0) {
+				continue;		// column full
+			}
+			if (!Connect4State.hasFour(current | move)) {
+				collect(current ^ mask, mask | move, plies - 1, keys);
+			}
+		}
+	}
+	/**
+	 * Undoes Connect4Solver.key: each column of key is its discs plus
+	 * the column's mask, which puts the top 1 bit of key + 1 on the
+	 * first empty square.
+	 * @return { current, mask }
+	 */
+	private static long [] decode(long key)
+	{
+		int H1 = Connect4State.COL_BITS;
+		long current = 0, mask = 0;
+		for (int c=0; c<Connect4State.NUM_COLS; c++) {
+			long v = ((key >>> (c * H1)) & ((1L << H1) - 1)) + 1;
+			long top = Long.highestOneBit(v);
+			mask |= (top - 1) << (c * H1);
+			current |= (v - top) << (c * H1);
+		}
+		return new long [] { current, mask };
+	}
+	/**
+	 * Solves every unfinished position up to plies moves from root and
+	 * writes them to fname. The deepest positions go first, and each
+	 * layer is put in the book, and the book given to solver, before the
+	 * layer a disc shallower is solved; that layer then takes almost no
+	 * search, so nearly all the time goes on the deepest one.
+	 */
+	public static void generate(String fname, Connect4State root, int plies, Connect4Solver solver) throws IOException
+	{
+		TreeSet<Long> keys = new TreeSet<Long>();
+		boolean home = root.getWho() == GameState.Who.HOME;
+		collect(home ? root.homeBits : root.awayBits, root.homeBits | root.awayBits, plies, keys);
+		System.out.printf("%d positions to solve%n", keys.size());
+		int last = root.getNumMoves() + plies;
+		TreeMap<Long, Integer> scores = new TreeMap<Long, Integer>();
+		long start = System.nanoTime();
+		for (int discs=last; discs>=root.getNumMoves(); discs--) {
+			for (long key : keys) {
+				long [] pos = decode(key);
+				if (Long.bitCount(pos[1]) != discs) {
+					continue;
+				}
+				scores.put(key, solver.solve(pos[0], pos[1]));
+				if (scores.size() % 100 == 0) {
+					System.out.printf("%d solved, %.0f s%n", scores.size(), (System.nanoTime() - start) / 1e9);
+				}
+			}
+			// the old mapping must not be touched once the file is rewritten
+			solver.setBook(null);
+			write(fname, last, scores);
+			solver.setBook(open(fname));
+		}
+	}
+	private static void write(String fname, int plies, SortedMap<Long, Integer> scores) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname)));
+		out.writeInt(MAGIC);
+		out.writeInt(Connect4State.NUM_ROWS);
+		out.writeInt(Connect4State.NUM_COLS);
+		out.writeInt(plies);
+		out.writeInt(scores.size());
+		for (long key : scores.keySet()) {
+			out.writeLong(key);
+		}
+		for (int score : scores.values()) {
+			out.writeByte(score);
+		}
+		out.close();
+	}
+	/**
+	 * Writes a book. Solving the opening takes hours: each position of
+	 * the deepest layer takes seconds to a minute on its own, and five
+	 * discs deep there are over two thousand of them.
+	 * @param args Plies to cover (default 4), file (default DEFAULT_FILE),
+	 * and the columns (as digits, from 0) played to reach the root, if it
+	 * isn't the empty board
+	 */
+	public static void main(String [] args) throws IOException
+	{
+		int plies = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		String fname = args.length > 1 ? args[1] : DEFAULT_FILE;
+		Connect4State root = new Connect4State();
+		if (args.length > 2) {
+			for (char c : args[2].toCharArray()) {
+				root.makeMove(new Connect4Move(c - '0'));
+			}
+		}
+		generate(fname, root, plies, new Connect4Solver());
+		System.out.printf("Wrote %s%n", fname);
+	}
+}
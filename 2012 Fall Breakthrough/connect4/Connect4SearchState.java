@@ -0,0 +1,50 @@
+package connect4;
+import game.*;
+import game.search.*;
+
+/**
+ * Connect4State as seen by SearchEngine. A move is its column, and the
+ * evaluation is BaseConnect4Player.evalBoard.
+ */
+public class Connect4SearchState implements SearchableState {
+	private static final int ROWS = Connect4State.NUM_ROWS, COLS = Connect4State.NUM_COLS;
+
+	public final Connect4State brd;
+	private final Connect4Move mv = new Connect4Move(0);
+
+	public Connect4SearchState(Connect4State brd)
+	{ this.brd = brd; }
+	public int maxMoves()
+	{ return COLS; }
+	public int generateMoves(int [] mvs)
+	{
+		int cnt = 0;
+		for (int c=0; c<COLS; c++) {
+			if (brd.numInCol[c] < ROWS)
+				mvs[cnt++] = c;
+		}
+		return cnt;
+	}
+	public void makeMove(int c)
+	{
+		mv.col = c;
+		brd.makeMove(mv);
+	}
+	public void unmakeMove(int c)
+	{ brd.undoMove(c); }
+	public long hash()
+	{ return brd.hash; }
+	public int evaluate()
+	{
+		int score = BaseConnect4Player.evalBoard(brd);
+		return brd.getWho() == GameState.Who.HOME ? score : -score;
+	}
+	public boolean isTerminal()
+	{ return brd.getStatus() != GameState.Status.GAME_ON; }
+	public int terminalScore()
+	{ return SearchEngine.statusScore(brd); }
+	public SearchableState copy()
+	{ return new Connect4SearchState((Connect4State)brd.clone()); }
+	public GameMove toGameMove(int c)
+	{ return new Connect4Move(c); }
+}
@@ -0,0 +1,320 @@
+package connect4;
+import java.util.Arrays;
+import game.*;
+
+/**
+ * Finds the exact value of a Connect 4 position, for boards whose
+ * bitboards (Connect4State.COL_BITS bits a column) fit in a long.
+ *
+ * Scores are from the side to move's point of view, in the usual solver
+ * convention: 0 for a draw, and for a win, one more than the number of
+ * discs the winner still has in hand after the winning disc (so a
+ * quicker win scores higher); a loss is the negative of the opponent's
+ * win.
+ *
+ * The search is negamax on a position kept as two longs, the discs of
+ * the side to move and all discs, and a null window search is wrapped
+ * around it to home in on the value. Moves that hand the opponent an
+ * immediate win are never searched, and the rest are tried by how many
+ * winning squares they make, center columns first on ties. Upper bounds
+ * go in a transposition table keyed by a code unique to the position,
+ * the smaller of it and its mirror image's code, so each position and
+ * its mirror image share one entry. An opening book, if loaded, gives
+ * the values of the positions it covers outright.
+ */
+public class Connect4Solver {
+	public static final int ROWS = Connect4State.NUM_ROWS;
+	public static final int COLS = Connect4State.NUM_COLS;
+	public static final int H1 = Connect4State.COL_BITS;
+	public static final int SPOTS = ROWS * COLS;
+	public static final int MIN_SCORE = -SPOTS / 2 + 3;
+	public static final int MAX_SCORE = (SPOTS + 1) / 2 - 3;
+	public static final int TABLE_SIZE = 8388593;		// a prime, just under 1 << 23
+
+	private static final long BOTTOM = bottomMask();
+	private static final long BOARD = BOTTOM * ((1L << ROWS) - 1);
+	private static final int [] COLUMN_ORDER = columnOrder();
+
+	// Position searched: discs of the side to move, and all discs
+	private long current, mask;
+	private int moves;
+	private final long [] keys = new long [TABLE_SIZE];
+	private final byte [] values = new byte [TABLE_SIZE];
+	// Moves of each node being searched, indexed by discs played
+	private final long [][] moveStack = new long [SPOTS+1][COLS];
+	private final int [][] scoreStack = new int [SPOTS+1][COLS];
+	private Connect4Book book;
+	public long nodes;
+
+	public Connect4Solver()
+	{
+		if (COLS * H1 > 63) {
+			throw new IllegalStateException("Board too big for the solver");
+		}
+	}
+	private static long bottomMask()
+	{
+		long m = 0;
+		for (int c=0; c<COLS; c++) {
+			m |= 1L << (c * H1);
+		}
+		return m;
+	}
+	private static int [] columnOrder()
+	{
+		int [] order = new int [COLS];
+		for (int i=0; i<COLS; i++) {
+			order[i] = COLS/2 + (1 - 2*(i % 2)) * (i + 1) / 2;
+		}
+		return order;
+	}
+	private static long columnMask(int col)
+	{ return ((1L << ROWS) - 1) << (col * H1); }
+	/**
+	 * Code unique to a position: the side to move's discs plus all
+	 * discs, which moves a 1 bit onto the first empty square of every
+	 * column.
+	 */
+	public static long key(long current, long mask)
+	{ return current + mask; }
+	/**
+	 * key of the mirror image: columns in reverse order.
+	 */
+	public static long mirrorKey(long key)
+	{
+		long m = 0, colBits = (1L << H1) - 1;
+		for (int c=0; c<COLS; c++) {
+			m |= ((key >>> (c * H1)) & colBits) << ((COLS - 1 - c) * H1);
+		}
+		return m;
+	}
+	/**
+	 * The key the table and book use: the smaller of the position's and
+	 * its mirror image's.
+	 */
+	public static long canonicalKey(long current, long mask)
+	{
+		long k = key(current, mask);
+		return Math.min(k, mirrorKey(k));
+	}
+	/**
+	 * Squares that would complete a line of four for bits, whether or
+	 * not they can be played yet.
+	 */
+	private static long winningSquares(long bits, long mask)
+	{
+		long r = (bits << 1) & (bits << 2) & (bits << 3);		// vertical
+		r |= completing(bits, H1);
+		r |= completing(bits, H1 - 1);
+		r |= completing(bits, H1 + 1);
+		return r & (BOARD ^ mask);
+	}
+	/**
+	 * Squares that complete a line of bits in the direction of shift d:
+	 * three in a row either side, or two and one either side of a gap.
+	 */
+	private static long completing(long bits, int d)
+	{
+		long p = (bits << d) & (bits << 2*d);
+		long r = p & (bits << 3*d);
+		r |= p & (bits >>> d);
+		p = (bits >>> d) & (bits >>> 2*d);
+		r |= p & (bits << d);
+		r |= p & (bits >>> 3*d);
+		return r;
+	}
+	private long possible()
+	{ return (mask + BOTTOM) & BOARD; }
+	private long opponentWinning()
+	{ return winningSquares(current ^ mask, mask); }
+	/**
+	 * Moves that don't let the opponent win next move, as the bits they
+	 * play. 0 if every move loses (the side to move can't win at once;
+	 * solve checks that first).
+	 */
+	private long nonLosingMoves()
+	{
+		long possible = possible();
+		long opp = opponentWinning();
+		long forced = possible & opp;
+		if (forced != 0) {
+			if ((forced & (forced - 1)) != 0) {
+				return 0;		// two threats to stop at once
+			}
+			possible = forced;
+		}
+		return possible & ~(opp >>> 1);		// never play under a threat
+	}
+	private boolean canWinNext()
+	{ return (winningSquares(current, mask) & possible()) != 0; }
+	private void play(long move)
+	{
+		current ^= mask;
+		mask |= move;
+		moves++;
+	}
+	private void undo(long move)
+	{
+		mask ^= move;
+		current ^= mask;
+		moves--;
+	}
+	private int tableGet(long key)
+	{
+		int i = (int)(key % TABLE_SIZE);
+		return keys[i] == key ? values[i] : 0;
+	}
+	private void tablePut(long key, int value)
+	{
+		int i = (int)(key % TABLE_SIZE);
+		keys[i] = key;
+		values[i] = (byte)value;
+	}
+	/**
+	 * Null and narrow window negamax, for positions where the side to
+	 * move can't win at once.
+	 * @return The exact score if it is within (alpha, beta), otherwise a
+	 * bound on it on the same side of the window
+	 */
+	private int negamax(int alpha, int beta)
+	{
+		nodes++;
+		long next = nonLosingMoves();
+		if (next == 0) {
+			return -(SPOTS - moves) / 2;
+		}
+		if (moves >= SPOTS - 2) {
+			return 0;
+		}
+		int min = -(SPOTS - 2 - moves) / 2;		// the opponent can't win next move
+		if (alpha < min) {
+			alpha = min;
+			if (alpha >= beta) {
+				return alpha;
+			}
+		}
+		int max = (SPOTS - 1 - moves) / 2;		// we can't win next move
+		long key = canonicalKey(current, mask);
+		if (book != null && moves <= book.plies) {
+			int val = book.probe(key);
+			if (val != Connect4Book.NONE) {
+				return val;
+			}
+		}
+		int stored = tableGet(key);
+		if (stored != 0) {
+			max = stored + MIN_SCORE - 1;
+		}
+		if (beta > max) {
+			beta = max;
+			if (alpha >= beta) {
+				return beta;
+			}
+		}
+		// order by winning squares made, center columns first on ties
+		long [] mvs = moveStack[moves];
+		int [] scores = scoreStack[moves];
+		int cnt = 0;
+		for (int i=COLS-1; i>=0; i--) {
+			long move = next & columnMask(COLUMN_ORDER[i]);
+			if (move == 0) {
+				continue;
+			}
+			int score = Long.bitCount(winningSquares(current | move, mask | move));
+			int j = cnt++;
+			while (j > 0 && scores[j-1] > score) {
+				mvs[j] = mvs[j-1];
+				scores[j] = scores[j-1];
+				j--;
+			}
+			mvs[j] = move;
+			scores[j] = score;
+		}
+		for (int i=cnt-1; i>=0; i--) {
+			play(mvs[i]);
+			int score = -negamax(-beta, -alpha);
+			undo(mvs[i]);
+			if (score >= beta) {
+				return score;
+			}
+			if (score > alpha) {
+				alpha = score;
+			}
+		}
+		tablePut(key, alpha - MIN_SCORE + 1);
+		return alpha;
+	}
+	/**
+	 * Exact score of the position given as bitboards.
+	 * @param current Discs of the side to move
+	 * @param mask All discs
+	 */
+	public int solve(long current, long mask)
+	{
+		this.current = current;
+		this.mask = mask;
+		moves = Long.bitCount(mask);
+		if (canWinNext()) {
+			return (SPOTS + 1 - moves) / 2;
+		}
+		int min = -(SPOTS - moves) / 2;
+		int max = (SPOTS + 1 - moves) / 2;
+		while (min < max) {
+			// null window searches, closing in on the value
+			int med = min + (max - min) / 2;
+			if (med <= 0 && min / 2 < med) {
+				med = min / 2;
+			} else if (med >= 0 && max / 2 > med) {
+				med = max / 2;
+			}
+			int r = negamax(med, med + 1);
+			if (r <= med) {
+				max = r;
+			} else {
+				min = r;
+			}
+		}
+		return min;
+	}
+	/**
+	 * Exact score of brd, which must be unfinished.
+	 */
+	public int solve(Connect4State brd)
+	{
+		boolean home = brd.getWho() == GameState.Who.HOME;
+		return solve(home ? brd.homeBits : brd.awayBits, brd.homeBits | brd.awayBits);
+	}
+	/**
+	 * The score of each move from brd, as the side to move sees it;
+	 * Integer.MIN_VALUE for full columns.
+	 */
+	public int [] analyze(Connect4State brd)
+	{
+		int [] scores = new int [COLS];
+		Connect4Move mv = new Connect4Move(0);
+		for (int c=0; c<COLS; c++) {
+			mv.col = c;
+			if (!brd.moveOK(mv)) {
+				scores[c] = Integer.MIN_VALUE;
+				continue;
+			}
+			brd.makeMove(mv);
+			if (brd.getStatus() == GameState.Status.DRAW) {
+				scores[c] = 0;
+			} else if (brd.getStatus() != GameState.Status.GAME_ON) {
+				scores[c] = (SPOTS + 2 - brd.getNumMoves()) / 2;
+			} else {
+				scores[c] = -solve(brd);
+			}
+			brd.undoMove(c);
+		}
+		return scores;
+	}
+	public void setBook(Connect4Book book)
+	{ this.book = book; }
+	public void clear()
+	{
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, (byte)0);
+	}
+}
@@ -1,4 +1,5 @@
 package connect4;
+import java.util.ArrayList;
 import java.util.Arrays;
 import game.*;
 
@@ -10,9 +11,28 @@ public class Connect4State extends GameState {
 	public static final char homeSym = gameParams.character("HOMESYM");
 	public static final char awaySym = gameParams.character("AWAYSYM");
 	public static final char emptySym = gameParams.character("EMPTYSYM");
+	public static final Util.Zobrist ZOBRIST = new Util.Zobrist(NUM_ROWS, NUM_COLS, homeSym, awaySym, 4);
+	// Bitboards hold a column per COL_BITS bits, bottom row lowest, with
+	// an always empty bit on top so that lines can't run from one column
+	// into the next. Boards too big for a long use computeStatus alone.
+	public static final int COL_BITS = NUM_ROWS + 1;
+	public static final boolean BITBOARD = NUM_COLS * COL_BITS <= 64;
+	// Every line of four squares on the board (69 of them on 6 x 7), and
+	// the lines through each square, by index into the first
+	public static final int [][][] WINDOWS = windows();
+	public static final int NUM_WINDOWS = WINDOWS.length;
+	public static final int [][][] WINDOWS_AT = windowsAt();
 
 	public char [][] board = new char [NUM_ROWS][NUM_COLS];
-	public int [] numInCol = new int [NUM_COLS];
+	public int [] numInCol = new int [NUM_COLS];	// also each column's height on the bitboards
+	public long homeBits, awayBits;
+	// Discs of each side in each of WINDOWS, and the sum over windows
+	// that only one side has discs in of that side's discs, HOME's less
+	// AWAY's: what BaseConnect4Player.evalBoard scores
+	public int [] windowHome = new int [NUM_WINDOWS];
+	public int [] windowAway = new int [NUM_WINDOWS];
+	public int windowScore;
+	public long hash;				// Zobrist key of board and side to move
 
 	public Connect4State()
 	{ reset(); }
@@ -24,6 +44,12 @@ public class Connect4State extends GameState {
 		for (int c=0; c<NUM_COLS; c++) {
 			copy.numInCol[c] = numInCol[c];
 		}
+		copy.hash = hash;
+		copy.homeBits = homeBits;
+		copy.awayBits = awayBits;
+		System.arraycopy(windowHome, 0, copy.windowHome, 0, NUM_WINDOWS);
+		System.arraycopy(windowAway, 0, copy.windowAway, 0, NUM_WINDOWS);
+		copy.windowScore = windowScore;
 		return copy;
 	}
 	public void reset()
@@ -31,6 +57,11 @@ public class Connect4State extends GameState {
 		clear();
 		Util.clear(board, emptySym);
 		Arrays.fill(numInCol, 0);
+		hash = 0;
+		homeBits = awayBits = 0;
+		Arrays.fill(windowHome, 0);
+		Arrays.fill(windowAway, 0);
+		windowScore = 0;
 	}
 	public boolean moveOK(GameMove mv)
 	{
@@ -56,6 +87,112 @@ public class Connect4State extends GameState {
 			return false;
 		}
 	}
+	/**
+	 * Lists the squares, as { row, col }, of every line of four that fits
+	 * on the board.
+	 */
+	private static int [][][] windows()
+	{
+		int [][] dirs = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { -1, 1 } };
+		ArrayList<int [][]> list = new ArrayList<int [][]>();
+		for (int r=0; r<NUM_ROWS; r++) {
+			for (int c=0; c<NUM_COLS; c++) {
+				for (int [] d : dirs) {
+					int endr = r + 3 * d[0], endc = c + 3 * d[1];
+					if (Util.inrange(endr, NUM_ROWS-1) && Util.inrange(endc, NUM_COLS-1)) {
+						int [][] w = new int [4][];
+						for (int i=0; i<4; i++) {
+							w[i] = new int [] { r + i * d[0], c + i * d[1] };
+						}
+						list.add(w);
+					}
+				}
+			}
+		}
+		return list.toArray(new int [0][][]);
+	}
+	private static int [][][] windowsAt()
+	{
+		int [][] cnt = new int [NUM_ROWS][NUM_COLS];
+		for (int [][] w : WINDOWS)
+			for (int [] sq : w)
+				cnt[sq[0]][sq[1]]++;
+		int [][][] at = new int [NUM_ROWS][NUM_COLS][];
+		for (int r=0; r<NUM_ROWS; r++)
+			for (int c=0; c<NUM_COLS; c++)
+				at[r][c] = new int [cnt[r][c]];
+		for (int i=0; i<NUM_WINDOWS; i++)
+			for (int [] sq : WINDOWS[i])
+				at[sq[0]][sq[1]][--cnt[sq[0]][sq[1]]] = i;
+		return at;
+	}
+	/**
+	 * A window's part of windowScore.
+	 */
+	private static int windowValue(int home, int away)
+	{ return away == 0 ? home : home == 0 ? -away : 0; }
+	/**
+	 * Adds (delta +1) or takes away (-1) a disc of sym on [r][c] in the
+	 * window counts and windowScore.
+	 */
+	private void updateWindows(int r, int c, char sym, int delta)
+	{
+		int [] windows = WINDOWS_AT[r][c];
+		boolean home = sym == homeSym;
+		int score = windowScore;
+		for (int i=0; i<windows.length; i++) {
+			int w = windows[i];
+			int h = windowHome[w], a = windowAway[w];
+			score -= windowValue(h, a);
+			if (home) {
+				windowHome[w] = h += delta;
+			} else {
+				windowAway[w] = a += delta;
+			}
+			score += windowValue(h, a);
+		}
+		windowScore = score;
+	}
+	/**
+	 * @return Bit of [r][c] on the bitboards
+	 */
+	public static long bit(int r, int c)
+	{ return 1L << (c * COL_BITS + r); }
+	/**
+	 * Whether bits has four in a row: for each direction, pairs of
+	 * neighbours, then pairs of pairs.
+	 */
+	public static boolean hasFour(long bits)
+	{
+		long m = bits & (bits >>> 1);						// vertical
+		if ((m & (m >>> 2)) != 0)
+			return true;
+		m = bits & (bits >>> COL_BITS);					// horizontal
+		if ((m & (m >>> 2*COL_BITS)) != 0)
+			return true;
+		m = bits & (bits >>> (COL_BITS+1));				// up to the right
+		if ((m & (m >>> 2*(COL_BITS+1))) != 0)
+			return true;
+		m = bits & (bits >>> (COL_BITS-1));				// down to the right
+		return (m & (m >>> 2*(COL_BITS-1))) != 0;
+	}
+	/**
+	 * Status after a move by mover, who was the side to move. Only mover
+	 * can have made a line, so only mover's bitboard is tested. hasFour
+	 * looks at the whole bitboard, not just lines through the disc just
+	 * dropped, but that is a few shifts and ANDs whatever the position.
+	 * The rest is the move count.
+	 */
+	private void updateStatus(Who mover)
+	{
+		if (hasFour(mover == Who.HOME ? homeBits : awayBits)) {
+			status = mover == Who.HOME ? GameState.Status.HOME_WIN : GameState.Status.AWAY_WIN;
+		} else if (numMoves == NUM_SPOTS) {
+			status = GameState.Status.DRAW;
+		} else {
+			status = GameState.Status.GAME_ON;
+		}
+	}
 	public void computeStatus()
 	{
 		for (int r=0; r<NUM_ROWS; r++) {
@@ -85,13 +222,48 @@ public class Connect4State extends GameState {
 		if (Util.inrange(move.col, NUM_COLS-1) && Util.inrange(numInCol[move.col], NUM_ROWS-1)) {
 			int row = numInCol[move.col]++;
 			board[row][move.col] = (who == Who.HOME ? homeSym : awaySym);
+			hash = ZOBRIST.move(hash, row, move.col, board[row][move.col]);
+			updateWindows(row, move.col, board[row][move.col], +1);
+			Who mover = who;
+			if (mover == Who.HOME) {
+				homeBits |= bit(row, move.col);
+			} else {
+				awayBits |= bit(row, move.col);
+			}
 			super.newMove();
-			computeStatus();
+			if (BITBOARD) {
+				updateStatus(mover);
+			} else {
+				computeStatus();
+			}
 			return true;
 		} else {
 			return false;
 		}
 	}
+	/**
+	 * Takes back the last move, which was made in column col.
+	 */
+	public void undoMove(int col)
+	{
+		int row = --numInCol[col];
+		hash = ZOBRIST.move(hash, row, col, board[row][col]);
+		homeBits &= ~bit(row, col);
+		awayBits &= ~bit(row, col);
+		updateWindows(row, col, board[row][col], -1);
+		board[row][col] = emptySym;
+		numMoves--;
+		status = GameState.Status.GAME_ON;
+		togglePlayer();
+	}
+	public GameMove parseMove(String s)
+	{
+		Connect4Move mv = new Connect4Move(0);
+		mv.parseMove(s);
+		return mv;
+	}
+	public boolean matchesMsgString(String s)
+	{ return Util.matchesMsgString(s, board) && s.substring(NUM_SPOTS).equals(msgSuffix()); }
 	
 	public void parseMsgString(String s)
 	{
@@ -100,11 +272,18 @@ public class Connect4State extends GameState {
 		parseMsgSuffix(s.substring(s.indexOf('[')));
 		for (int r=0; r<NUM_ROWS; r++) {
 			for (int c=0; c<NUM_COLS; c++) {
+				if (board[r][c] == homeSym) {
+					homeBits |= bit(r, c);
+				} else if (board[r][c] == awaySym) {
+					awayBits |= bit(r, c);
+				}
 				if (board[r][c] != emptySym) {
 					numInCol[c]++;
+					updateWindows(r, c, board[r][c], +1);
 				}
 			}
 		}
+		hash = ZOBRIST.hash(board, who);
 	}
 	public String toString()
 	{ return Util.toString(board) + msgSuffix();	}
@@ -0,0 +1,20 @@
+package connect4;
+import game.*;
+import game.search.*;
+
+/**
+ * Connect 4 by the shared game.search engine.
+ */
+public class EngineConnect4Player extends EnginePlayer {
+	public EngineConnect4Player(String nname, int depth, long moveMillis, int threads)
+	{ super(nname, new Connect4State(), depth, moveMillis, threads); }
+	protected SearchableState searchable(GameState brd)
+	{ return new Connect4SearchState((Connect4State)brd); }
+
+	public static void main(String [] args)
+	{
+		GamePlayer p = new EngineConnect4Player("C4 Engine", 42, 2000,
+											Runtime.getRuntime().availableProcessors());
+		p.compete(args);
+	}
+}
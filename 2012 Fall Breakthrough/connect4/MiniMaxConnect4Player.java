@@ -1,4 +1,6 @@
 package connect4;
+import java.util.Arrays;
+import java.util.Random;
 import game.*;
 
 public class MiniMaxConnect4Player extends BaseConnect4Player {
@@ -11,6 +13,23 @@ public class MiniMaxConnect4Player extends BaseConnect4Player {
 	// (Not sure how much it improves things.)
 	protected ScoredConnect4Move [] mvStack;
 	
+	// Move ordering, all allocated once by init. Columns are tried in
+	// order[depth], sorted by orderMoves: a cutoff column of the same
+	// depth (killer) first, then by history, then nearest the center.
+	// tieBreak, if set, decides between columns that are still equal, so
+	// a stochastic player doesn't always make the same move.
+	public static final int NO_KILLER = -1;
+	protected static final int [] CENTER_RANK = centerRanks();
+	protected int [][] order;
+	protected int [][] orderScores;
+	protected int [] killers;
+	protected int [][] history;			// [side][col], by cutoffs
+	protected Random tieBreak;
+	public boolean ordered = true;		// false: random order, as it once was
+	private final Random shuffle = new Random();	// that order, without a tieBreak
+	protected Connect4Move tempMv = new Connect4Move(0);
+	public long nodes;
+	
 	 // A Connect4Move with a scored (how well it evaluates)
 	protected class ScoredConnect4Move extends Connect4Move {
 		public ScoredConnect4Move(int c, double s)
@@ -26,21 +45,100 @@ public class MiniMaxConnect4Player extends BaseConnect4Player {
 		public double score;
 	}
 
+	/**
+	 * A stochastic player, ties between columns broken at random.
+	 */
 	public MiniMaxConnect4Player(String nname, int d)
+	{ this(nname, d, new Random()); }
+	/**
+	 * @param tieBreak Breaks ties between equally ordered columns; give
+	 * it a seed to repeat a game, or null for a deterministic player
+	 */
+	public MiniMaxConnect4Player(String nname, int d, Random tieBreak)
 	{
-		super(nname, false);
+		super(nname, tieBreak == null);
 		depthLimit = d;
+		this.tieBreak = tieBreak;
+	}
+	/**
+	 * Rank of each column by closeness to the center: COLS-1 for the
+	 * center, down to 0 for the column furthest out.
+	 */
+	private static int [] centerRanks()
+	{
+		int [] rank = new int [COLS];
+		for (int c=0; c<COLS; c++) {
+			rank[c] = COLS - 1 - Math.abs(2*c - (COLS-1));
+		}
+		return rank;
 	}
-	protected static void shuffle(int [] ary)
+	/**
+	 * Fills order[depth] with the open columns of brd, best first.
+	 * @return Number of open columns
+	 */
+	protected int orderMoves(Connect4State brd, int depth)
 	{
-		int len = ary.length;
-		for (int i=0; i<len; i++) {
-			int spot = Util.randInt(i, len-1);
-			int tmp = ary[i];
-			ary[i] = ary[spot];
-			ary[spot] = tmp;
+		int [] cols = order[depth];
+		int [] scores = orderScores[depth];
+		int [] hist = history[brd.getWho() == GameState.Who.HOME ? 0 : 1];
+		int cnt = 0;
+		for (int c=0; c<COLS; c++) {
+			if (brd.numInCol[c] >= ROWS) {
+				continue;
+			}
+			int score;
+			if (!ordered) {
+				score = (tieBreak == null ? shuffle : tieBreak).nextInt();
+			} else if (c == killers[depth]) {
+				score = Integer.MAX_VALUE;
+			} else {
+				score = (hist[c] * COLS + CENTER_RANK[c]) * 8;
+				if (tieBreak != null) {
+					score += tieBreak.nextInt(8);
+				}
+			}
+			// insertion sort; there are at most COLS of them
+			int i = cnt++;
+			while (i > 0 && scores[i-1] < score) {
+				cols[i] = cols[i-1];
+				scores[i] = scores[i-1];
+				i--;
+			}
+			cols[i] = c;
+			scores[i] = score;
 		}
+		return cnt;
 	}
+	/**
+	 * Notes that col caused a cutoff at depth.
+	 */
+	protected void recordCutoff(Connect4State brd, int col, int depth)
+	{
+		killers[depth] = col;
+		int [] hist = history[brd.getWho() == GameState.Who.HOME ? 0 : 1];
+		int remaining = depthLimit - depth;
+		hist[col] += remaining * remaining;
+		if (hist[col] > (1 << 20)) {
+			for (int c=0; c<COLS; c++) {
+				hist[c] >>= 1;
+			}
+		}
+	}
+	/**
+	 * Forgets the killers and history of the last search.
+	 */
+	protected void clearOrdering()
+	{
+		Arrays.fill(killers, NO_KILLER);
+		for (int [] h : history) {
+			Arrays.fill(h, 0);
+		}
+	}
+	/**
+	 * Value of a position at the depth limit; evalBoard unless overridden.
+	 */
+	protected int evaluate(Connect4State brd)
+	{ return evalBoard(brd); }
 	/**
 	 * Initializes the stack of Moves.
 	 */
@@ -50,6 +148,11 @@ public class MiniMaxConnect4Player extends BaseConnect4Player {
 		for (int i=0; i<MAX_DEPTH; i++) {
 			mvStack[i] = new ScoredConnect4Move(0, 0);
 		}
+		order = new int [MAX_DEPTH][COLS];
+		orderScores = new int [MAX_DEPTH][COLS];
+		killers = new int [MAX_DEPTH];
+		history = new int [2][COLS];
+		clearOrdering();
 	}
 	/**
 	 * Determines if a board represents a completed game. If it is, the
@@ -85,14 +188,13 @@ public class MiniMaxConnect4Player extends BaseConnect4Player {
 	{
 		boolean toMaximize = (brd.getWho() == GameState.Who.HOME);
 		boolean isTerminal = terminalValue(brd, mvStack[currDepth]);
+		nodes++;
 		
 		if (isTerminal) {
 			;
 		} else if (currDepth == depthLimit) {
-			mvStack[currDepth].set(0, evalBoard(brd));
+			mvStack[currDepth].set(0, evaluate(brd));
 		} else {
-			ScoredConnect4Move tempMv = new ScoredConnect4Move(0, 0);
-
 			double bestScore = (brd.getWho() == GameState.Who.HOME ? 
 												Double.NEGATIVE_INFINITY :
 												Double.POSITIVE_INFINITY);
@@ -100,37 +202,26 @@ public class MiniMaxConnect4Player extends BaseConnect4Player {
 			ScoredConnect4Move nextMove = mvStack[currDepth+1];
 			
 			bestMove.set(0, bestScore);
-			GameState.Who currTurn = brd.getWho();
 
-			int [] columns = new int [COLS];
-			for (int j=0; j<COLS; j++) {
-				columns[j] = j;
-			}
-			shuffle(columns);
-			for (int i=0; i<Connect4State.NUM_COLS; i++) {
+			int [] columns = order[currDepth];
+			int cnt = orderMoves(brd, currDepth);
+			for (int i=0; i<cnt; i++) {
 				int c = columns[i];
-				if (brd.numInCol[c] < Connect4State.NUM_ROWS) {
-					// Make move on board
-					tempMv.col = c;
-					brd.makeMove(tempMv);
-					
-					// Check out worth of this move
-					minimax(brd, currDepth+1);
-					
-					// Undo the move
-					brd.numInCol[c]--;
-					int row = brd.numInCol[c]; 
-					brd.board[row][c] = Connect4State.emptySym;
-					brd.numMoves--;
-					brd.status = GameState.Status.GAME_ON;
-					brd.who = currTurn;
-					
-					// Check out the results, relative to what we've seen before
-					if (toMaximize && nextMove.score > bestMove.score) {
-						bestMove.set(c, nextMove.score);
-					} else if (!toMaximize && nextMove.score < bestMove.score) {
-						bestMove.set(c, nextMove.score);
-					}
+				// Make move on board
+				tempMv.col = c;
+				brd.makeMove(tempMv);
+				
+				// Check out worth of this move
+				minimax(brd, currDepth+1);
+				
+				// Undo the move
+				brd.undoMove(c);
+				
+				// Check out the results, relative to what we've seen before
+				if (toMaximize && nextMove.score > bestMove.score) {
+					bestMove.set(c, nextMove.score);
+				} else if (!toMaximize && nextMove.score < bestMove.score) {
+					bestMove.set(c, nextMove.score);
 				}
 			}
 		}
@@ -0,0 +1,77 @@
+package connect4;
+import game.*;
+
+/**
+ * Plays perfectly once the game is far enough along for Connect4Solver
+ * to find exact values within the time allowed, or the opening book
+ * holds every position its moves lead to; until then it plays as
+ * AlphaBetaConnect4Player.
+ */
+public class SolverConnect4Player extends AlphaBetaConnect4Player {
+	public static final int SOLVE_FROM = 14;		// discs on the board
+	protected Connect4Solver solver;
+	protected Connect4Book book;
+
+	public SolverConnect4Player(String nname, int d)
+	{ super(nname, d, null); }
+	public void init()
+	{
+		super.init();
+		solver = new Connect4Solver();
+		book = Connect4Book.open(Connect4Book.DEFAULT_FILE);
+		solver.setBook(book);
+	}
+	public GameMove getMove(GameState state, String lastMove)
+	{
+		Connect4State brd = (Connect4State)state;
+		if (brd.getNumMoves() < SOLVE_FROM && !inBook(brd)) {
+			return super.getMove(brd, lastMove);
+		}
+		int [] scores = solver.analyze(brd);
+		int best = -1;
+		for (int c=0; c<COLS; c++) {
+			if (scores[c] == Integer.MIN_VALUE) {
+				continue;
+			}
+			if (best < 0 || scores[c] > scores[best] ||
+				scores[c] == scores[best] && CENTER_RANK[c] > CENTER_RANK[best]) {
+				best = c;
+			}
+		}
+		return new Connect4Move(best);
+	}
+	/**
+	 * Whether the book scores every unfinished position one move from brd,
+	 * so that analyze needs no search. The book may have been built from
+	 * some other root, so the number of moves alone doesn't say.
+	 */
+	private boolean inBook(Connect4State brd)
+	{
+		if (book == null || brd.getNumMoves() + 1 > book.plies) {
+			return false;
+		}
+		Connect4Move mv = new Connect4Move(0);
+		boolean covered = true;
+		for (int c=0; c<COLS && covered; c++) {
+			mv.col = c;
+			if (!brd.moveOK(mv)) {
+				continue;
+			}
+			brd.makeMove(mv);
+			if (brd.getStatus() == GameState.Status.GAME_ON) {
+				boolean home = brd.getWho() == GameState.Who.HOME;
+				long current = home ? brd.homeBits : brd.awayBits;
+				covered = book.probe(Connect4Solver.canonicalKey(current, brd.homeBits | brd.awayBits)) != Connect4Book.NONE;
+			}
+			brd.undoMove(c);
+		}
+		return covered;
+	}
+
+	public static void main(String [] args)
+	{
+		int depth = 8;
+		GamePlayer p = new SolverConnect4Player("C4 Solver", depth);
+		p.compete(args);
+	}
+}
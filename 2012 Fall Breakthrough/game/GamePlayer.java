@@ -7,6 +7,15 @@ public abstract class GamePlayer {
 	protected GameState.Who side;
 	protected boolean deterministic;
 	protected String nickname;
+	// When set, gameState is kept current by making each move on it, and
+	// the board string sent with MOVE only checks it (and replaces it if
+	// they disagree). Search state kept in or alongside gameState then
+	// survives from one move to the next.
+	protected boolean incrementalSync = true;
+	public int incrementalMoves, fullParses;
+	// How much the player tells the console, 0, 1 or 2, as given to
+	// compete; 0 when it plays some other way
+	protected int dumpLevel;
     
 	public Params tournamentParams = new Params("config" + File.separatorChar + "tournament.txt");
 	
@@ -92,8 +101,36 @@ public abstract class GamePlayer {
 		this.deterministic = isDeterministic;
 	}
 
+	/**
+	 * Brings gameState up to date at the start of a turn.
+	 * @param lastMove Opponent's last move, "--" on the game's first move
+	 * @param boardStr Server's message string for the current state
+	 */
+	protected void syncState(String lastMove, String boardStr)
+	{
+		if (incrementalSync && applyMove(lastMove) && gameState.matchesMsgString(boardStr)) {
+			incrementalMoves++;
+		} else {
+			gameState.parseMsgString(boardStr);
+			fullParses++;
+		}
+	}
+	private boolean applyMove(String lastMove)
+	{
+		if (lastMove.equals("--")) {
+			return true;		// gameState was reset at START
+		}
+		try {
+			GameMove mv = gameState.parseMove(lastMove);
+			return mv != null && gameState.makeMove(mv);
+		}
+		catch (Exception e) {
+			return false;
+		}
+	}
 	private void compete(BufferedReader input, PrintWriter output, int dumpLevel)
 	{
+		this.dumpLevel = dumpLevel;
 		try {
 			init();
 			output.println(nickname);
@@ -106,8 +143,11 @@ public abstract class GamePlayer {
 			while (true) {
 				String cmd = input.readLine();
 				if (cmd.equals("DONE")) {
-					if (dumpLevel > 0)
+					if (dumpLevel > 0) {
 						System.out.println(nickname + "is done playing");
+						System.out.printf("%d moves synced incrementally, %d board reparses%n",
+										incrementalMoves, fullParses);
+					}
 					done();
 					break;
 				} else if (cmd.equals("START")) {
@@ -123,6 +163,7 @@ public abstract class GamePlayer {
 					messageFromOpponent(msg);
 					if (dumpLevel > 0)
 						System.out.println("Message from opponent: " + msg);
+					gameState.reset();
 					startGame(opp);
 				} else if (cmd.equals("OVER")) {
 					String winner = input.readLine();
@@ -143,7 +184,7 @@ public abstract class GamePlayer {
 				} else if (cmd.equals("MOVE")) {
 					String lastMove = input.readLine();
 					String boardStr = input.readLine();
-					gameState.parseMsgString(boardStr);
+					syncState(lastMove, boardStr);
 
 					if (dumpLevel > 1) {
 						System.out.printf("Turn %s (%s)%n", nickname, side);
@@ -154,6 +195,9 @@ public abstract class GamePlayer {
 					if (dumpLevel > 1)
 						System.out.println("Sending my move: " + mv);
 					output.println(mv.toString());
+					if (incrementalSync) {
+						gameState.makeMove(mv);
+					}
 					String timeStr = input.readLine();	// should be "TIME"
 					if (!timeStr.equals("TIME")) {
 						System.err.println("time message" + timeStr);
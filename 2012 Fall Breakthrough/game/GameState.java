@@ -118,6 +118,22 @@ public abstract class GameState implements Cloneable {
 	 * @return true if the move is valid
 	 */
 	public abstract boolean moveOK(GameMove mv);
+	/**
+	 * Converts a move string (as made by the move's toString) into a move
+	 * for this game. Games that don't override this can't be kept up to
+	 * date move by move, and GamePlayer reparses their board every turn.
+	 * @param s Move string
+	 * @return The move, or null
+	 */
+	public GameMove parseMove(String s)
+	{ return null; }
+	/**
+	 * Checks this state against a message string from the server.
+	 * @param s Message string representation of a state
+	 * @return true if this state's msgString() is s
+	 */
+	public boolean matchesMsgString(String s)
+	{ return msgString().equals(s); }
 	/**
 	 * Takes a message suffix and parses out the information common to
 	 * all GameStates.
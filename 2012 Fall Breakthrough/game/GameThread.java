@@ -4,17 +4,21 @@ import java.io.File;
 import java.io.PrintStream;
 import java.util.Scanner;
 
-public class GameThread extends Thread {
+/**
+ * One game between two Clients, run by Tournament's scheduler on a pool
+ * thread or a virtual thread.
+ */
+public class GameThread implements Runnable {
 	public static char SEP = File.separatorChar;
 	public static String dir;
 	public GameState.Status result;
 	public int homeID, awayID;
 	private int gameNum;
-	private Client home, away;
+	private SocketClient home, away;
 	private GameMove mv;
 	private GameState board;
 	
-	public GameThread(Client h, int hID, Client a, int aID, int num, Object move, Object brd)
+	public GameThread(SocketClient h, int hID, SocketClient a, int aID, int num, Object move, Object brd)
 	{
 		homeID = hID;
 		awayID = aID;
@@ -49,8 +53,10 @@ public class GameThread extends Thread {
 			String line = input.nextLine();
 			output.println(line);
 		}
+		input.close();
+		output.close();
     }
-	private static void copyDumpFile(File src, String [] names, String dir, int gameNum, String homeResult)
+	static void copyDumpFile(File src, String [] names, String dir, int gameNum, String homeResult)
 	{
 		String awayResult;
 		if (homeResult.equals("WIN")) {
@@ -64,6 +70,7 @@ public class GameThread extends Thread {
 								names[1], Tournament.gameParams.character("AWAYSYM"), gameNum, homeResult)); 
 		copy(src, dir, getFname(names[1], Tournament.gameParams.character("AWAYSYM"),
 								names[0], Tournament.gameParams.character("HOMESYM"), gameNum, awayResult)); 
+		src.delete();
 	}
     private static void flushSocket(BufferedReader in)
     {
@@ -78,7 +85,7 @@ public class GameThread extends Thread {
     }
 	public void run()
 	{
-		Client [] players = { home, away };
+		SocketClient [] players = { home, away };
 		String [] names = { players[0].name, players[1].name };
 		int [] warnings = {0, 0};
 		File tmpFile = null;
@@ -98,16 +105,19 @@ public class GameThread extends Thread {
 		board.reset();
 		if (players[0].DQd && players[1].DQd) {
 			m.printf("Draw. Both DQ'd%n");
+			m.close();
 			copyDumpFile(tmpFile, names, dir, gameNum, "DRAW");
 			result = GameState.Status.DRAW;
 			return;
 		} else if (players[0].DQd) {
 			m.printf("%s won. %s DQ'd", names[1], names[0]);
+			m.close();
 			copyDumpFile(tmpFile, names, dir, gameNum, "LOSS");
 			result = GameState.Status.AWAY_WIN;
 			return;
 		} else if (players[1].DQd) {
 			m.printf("%s won. %s DQ'd", names[0], names[1]);
+			m.close();
 			copyDumpFile(tmpFile, names, dir, gameNum, "WIN");
 			result = GameState.Status.HOME_WIN;
 			return;
@@ -201,6 +211,7 @@ public class GameThread extends Thread {
 			if (!players[i].DQd)
 				flushSocket(players[i].input);
 		}
+		m.close();
 		if (winner.equals("HOME")) {
 			copyDumpFile(tmpFile, names, dir, gameNum, "WIN");
 		} else if (winner.equals("AWAY")) {
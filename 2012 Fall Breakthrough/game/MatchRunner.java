@@ -0,0 +1,291 @@
+package game;
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+import breakthrough.*;
+
+/**
+ * Plays games between GamePlayers in this JVM, many at once on a thread
+ * pool, with no server, sockets or message strings. Each game follows
+ * GameThread: the players trade messages and get startGame, then move in
+ * turn under the same time rules (a move may take up to the smaller of
+ * the mover's remaining game time and finalPlayLimit, moves over
+ * moveLimit draw warnings, and a player with more than maxWarnings, or
+ * one that makes a bad move, loses) and finally get endGame.
+ *
+ * A player's gameState is kept up to date by making each move on it, as
+ * GamePlayer.compete does when incrementalSync is set; only players
+ * without incrementalSync (or every player, with checkSync) are handed
+ * the board's msgString each turn. getMove still gets the opponent's
+ * last move as a string, as its signature asks.
+ *
+ * A move can't be cut off in the middle, so one that runs past its hard
+ * limit is scored when it returns, as the timeout it would have been
+ * against the server. Times are wall clock, as GameThread's are, so use
+ * no more threads than cores when the limits matter.
+ */
+public class MatchRunner {
+	/**
+	 * Makes a new player; MatchRunner makes one for each side on each pool
+	 * thread, so no player is ever in two games at once.
+	 */
+	public interface Factory {
+		GamePlayer make();
+	}
+
+	/**
+	 * How one game went.
+	 */
+	public static class Result {
+		public final String home, away;
+		public GameState.Status status = GameState.Status.GAME_ON;
+		public int moves;
+		// Why the game ended early ("timeout", "too many warnings",
+		// "bad move"), or null if it was played out
+		public String reason;
+		public final double [] timeUsed = new double [2];
+		public final int [] warnings = new int [2];
+
+		public Result(String home, String away)
+		{
+			this.home = home;
+			this.away = away;
+		}
+		public String toString()
+		{ return home + " vs " + away + ": " + status + (reason == null ? "" : " (" + reason + ")"); }
+	}
+
+	public final double moveLimit, finalPlayLimit, gameLimit;
+	public final int maxWarnings;
+	// Check each player's gameState against the board every turn, as
+	// GamePlayer.syncState does, rather than trust incremental updates
+	public boolean checkSync;
+	private final ExecutorService pool;
+	private final ThreadLocal<Map<Factory, GamePlayer []>> made =
+		new ThreadLocal<Map<Factory, GamePlayer []>>() {
+			protected Map<Factory, GamePlayer []> initialValue()
+			{ return new HashMap<Factory, GamePlayer []>(); }
+		};
+
+	/**
+	 * @param threads Games played at once
+	 */
+	public MatchRunner(double moveLimit, double finalPlayLimit, double gameLimit,
+						int maxWarnings, int threads)
+	{
+		this.moveLimit = moveLimit;
+		this.finalPlayLimit = finalPlayLimit;
+		this.gameLimit = gameLimit;
+		this.maxWarnings = maxWarnings;
+		pool = Executors.newFixedThreadPool(threads);
+	}
+	/**
+	 * Takes the limits from a game's parameters, as Tournament does.
+	 */
+	public MatchRunner(Params gameParams, int threads)
+	{
+		this(gameParams.integer("MOVETIME"), gameParams.integer("MAXMOVETIME"),
+			gameParams.integer("GAMETIME"), gameParams.integer("NUMWARNINGS"), threads);
+	}
+	/**
+	 * Plays a game on the pool. home and away must be different players,
+	 * and neither may be in another game until this one is done. They are
+	 * not init()ed here.
+	 * @param board The game, which is reset and played on
+	 */
+	public Future<Result> submit(final GamePlayer home, final GamePlayer away, final GameState board)
+	{
+		return pool.submit(new Callable<Result>() {
+			public Result call()
+			{ return play(home, away, board); }
+		});
+	}
+	/**
+	 * Plays games between players made by a and b, a at home in the even
+	 * numbered games and b in the odd. Players are made (and init()ed) the
+	 * first time a pool thread needs them and kept for later games, as a
+	 * client keeps its player through a tournament.
+	 * @param st Initial state, cloned for each game
+	 * @return The results, in game order
+	 */
+	public List<Result> run(final Factory a, final Factory b, final GameState st, int games)
+								throws InterruptedException, ExecutionException
+	{
+		ArrayList<Future<Result>> futures = new ArrayList<Future<Result>>();
+		for (int i=0; i<games; i++) {
+			final boolean aHome = i % 2 == 0;
+			futures.add(pool.submit(new Callable<Result>() {
+				public Result call()
+				{
+					GamePlayer home = player(aHome ? a : b, 0);
+					GamePlayer away = player(aHome ? b : a, 1);
+					return play(home, away, (GameState)st.clone());
+				}
+			}));
+		}
+		ArrayList<Result> results = new ArrayList<Result>();
+		for (Future<Result> f : futures) {
+			results.add(f.get());
+		}
+		return results;
+	}
+	private GamePlayer player(Factory f, int side)
+	{
+		GamePlayer [] ps = made.get().get(f);
+		if (ps == null) {
+			ps = new GamePlayer [2];
+			made.get().put(f, ps);
+		}
+		if (ps[side] == null) {
+			ps[side] = f.make();
+			ps[side].init();
+		}
+		return ps[side];
+	}
+	/**
+	 * Plays a game on this thread.
+	 */
+	public Result play(GamePlayer home, GamePlayer away, GameState board)
+	{
+		GamePlayer [] players = { home, away };
+		Result r = new Result(home.nickname, away.nickname);
+		double [] remaining = { gameLimit, gameLimit };
+
+		String homeMsg = home.messageForOpponent(away.nickname);
+		String awayMsg = away.messageForOpponent(home.nickname);
+		home.messageFromOpponent(awayMsg);
+		away.messageFromOpponent(homeMsg);
+		board.reset();
+		for (int i=0; i<2; i++) {
+			players[i].side = i == 0 ? GameState.Who.HOME : GameState.Who.AWAY;
+			players[i].gameState.reset();
+			players[i].startGame(players[1-i].nickname);
+		}
+
+		int who = 0;
+		GameMove last = null;
+		String lastMove = "--";
+		GameState.Status status = board.getStatus();
+		while (status == GameState.Status.GAME_ON) {
+			GamePlayer p = players[who];
+			if (checkSync || !p.incrementalSync) {
+				p.syncState(lastMove, board.msgString());
+			} else {
+				if (last != null) {
+					p.gameState.makeMove(last);
+				}
+				p.incrementalMoves++;
+			}
+			double limit = Math.min(remaining[who], finalPlayLimit);
+			long start = System.nanoTime();
+			GameMove reply;
+			try {
+				reply = p.getMove(p.gameState, lastMove);
+			}
+			catch (RuntimeException e) {
+				// a player that dies loses on time, as its client would
+				System.err.println("Problem in " + p.nickname + " " + e);
+				reply = null;
+			}
+			double actualTime = (System.nanoTime() - start) / 1e9;
+			r.timeUsed[who] += actualTime;
+			if (reply == null || actualTime > limit) {
+				System.err.printf("timeout %s%n", p.nickname);
+				r.reason = "timeout";
+				break;
+			}
+			remaining[who] -= actualTime;
+			if (actualTime > moveLimit) {
+				r.warnings[who]++;
+				System.err.printf("warning %s %f%n", p.nickname, actualTime);
+				if (r.warnings[who] > maxWarnings) {
+					System.err.printf("Too many timeouts: %s%n", p.nickname);
+					r.reason = "too many warnings";
+					break;
+				}
+			}
+			// the player may reuse its move object, so the game keeps its own
+			GameMove mv = (GameMove)reply.clone();
+			boolean ok;
+			try {
+				ok = board.makeMove(mv);
+			}
+			catch (RuntimeException e) {
+				ok = false;		// a move for some other game
+			}
+			if (!ok) {
+				System.err.printf("%s won. %s made bad move %s%n", players[1-who].nickname, p.nickname, mv);
+				r.reason = "bad move";
+				break;
+			}
+			if (p.incrementalSync) {
+				p.gameState.makeMove(mv);
+			}
+			p.timeOfLastMove(actualTime);
+			last = mv;
+			lastMove = mv.toString();
+			r.moves++;
+			status = board.getStatus();
+			who = 1 - who;
+		}
+		if (status == GameState.Status.GAME_ON) {
+			status = who == 0 ? GameState.Status.AWAY_WIN : GameState.Status.HOME_WIN;
+		}
+		r.status = status;
+		for (int i=0; i<2; i++) {
+			// a player out on time has been sent DONE, and hears no more
+			if (i != who || !"timeout".equals(r.reason)) {
+				players[i].endGame(status == GameState.Status.DRAW ? 0 :
+									(status == GameState.Status.HOME_WIN) == (i == 0) ? +1 : -1);
+			}
+		}
+		return r;
+	}
+	/**
+	 * Stops the pool once its games are done.
+	 */
+	public void shutdown()
+	{ pool.shutdown(); }
+
+	/**
+	 * Plays random against greedy Breakthrough players, as a check and a
+	 * measure of throughput. Run from the project directory with
+	 *
+	 *   java game.MatchRunner [games [threads]]
+	 */
+	public static void main(String [] args) throws Exception
+	{
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) :
+										Runtime.getRuntime().availableProcessors();
+		Params params = new Params("config" + File.separatorChar + "breakthrough.txt");
+		MatchRunner runner = new MatchRunner(params, threads);
+		Factory random = new Factory() {
+			public GamePlayer make()
+			{ return new RandomBreakthroughPlayer("random"); }
+		};
+		Factory greedy = new Factory() {
+			public GamePlayer make()
+			{ return new GreedyBreakthroughPlayer("greedy"); }
+		};
+		long start = System.nanoTime();
+		List<Result> results = runner.run(greedy, random, new BreakthroughState(), games);
+		double secs = (System.nanoTime() - start) / 1e9;
+		runner.shutdown();
+		int [] tally = new int [3];		// greedy wins, random wins, draws
+		int moves = 0;
+		for (Result r : results) {
+			moves += r.moves;
+			if (r.status == GameState.Status.DRAW) {
+				tally[2]++;
+			} else {
+				boolean homeWon = r.status == GameState.Status.HOME_WIN;
+				tally[homeWon == r.home.equals("greedy") ? 0 : 1]++;
+			}
+		}
+		System.out.printf("greedy %d, random %d, draws %d%n", tally[0], tally[1], tally[2]);
+		System.out.printf("%d games, %d moves in %.2f s: %.0f games/s on %d threads%n",
+						games, moves, secs, games / secs, threads);
+	}
+}
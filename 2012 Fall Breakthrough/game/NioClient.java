@@ -0,0 +1,204 @@
+package game;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.Executor;
+
+/**
+ * A client connected to NioServer by a non-blocking SocketChannel.
+ * The server's selector thread calls read and flush; whatever it reads
+ * is cut into lines (the protocol of GamePlayer.compete is a line per
+ * field) and passed to the client's current Listener, each line a task
+ * on the listener's executor. Lines that come while nobody is
+ * listening wait for the next listener. Sending never blocks: what the
+ * socket won't take at once is queued, and the selector thread is asked
+ * to write it when it can.
+ */
+public class NioClient extends Client {
+	public static final int MAX_LINE = 1 << 16;
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	public interface Listener {
+		/**
+		 * A line from c, without its line terminator, read at nanos
+		 * (System.nanoTime).
+		 */
+		void line(NioClient c, String line, long nanos);
+		/**
+		 * The connection to c has closed, after every line read from it
+		 * has been passed on; no more will come.
+		 */
+		void closed(NioClient c);
+	}
+
+	public final int id;
+	public final SocketChannel channel;
+	private final NioServer server;
+	private final ByteBuffer in = ByteBuffer.allocate(8192);
+	private final StringBuilder partial = new StringBuilder();
+	private final ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+	private SelectionKey key;
+	private Listener listener;
+	private Executor listenerExecutor;
+	private final ArrayDeque<String> unheard = new ArrayDeque<String>();
+	private final ArrayDeque<Long> unheardNanos = new ArrayDeque<Long>();
+	public volatile boolean closed;
+
+	NioClient(NioServer server, int id, SocketChannel channel, int pLimit, int fLimit,
+				int gLimit, int nWarnings)
+	{
+		super(null, false, pLimit, fLimit, gLimit, nWarnings);
+		this.server = server;
+		this.id = id;
+		this.channel = channel;
+	}
+	void setKey(SelectionKey key)
+	{ this.key = key; }
+	/**
+	 * Sends lines to l, on ex, from now on; null to stop. Lines that came
+	 * while nobody was listening go first.
+	 */
+	public synchronized void listen(Listener l, Executor ex)
+	{
+		listener = l;
+		listenerExecutor = ex;
+		while (listener != null && !unheard.isEmpty()) {
+			deliver(unheard.poll(), unheardNanos.poll());
+		}
+		if (listener != null && closed) {
+			deliverClosed();
+		}
+	}
+	private void deliver(final String line, final long nanos)
+	{
+		final Listener l = listener;
+		listenerExecutor.execute(new Runnable() {
+			public void run()
+			{ l.line(NioClient.this, line, nanos); }
+		});
+	}
+	private void deliverClosed()
+	{
+		final Listener l = listener;
+		listenerExecutor.execute(new Runnable() {
+			public void run()
+			{ l.closed(NioClient.this); }
+		});
+	}
+	/**
+	 * Marks the connection closed, on the selector thread, and tells the
+	 * listener, if there is one.
+	 */
+	synchronized void disconnected()
+	{
+		closed = true;
+		if (listener != null) {
+			deliverClosed();
+		}
+	}
+	private synchronized void received(String line, long nanos)
+	{
+		if (listener == null) {
+			unheard.add(line);
+			unheardNanos.add(nanos);
+		} else {
+			deliver(line, nanos);
+		}
+	}
+	/**
+	 * Reads what the channel has, on the selector thread.
+	 * @return false once the other end has closed
+	 */
+	boolean read()
+	{
+		long nanos = System.nanoTime();
+		int n;
+		try {
+			n = channel.read(in);
+		}
+		catch (IOException e) {
+			n = -1;
+		}
+		if (n < 0) {
+			return false;
+		}
+		in.flip();
+		CharBuffer chars = CHARSET.decode(in);
+		in.clear();
+		for (int i=0; i<chars.length(); i++) {
+			char ch = chars.charAt(i);
+			if (ch == '\n') {
+				int len = partial.length();
+				if (len > 0 && partial.charAt(len-1) == '\r') {
+					partial.setLength(len-1);
+				}
+				received(partial.toString(), nanos);
+				partial.setLength(0);
+			} else if (partial.length() < MAX_LINE) {
+				partial.append(ch);
+			}
+		}
+		return true;
+	}
+	/**
+	 * Writes what's queued, on the selector thread.
+	 */
+	synchronized void flush()
+	{
+		try {
+			while (!out.isEmpty()) {
+				ByteBuffer buf = out.peek();
+				channel.write(buf);
+				if (buf.hasRemaining()) {
+					return;
+				}
+				out.poll();
+			}
+			key.interestOps(SelectionKey.OP_READ);
+		}
+		catch (IOException e) {
+			out.clear();
+			closed = true;
+		}
+	}
+	private synchronized void send(String s)
+	{
+		if (closed) {
+			return;
+		}
+		ByteBuffer buf = CHARSET.encode(s);
+		try {
+			if (out.isEmpty()) {
+				channel.write(buf);
+			}
+		}
+		catch (IOException e) {
+			closed = true;
+			return;
+		}
+		if (buf.hasRemaining()) {
+			boolean wasEmpty = out.isEmpty();
+			out.add(buf);
+			if (wasEmpty) {
+				server.wantWrite(this);
+			}
+		}
+	}
+	/**
+	 * Whether everything sent has been written to the socket.
+	 */
+	public synchronized boolean isIdle()
+	{ return out.isEmpty(); }
+	SelectionKey key()
+	{ return key; }
+	public void simpleMsg(String s)
+	{ send(s + "\n"); }
+	public void simpleMsg(String s1, String s2)
+	{ send(s1 + "\n" + s2 + "\n"); }
+	public void simpleMsg(String s1, String s2, String s3)
+	{ send(s1 + "\n" + s2 + "\n" + s3 + "\n"); }
+}
@@ -0,0 +1,346 @@
+package game;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.Executor;
+
+/**
+ * One game between two NioClients: GameThread's protocol and time rules,
+ * driven by events instead of blocking reads. Lines from either client
+ * and expired deadlines are handled one at a time, in order, on the
+ * game's own serial executor, so no thread is tied up while a player
+ * thinks. Lines come from each client in the order sent, and a line
+ * that isn't wanted yet waits, with the time it came, until it is, as it
+ * would in the socket. A client that disconnects fails its next read at
+ * once, as in GameThread, instead of running out its time.
+ */
+public class NioGame implements NioClient.Listener {
+	private enum Phase { GREETING, MOVING, ENDING, OVER };
+	// Seconds allowed for the opening messages, and for the OVER replies
+	private static final int GREETING_LIMIT = 10, ENDING_LIMIT = 10;
+
+	private final NioServer server;
+	private final Tournament.Game game;
+	private final NioClient [] players;
+	private final String [] names;
+	private final Executor events;
+	private final Runnable done;
+	private final GameMove mv;
+	private final GameState board;
+	private final char homeSym, awaySym;
+
+	private Phase phase;
+	private final ArrayList<ArrayDeque<String>> unread = new ArrayList<ArrayDeque<String>>();
+	private final ArrayList<ArrayDeque<Long>> unreadNanos = new ArrayList<ArrayDeque<Long>>();
+	private final boolean [] gone = new boolean [2];		// disconnected
+	private final String [] greetings = new String [2];
+	private final boolean [] waiting = new boolean [2];
+	private final int [] warnings = { 0, 0 };
+	private TimerWheel.Timeout deadline;
+	private int deadlineSeq;		// tells a stale deadline from the current one
+	private int who;
+	private String lastMove, winner;
+	private double moveLimit;
+	private long moveStart;
+	private File tmpFile;
+	private PrintStream m;
+
+	/**
+	 * @param done Run once the game is over and g.result is set
+	 */
+	public NioGame(NioServer server, Tournament.Game g, NioClient home, NioClient away,
+					GameMove move, GameState brd, Runnable done)
+	{
+		this.server = server;
+		game = g;
+		players = new NioClient [] { home, away };
+		names = new String [] { home.name, away.name };
+		events = server.serialExecutor();
+		this.done = done;
+		mv = move;
+		board = brd;
+		homeSym = Tournament.gameParams.character("HOMESYM");
+		awaySym = Tournament.gameParams.character("AWAYSYM");
+		for (int i=0; i<2; i++) {
+			unread.add(new ArrayDeque<String>());
+			unreadNanos.add(new ArrayDeque<Long>());
+		}
+	}
+	public void start()
+	{
+		events.execute(new Runnable() {
+			public void run()
+			{ begin(); }
+		});
+	}
+	private void begin()
+	{
+		try {
+			tmpFile = File.createTempFile(names[0] + game.gameNum, names[1]);
+			m = new PrintStream(tmpFile);
+		}
+		catch (Exception e) {
+			System.err.println("Can't make dump file: " + e);
+			m = new PrintStream(new ByteArrayOutputStream());
+		}
+		board.reset();
+		if (players[0].DQd && players[1].DQd) {
+			m.printf("Draw. Both DQ'd%n");
+			end("DRAW", GameState.Status.DRAW);
+			return;
+		} else if (players[0].DQd) {
+			m.printf("%s won. %s DQ'd", names[1], names[0]);
+			end("LOSS", GameState.Status.AWAY_WIN);
+			return;
+		} else if (players[1].DQd) {
+			m.printf("%s won. %s DQ'd", names[0], names[1]);
+			end("WIN", GameState.Status.HOME_WIN);
+			return;
+		}
+		players[0].listen(this, events);
+		players[1].listen(this, events);
+		phase = Phase.GREETING;
+		players[0].simpleMsg("START", "HOME", players[1].name);
+		players[1].simpleMsg("START", "AWAY", players[0].name);
+		waiting[0] = waiting[1] = true;
+		setDeadline(GREETING_LIMIT * 1000L);
+	}
+	public void line(NioClient c, String line, long nanos)
+	{
+		int side = c == players[0] ? 0 : 1;
+		unread.get(side).add(line);
+		unreadNanos.get(side).add(nanos);
+		advance();
+	}
+	public void closed(NioClient c)
+	{
+		gone[c == players[0] ? 0 : 1] = true;
+		advance();
+	}
+	/**
+	 * The next line from side, or null if there isn't one yet.
+	 */
+	private String poll(int side)
+	{
+		unreadNanos.get(side).poll();
+		return unread.get(side).poll();
+	}
+	/**
+	 * Takes the lines the current phase is waiting for.
+	 */
+	private void advance()
+	{
+		if (phase == Phase.GREETING) {
+			for (int i=0; i<2; i++) {
+				if (waiting[i] && !unread.get(i).isEmpty()) {
+					greetings[i] = poll(i);
+					waiting[i] = false;
+				} else if (waiting[i] && gone[i]) {
+					System.err.printf("init timeout %s %d%n", names[i], GREETING_LIMIT);
+					waiting[i] = false;
+				}
+			}
+			if (!waiting[0] && !waiting[1]) {
+				startPlay();
+			}
+		} else if (phase == Phase.MOVING) {
+			if (!unread.get(who).isEmpty()) {
+				cancelDeadline();
+				// charged from when the line came, not the latest one
+				long nanos = unreadNanos.get(who).peek();
+				String line = poll(who);
+				moved(line, Math.max(0, nanos - moveStart) / 1000000);
+			} else if (gone[who]) {
+				cancelDeadline();
+				timedOut();
+			}
+		} else if (phase == Phase.ENDING) {
+			for (int i=0; i<2; i++) {
+				// read through to the client's OVER, as GameThread's flushSocket
+				while (waiting[i] && !unread.get(i).isEmpty()) {
+					if (poll(i).equals("OVER"))
+						waiting[i] = false;
+				}
+				if (gone[i]) {
+					waiting[i] = false;
+				}
+			}
+			if (!waiting[0] && !waiting[1]) {
+				finish();
+			}
+		}
+	}
+	private void setDeadline(long millis)
+	{
+		final int seq = ++deadlineSeq;
+		deadline = server.wheel.schedule(millis, new Runnable() {
+			public void run()
+			{
+				events.execute(new Runnable() {
+					public void run()
+					{ expired(seq); }
+				});
+			}
+		});
+	}
+	private void cancelDeadline()
+	{
+		if (deadline != null) {
+			deadline.cancel();
+			deadline = null;
+		}
+		deadlineSeq++;
+	}
+	private void expired(int seq)
+	{
+		if (seq != deadlineSeq) {
+			return;
+		}
+		deadline = null;
+		if (phase == Phase.GREETING) {
+			// as hardLimitResponse, which gives null
+			for (int i=0; i<2; i++) {
+				if (waiting[i]) {
+					System.err.printf("init timeout %s %d%n", names[i], GREETING_LIMIT);
+					waiting[i] = false;
+				}
+			}
+			startPlay();
+		} else if (phase == Phase.MOVING) {
+			timedOut();
+		} else if (phase == Phase.ENDING) {
+			finish();
+		}
+	}
+	private void timedOut()
+	{
+		System.err.printf("timeout %s%n", names[who]);
+		players[who].simpleMsg("TIME", Double.toString(moveLimit + 10.0));
+		disqualify();
+	}
+	private void startPlay()
+	{
+		cancelDeadline();
+		players[0].simpleMsg(String.valueOf(greetings[1]));
+		players[1].simpleMsg(String.valueOf(greetings[0]));
+		players[0].gameTimeRemaining = players[0].gameTimeLimit;
+		players[1].gameTimeRemaining = players[1].gameTimeLimit;
+		who = 0;
+		lastMove = "--";
+		phase = Phase.MOVING;
+		if (board.getStatus() == GameState.Status.GAME_ON) {
+			askForMove();
+		} else {
+			gameOver(board.getStatus());
+		}
+	}
+	private void askForMove()
+	{
+		players[who].simpleMsg("MOVE", lastMove, board.msgString());
+		moveLimit = Math.min(players[who].gameTimeRemaining, players[who].finalPlayLimit);
+		moveStart = System.nanoTime();
+		setDeadline((long)(moveLimit * 1000));
+		advance();
+	}
+	/**
+	 * The mover's reply, diff milliseconds after it was asked; the rest
+	 * is GameThread's move loop.
+	 */
+	private void moved(String line, long diff)
+	{
+		players[who].simpleMsg("TIME", Double.toString(diff/1000.0));
+		try {
+			mv.parseMove(line);
+		}
+		catch (Exception e) {
+			// as timedResponse, which takes an unparsable move as a timeout
+			System.err.printf("timeout %s%n", names[who]);
+			players[who].simpleMsg("TIME", Double.toString(moveLimit + 10.0));
+			disqualify();
+			return;
+		}
+		double actualTime = diff / 1000.0;
+		players[who].gameTimeRemaining -= actualTime;
+		if (actualTime > players[who].moveLimit) {
+			warnings[who]++;
+			System.err.printf("warning %s %f%n", players[who].name, actualTime);
+			if (warnings[who] > players[who].maxWarnings) {
+				System.err.printf("Too many timeouts: %s%n", players[who].name);
+				m.printf("%s won. %s had too many timeouts%n", names[(who+1)%2], names[who]);
+				gameOver(GameState.Status.GAME_ON);
+				return;
+			}
+		}
+		if (!board.makeMove(mv)) {
+			System.err.printf("%s won. %s made bad move %s%n", names[(who+1)%2], names[who], mv.toString());
+			m.printf("%s won. %s made bad move %s%n", names[(who+1)%2], names[who], mv.toString());
+			gameOver(GameState.Status.GAME_ON);
+			return;
+		}
+		lastMove = mv.toString();
+		m.printf("%s (%c) played %s%n", names[who], (who == 0 ? homeSym : awaySym), lastMove);
+		m.printf("%s%n", board.toString());
+		GameState.Status status = board.getStatus();
+		who = (who + 1) % 2;
+		if (status == GameState.Status.GAME_ON) {
+			askForMove();
+		} else {
+			gameOver(status);
+		}
+	}
+	private void disqualify()
+	{
+		players[who].DQd = true;
+		System.err.printf("%s DQd%n", players[who].name);
+		players[who].simpleMsg("DONE");
+		m.printf("%s won. %s DQd%n", names[(who+1)%2], names[who]);
+		gameOver(GameState.Status.GAME_ON);
+	}
+	/**
+	 * The game is over; GAME_ON means the side to move lost it.
+	 */
+	private void gameOver(GameState.Status status)
+	{
+		if (status == GameState.Status.GAME_ON) {
+			status = who == 0 ? GameState.Status.AWAY_WIN : GameState.Status.HOME_WIN;
+			winner = who == 0 ? "AWAY" : "HOME";
+		} else if (status == GameState.Status.HOME_WIN) {
+			m.printf("%s (%c) (%f seconds remaining) won.%n", names[0], homeSym, players[0].gameTimeRemaining);
+			m.printf("%s had %f seconds remaining.%n", names[1], players[1].gameTimeRemaining);
+			winner = "HOME";
+		} else if (status == GameState.Status.AWAY_WIN) {
+			m.printf("%s (%c) (%f seconds remaining) won.%n", names[1], awaySym, players[1].gameTimeRemaining);
+			m.printf("%s had %f seconds remaining.%n", names[0], players[0].gameTimeRemaining);
+			winner = "AWAY";
+		} else {
+			m.printf("draw.%n");
+			winner = "DRAW";
+		}
+		game.result = status;
+		phase = Phase.ENDING;
+		for (int i=0; i<2; i++) {
+			players[i].simpleMsg("OVER", winner);
+			waiting[i] = !players[i].DQd;
+		}
+		setDeadline(ENDING_LIMIT * 1000L);
+		advance();
+	}
+	private void finish()
+	{
+		cancelDeadline();
+		phase = Phase.OVER;
+		players[0].listen(null, null);
+		players[1].listen(null, null);
+		end(winner.equals("HOME") ? "WIN" : winner.equals("AWAY") ? "LOSS" : "DRAW", game.result);
+	}
+	private void end(String homeResult, GameState.Status result)
+	{
+		m.close();
+		if (tmpFile != null) {
+			GameThread.copyDumpFile(tmpFile, names, GameThread.dir, game.gameNum, homeResult);
+		}
+		game.result = result;
+		done.run();
+	}
+}
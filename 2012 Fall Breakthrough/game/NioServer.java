@@ -0,0 +1,302 @@
+package game;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tournament server on one selector thread and a small fixed pool, for
+ * more clients than a thread per connection and per game allows. The
+ * selector thread accepts, reads and writes non-blocking SocketChannels
+ * (NioClient cuts what it reads into lines) and drives a TimerWheel
+ * that holds every deadline. Everything else, signing clients in and
+ * playing games (NioGame), runs on the pool as events, each client or
+ * game on its own serial executor so its events run one at a time and
+ * in order. Clients speak the same protocol as with SocketClient and
+ * GameThread, so GamePlayer.compete works unchanged.
+ */
+public class NioServer {
+	public static final long TICK_MILLIS = 10;
+	public static final int WHEEL_SLOTS = 512;
+	// Connections the OS may hold for us before they are accepted
+	public static final int BACKLOG = 1024;
+	// Seconds allowed for a client's type, once it has given its name
+	private static final int TYPE_LIMIT = 10;
+
+	final TimerWheel wheel = new TimerWheel(TICK_MILLIS, WHEEL_SLOTS);
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private final ExecutorService pool;
+	private final ConcurrentLinkedQueue<NioClient> writers = new ConcurrentLinkedQueue<NioClient>();
+	private final Thread loop;
+	private volatile boolean running = true;
+
+	private NioClient [] clients;
+	private int accepted;
+	private CountDownLatch signedIn;
+	private int initLimit, pLimit, fLimit, gLimit, nWarnings;
+
+	/**
+	 * Runs tasks on the pool one at a time, in the order given.
+	 */
+	private class Serial implements Executor, Runnable {
+		private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+		private boolean active;
+
+		public synchronized void execute(Runnable r)
+		{
+			tasks.add(r);
+			if (!active) {
+				active = true;
+				pool.execute(this);
+			}
+		}
+		public void run()
+		{
+			while (true) {
+				Runnable r;
+				synchronized (this) {
+					r = tasks.poll();
+					if (r == null) {
+						active = false;
+						return;
+					}
+				}
+				try {
+					r.run();
+				}
+				catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	/**
+	 * Takes a new client's name, then its type, as SocketClient's
+	 * constructor does, with the same limits.
+	 */
+	private class SignIn implements NioClient.Listener {
+		private final NioClient c;
+		private final Executor events = new Serial();
+		private TimerWheel.Timeout deadline;
+		private int stage;				// 0 for the name, 1 for the type, 2 when done
+
+		public SignIn(NioClient c)
+		{
+			this.c = c;
+			setDeadline(initLimit);
+			c.listen(this, events);
+		}
+		private void setDeadline(int seconds)
+		{
+			final int s = stage;
+			deadline = wheel.schedule(seconds * 1000L, new Runnable() {
+				public void run()
+				{
+					events.execute(new Runnable() {
+						public void run()
+						{ expired(s); }
+					});
+				}
+			});
+		}
+		public void line(NioClient c, String line, long nanos)
+		{
+			if (stage == 0) {
+				c.name = line;
+				deadline.cancel();
+				stage = 1;
+				setDeadline(TYPE_LIMIT);
+			} else if (stage == 1) {
+				c.deterministic = line.equals("DETERMINISTIC");
+				done();
+			}
+		}
+		public void closed(NioClient c)
+		{
+			// as a read that fails in SocketClient's constructor
+			if (stage < 2) {
+				deadline.cancel();
+				expired(stage);
+			}
+		}
+		private void expired(int s)
+		{
+			if (s != stage) {
+				return;
+			}
+			System.err.printf("init timeout %s %d%n", c.name, stage == 0 ? initLimit : TYPE_LIMIT);
+			c.DQd = true;
+			c.name = stage == 0 ? "DQd on initialization" : c.name + "DQd init";
+			done();
+		}
+		private void done()
+		{
+			deadline.cancel();
+			stage = 2;
+			c.listen(null, null);
+			signedIn.countDown();
+		}
+	}
+
+	/**
+	 * Listens on port, with threads threads for game logic.
+	 */
+	public NioServer(int port, int threads) throws IOException
+	{
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().bind(new InetSocketAddress(port), BACKLOG);
+		serverChannel.configureBlocking(false);
+		pool = Executors.newFixedThreadPool(threads);
+		loop = new Thread("NioServer selector") {
+			public void run()
+			{ selectLoop(); }
+		};
+		loop.setDaemon(true);
+	}
+	/**
+	 * Waits for num clients to connect and sign in (or be DQd trying),
+	 * with the limits SocketClient's constructor takes.
+	 * @return The clients, in the order they connected
+	 */
+	public Client [] accept(int num, int initTimeLimit, int pLimit, int fLimit,
+							int gLimit, int nWarnings) throws IOException, InterruptedException
+	{
+		clients = new NioClient [num];
+		signedIn = new CountDownLatch(num);
+		initLimit = initTimeLimit;
+		this.pLimit = pLimit;
+		this.fLimit = fLimit;
+		this.gLimit = gLimit;
+		this.nWarnings = nWarnings;
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		loop.start();
+		signedIn.await();
+		return clients;
+	}
+	/**
+	 * A scheduler that plays each game as an NioGame on this server.
+	 */
+	Tournament.Scheduler scheduler(int numClients, List<Tournament.Game> schedule,
+							Tournament.Standings standings, GameState st, GameMove move)
+	{
+		return new Tournament.Scheduler(numClients, schedule, standings, st, move) {
+			protected void launch(final Tournament.Game g)
+			{
+				new NioGame(NioServer.this, g, clients[g.h], clients[g.a],
+						(GameMove)move.clone(), (GameState)st.clone(), new Runnable() {
+					public void run()
+					{ finished(g); }
+				}).start();
+			}
+		};
+	}
+	/**
+	 * A new executor whose tasks run on the pool one at a time.
+	 */
+	Executor serialExecutor()
+	{ return new Serial(); }
+	/**
+	 * Asks the selector thread to write c's queued output when it can.
+	 */
+	void wantWrite(NioClient c)
+	{
+		writers.add(c);
+		selector.wakeup();
+	}
+	private void selectLoop()
+	{
+		while (running) {
+			try {
+				selector.select(wheel.millisToNextTick());
+				NioClient w;
+				while ((w = writers.poll()) != null) {
+					SelectionKey k = w.key();
+					if (k != null && k.isValid()) {
+						k.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					}
+				}
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey k = it.next();
+					it.remove();
+					if (!k.isValid()) {
+						continue;
+					}
+					if (k.isAcceptable()) {
+						acceptOne();
+						continue;
+					}
+					NioClient c = (NioClient)k.attachment();
+					if (k.isReadable() && !c.read()) {
+						close(c);
+						continue;
+					}
+					if (k.isValid() && k.isWritable()) {
+						c.flush();
+					}
+				}
+				wheel.advance();
+			}
+			catch (IOException e) {
+				System.err.println("Selector problem " + e);
+			}
+		}
+	}
+	private void acceptOne() throws IOException
+	{
+		SocketChannel ch = serverChannel.accept();
+		if (ch == null) {
+			return;
+		}
+		ch.configureBlocking(false);
+		ch.socket().setTcpNoDelay(true);
+		NioClient c = new NioClient(this, accepted, ch, pLimit, fLimit, gLimit, nWarnings);
+		clients[accepted++] = c;
+		c.setKey(ch.register(selector, SelectionKey.OP_READ, c));
+		if (accepted == clients.length) {
+			serverChannel.keyFor(selector).cancel();
+			serverChannel.close();
+		}
+		new SignIn(c);
+	}
+	private void close(NioClient c)
+	{
+		c.disconnected();
+		c.key().cancel();
+		try {
+			c.channel.close();
+		}
+		catch (IOException e) {
+		}
+	}
+	/**
+	 * Lets queued output go out (for up to a second), then closes every
+	 * connection and stops.
+	 */
+	public void close() throws InterruptedException
+	{
+		long end = System.currentTimeMillis() + 1000;
+		for (NioClient c : clients) {
+			while (c != null && !c.closed && !c.isIdle() && System.currentTimeMillis() < end) {
+				Thread.sleep(10);
+			}
+		}
+		running = false;
+		selector.wakeup();
+		loop.join();
+		for (NioClient c : clients) {
+			if (c != null) {
+				close(c);
+			}
+		}
+		pool.shutdown();
+		try {
+			selector.close();
+		}
+		catch (IOException e) {
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package game;
+import java.util.*;
+
+/**
+ * Hashed timing wheel for deadlines. Time is cut into ticks, and a
+ * timeout goes in the slot of the tick it expires on, in a ring of
+ * slots; one due more than a turn of the ring away waits in its slot
+ * for that many more turns. Scheduling and cancelling cost the same
+ * however many timeouts are pending, and each tick only looks at its
+ * own slot. Timeouts fire up to a tick late, never early.
+ *
+ * The owner calls advance regularly (NioServer does so from its
+ * selector loop); tasks run on that thread, so they should be short.
+ */
+public class TimerWheel {
+	public static class Timeout {
+		private final Runnable task;
+		private long rounds;
+		private volatile boolean cancelled;
+
+		private Timeout(Runnable task, long rounds)
+		{
+			this.task = task;
+			this.rounds = rounds;
+		}
+		/**
+		 * Keeps the task from running, if it hasn't yet.
+		 */
+		public void cancel()
+		{ cancelled = true; }
+	}
+
+	public final long tickMillis;
+	private final ArrayList<ArrayList<Timeout>> slots = new ArrayList<ArrayList<Timeout>>();
+	private final long start;
+	private long tick;				// ticks done since start
+
+	public TimerWheel(long tickMillis, int numSlots)
+	{
+		this.tickMillis = tickMillis;
+		for (int i=0; i<numSlots; i++) {
+			slots.add(new ArrayList<Timeout>());
+		}
+		start = System.nanoTime();
+	}
+	/**
+	 * Runs task once millis have passed, on the thread calling advance.
+	 */
+	public synchronized Timeout schedule(long millis, Runnable task)
+	{
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		// the first tick to end at or after the deadline, unless that's done
+		long fire = Math.max((elapsed + millis + tickMillis - 1) / tickMillis - 1, tick);
+		Timeout t = new Timeout(task, (fire - tick) / slots.size());
+		slots.get((int)(fire % slots.size())).add(t);
+		return t;
+	}
+	/**
+	 * Does every tick that has ended since the last call, running the
+	 * tasks that have come due.
+	 */
+	public void advance()
+	{
+		ArrayList<Timeout> due = new ArrayList<Timeout>();
+		synchronized (this) {
+			long now = (System.nanoTime() - start) / 1000000 / tickMillis;
+			for (; tick < now; tick++) {
+				ArrayList<Timeout> slot = slots.get((int)(tick % slots.size()));
+				int kept = 0;
+				for (Timeout t : slot) {
+					if (t.cancelled) {
+						continue;
+					} else if (t.rounds == 0) {
+						due.add(t);
+					} else {
+						t.rounds--;
+						slot.set(kept++, t);
+					}
+				}
+				slot.subList(kept, slot.size()).clear();
+			}
+		}
+		for (Timeout t : due) {
+			if (!t.cancelled)
+				t.task.run();
+		}
+	}
+	/**
+	 * Time until the next tick ends, for a selector's select timeout.
+	 */
+	public synchronized long millisToNextTick()
+	{
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		return Math.max(1, (tick + 1) * tickMillis - elapsed);
+	}
+}
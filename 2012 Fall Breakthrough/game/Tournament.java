@@ -4,6 +4,7 @@ import java.io.*;
 import java.lang.Exception;
 import java.util.Date;
 import java.util.*;
+import java.util.concurrent.*;
 
 import ttt.*;
 import connect4.*;
@@ -16,15 +17,19 @@ public class Tournament {
     public static Params gameParams;
     
 	public static Client [] clients;
-    public static ArrayList<GameThread> threads;
+	// Serve clients through NioServer rather than a thread per game
+	public static boolean nio;
+	// Sign clients in and run games each on its own virtual thread
+	public static boolean virtual;
 	public static GamePlayer [] systematicPlayers = { new RandomBreakthroughPlayer("random+"),
 													new SystematicBreakthroughPlayer("systematic+", true) };
 	 
 	public static final char SEP = File.separatorChar;
 	
-	private static class Game {
+	static class Game {
 		public int h, a;
 		public int gameNum;
+		public GameState.Status result = GameState.Status.GAME_ON;
 		public Game(int h, int a, int n)
 		{
 			this.h = h;
@@ -32,7 +37,197 @@ public class Tournament {
 			this.gameNum = n;
 		}
 	}
+	/**
+	 * Wins, losses and draws: head to head ([home][away]), at home, away
+	 * and in all.
+	 */
+	static class Standings {
+		public final int [][][] headToHead;
+		public final int [][] home, away, total;
+		public Standings(int numClients)
+		{
+			headToHead = new int [numClients][numClients][3];
+			home = new int [numClients][3];
+			away = new int [numClients][3];
+			total = new int [numClients][3];
+		}
+		/**
+		 * Adds cnt results of a game between p1 (home) and p2 (away);
+		 * col is 0 for a home win, 1 for an away win and 2 for a draw.
+		 */
+		public void tally(int p1, int p2, int col, int cnt)
+		{
+			int other = col == 2 ? 2 : 1 - col;
+			headToHead[p1][p2][col] += cnt;
+			home[p1][col] += cnt;
+			away[p2][other] += cnt;
+			total[p1][col] += cnt;
+			total[p2][other] += cnt;
+		}
+		/**
+		 * Whether one side has won CONSECWINS games of p1 against p2 and
+		 * the other none, so the rest can be awarded without playing.
+		 */
+		public boolean decided(int p1, int p2)
+		{
+			int consecWins = tournamentParams.integer("CONSECWINS");
+			int [] h2h = headToHead[p1][p2];
+			return (h2h[0] >= consecWins && h2h[1] + h2h[2] == 0) ||
+					(h2h[0] + h2h[2] == 0 && h2h[1] >= consecWins);
+		}
+	}
+	/**
+	 * Starts the schedule's games and hands them back as they finish.
+	 * Games not yet started are indexed by client, each in both its
+	 * clients' sets in schedule order, so when a game ends its clients'
+	 * next games are found and started at once, without a pass over the
+	 * whole schedule. Subclasses say how a game is run, and call
+	 * finished when it's over.
+	 */
+	static abstract class Scheduler {
+		private final ArrayList<LinkedHashSet<Game>> pending = new ArrayList<LinkedHashSet<Game>>();
+		private final LinkedBlockingQueue<Game> done = new LinkedBlockingQueue<Game>();
+		private final Standings standings;
+		protected final GameState st;
+		protected final GameMove move;
+		public int remain;				// games not yet over
+		public volatile int running;
+		public boolean verbose = true;	// print each game as it starts
+
+		public Scheduler(int numClients, List<Game> schedule, Standings standings, GameState st, GameMove move)
+		{
+			for (int i=0; i<numClients; i++) {
+				pending.add(new LinkedHashSet<Game>());
+			}
+			for (Game g : schedule) {
+				pending.get(g.h).add(g);
+				pending.get(g.a).add(g);
+			}
+			this.standings = standings;
+			this.st = st;
+			this.move = move;
+			remain = schedule.size();
+		}
+		/**
+		 * Starts g, whose clients are marked busy; g.result is to be set
+		 * and finished called when it's over, from any thread.
+		 */
+		protected abstract void launch(Game g);
+		protected void finished(Game g)
+		{ done.add(g); }
+		/**
+		 * Starts client c's first pending game against a free opponent, if
+		 * c is free, awarding along the way any of c's games whose pairing
+		 * is already decided.
+		 */
+		public void startNext(int c)
+		{
+			if (clients[c].busy) {
+				return;
+			}
+			Iterator<Game> it = pending.get(c).iterator();
+			while (it.hasNext()) {
+				Game g = it.next();
+				int other = g.h == c ? g.a : g.h;
+				if (standings.decided(g.h, g.a)) {
+					it.remove();
+					pending.get(other).remove(g);
+					standings.tally(g.h, g.a, standings.headToHead[g.h][g.a][0] == 0 ? 1 : 0, 1);
+					remain--;
+				} else if (!clients[other].busy) {
+					it.remove();
+					pending.get(other).remove(g);
+					clients[g.h].busy = clients[g.a].busy = true;
+					running++;
+					if (verbose) {
+						System.out.printf("%s-%s (%d)%n", clients[g.h].name, clients[g.a].name, remain);
+					}
+					launch(g);
+					return;
+				}
+			}
+		}
+		/**
+		 * Waits for the next game to finish, and frees its clients.
+		 */
+		public Game next() throws InterruptedException
+		{
+			Game g = done.take();
+			running--;
+			remain--;
+			clients[g.h].busy = clients[g.a].busy = false;
+			return g;
+		}
+		public void shutdown()
+		{ }
+	}
+	/**
+	 * Runs each game as a GameThread task on a pool, or in virtual mode
+	 * on a virtual thread of its own.
+	 */
+	static class ThreadScheduler extends Scheduler {
+		private final ExecutorService pool;
+
+		public ThreadScheduler(int numClients, List<Game> schedule, Standings standings, GameState st, GameMove move)
+		{
+			super(numClients, schedule, standings, st, move);
+			// a client is in one game at a time
+			pool = virtual ? VirtualThreads.newPerTaskExecutor("game") :
+							Executors.newFixedThreadPool(Math.max(1, numClients / 2));
+		}
+		protected void launch(final Game g)
+		{
+			final GameThread game = new GameThread((SocketClient)clients[g.h], g.h, (SocketClient)clients[g.a], g.a,
+									g.gameNum, move.clone(), st.clone());
+			pool.execute(new Runnable() {
+				public void run()
+				{
+					try {
+						game.run();
+					}
+					catch (RuntimeException e) {
+						// result stays GAME_ON, which is reported
+						e.printStackTrace();
+					}
+					g.result = game.result;
+					finished(g);
+				}
+			});
+		}
+		public void shutdown()
+		{ pool.shutdown(); }
+	}
 	
+    /**
+     * Waits for num clients to connect and sign in, in the order they
+     * connect. In virtual mode each signs in on its own virtual thread,
+     * so one slow to give its name holds up nobody else.
+     */
+    static Client [] acceptClients(ServerSocket socket, int num, final int initLimit, final int moveLimit,
+    								final int finalPlayLimit, final int gameLimit, final int maxWarnings) throws Exception
+    {
+    	Client [] cl = new Client [num];
+    	if (!virtual) {
+    		for (int i=0; i<num; i++) {
+    			cl[i] = new SocketClient(socket, initLimit, moveLimit, finalPlayLimit, gameLimit, maxWarnings);
+    		}
+    		return cl;
+    	}
+    	ExecutorService signIn = VirtualThreads.newPerTaskExecutor("sign-in");
+    	ArrayList<Future<Client>> joined = new ArrayList<Future<Client>>();
+    	for (int i=0; i<num; i++) {
+    		final Socket sock = socket.accept();
+    		joined.add(signIn.submit(new Callable<Client>() {
+    			public Client call() throws Exception
+    			{ return new SocketClient(sock, initLimit, moveLimit, finalPlayLimit, gameLimit, maxWarnings); }
+    		}));
+    	}
+    	for (int i=0; i<num; i++) {
+    		cl[i] = joined.get(i).get();
+    	}
+    	signIn.shutdown();
+    	return cl;
+    }
     private static String printableName(String name)
     {
     	int maxLen = gameParams.bool("TIES") ? 13 : 9;
@@ -166,20 +361,22 @@ public class Tournament {
     	
     	int p1, p2;
     	int i;
-        int headToHeadSummary[][][] = new int [NUM_CLIENTS][NUM_CLIENTS][3];
-        int homeSummary[][] = new int [NUM_CLIENTS][3];
-        int awaySummary[][] = new int [NUM_CLIENTS][3];
-        int totalSummary[][] = new int [NUM_CLIENTS][3];
+    	Standings standings = new Standings(NUM_CLIENTS);
 		ArrayList<Game> schedule = new ArrayList<Game>();
-		threads = new ArrayList<GameThread>();
 		String format = gameParams.bool("TIES") ? "%13s " : "%9s ";
 		
 		try {
-			ServerSocket socket = new ServerSocket(PORT);
-	        clients = new Client [NUM_CLIENTS];
-			for (i=0; i<NUM_CLIENTS; i++) {
-				clients[i] = new Client(socket, INIT_LIMIT, MOVE_LIMIT, FINAL_PLAY_LIMIT,
+			NioServer server = null;
+			if (nio) {
+				server = new NioServer(PORT, Runtime.getRuntime().availableProcessors());
+				clients = server.accept(NUM_CLIENTS, INIT_LIMIT, MOVE_LIMIT, FINAL_PLAY_LIMIT,
+											GAME_LIMIT, MAX_WARNINGS);
+			} else {
+				ServerSocket socket = new ServerSocket(PORT);
+				clients = acceptClients(socket, NUM_CLIENTS, INIT_LIMIT, MOVE_LIMIT, FINAL_PLAY_LIMIT,
 											GAME_LIMIT, MAX_WARNINGS);
+			}
+			for (i=0; i<NUM_CLIENTS; i++) {
 				if (clients[i].name.toUpperCase().contains("HUMAN")) {
 					clients[i].gameTimeLimit = clients[i].moveLimit = 
 						clients[i].finalPlayLimit = gameParams.integer("HUMANTIME");  
@@ -197,110 +394,58 @@ public class Tournament {
 			}
 			shuffle(schedule);
 
-			int remain = schedule.size();
-	
-			while (remain > 0) {
-				Thread.sleep(500);
-				boolean cont = true;
-				while (cont) {
-					cont = false;
-					for (i=0; i<schedule.size(); i++) {
-						Game g = schedule.get(i);
-						p1 = g.h;
-						p2 = g.a;
-						int consecWins = Tournament.tournamentParams.integer("CONSECWINS");
-						if ((headToHeadSummary[p1][p2][0] >= consecWins &&
-								headToHeadSummary[p1][p2][1] + headToHeadSummary[p1][p2][2] == 0) ||
-							(headToHeadSummary[p1][p2][0] + headToHeadSummary[p1][p2][2] == 0 && 
-								headToHeadSummary[p1][p2][1] >= consecWins)) {
-							schedule.remove(i);
-							remain--;
-							if (headToHeadSummary[p1][p2][0] == 0) {
-								headToHeadSummary[p1][p2][1]++; 
-								homeSummary[p1][1]++;
-								awaySummary[p2][0]++;
-								totalSummary[p1][1]++;
-								totalSummary[p2][0]++;
-							} else {
-								headToHeadSummary[p1][p2][0]++; 
-								homeSummary[p1][0]++;
-								awaySummary[p2][1]++;
-								totalSummary[p1][0]++;
-								totalSummary[p2][1]++;
-							}
-						} else if (!clients[g.h].busy && !clients[g.a].busy) {
-							GameThread game = new GameThread(clients[g.h], g.h, clients[g.a], g.a,
-													g.gameNum, move.clone(), st.clone());
-							game.start();
-							clients[g.h].busy = clients[g.a].busy = true;
-							threads.add(game);
-							schedule.remove(i);
-							System.out.printf("%s-%s (%d)%n", clients[g.h].name, clients[g.a].name, remain);
-							cont = true;
-						}
-					}
-				}
-				i = 0;
-				while (i<threads.size()) {
-					GameThread t = threads.get(i);
-					if (t.isAlive()) {
-						i++;
-					} else {
-						p1 = t.homeID;
-						p2 = t.awayID;
-						clients[p1].busy = clients[p2].busy = false;
-	                    GameState.Status outcome = t.result;
-						threads.remove(i);
-						remain--;
-						
-						int cnt = stochasticGame(p1, p2) ? 1 : NUM_GAMES;
-	                    if (outcome == GameState.Status.HOME_WIN) {
-	                    	System.out.printf("home (%s) won%n", clients[p1].name);
-	                    	headToHeadSummary[p1][p2][0] += cnt;
-							awaySummary[p2][1] += cnt;
-							homeSummary[p1][0] += cnt;
-							totalSummary[p1][0] += cnt;
-							totalSummary[p2][1] += cnt;
-	                    } else if (outcome == GameState.Status.AWAY_WIN) {
-	                    	System.out.printf("away (%s) won%n", clients[p2].name);
-	                    	headToHeadSummary[p1][p2][1] += cnt;
-							awaySummary[p2][0] += cnt;
-							homeSummary[p1][1] += cnt;
-							totalSummary[p1][1] += cnt;
-							totalSummary[p2][0] += cnt;
-	                    } else if (outcome == GameState.Status.DRAW) {
-	                    	System.out.println(" draw\n");
-	                    	headToHeadSummary[p1][p2][2] += cnt;
-							awaySummary[p2][2] += cnt;
-							homeSummary[p1][2] += cnt;
-							totalSummary[p1][2] += cnt;
-							totalSummary[p2][2] += cnt;
-	                    } else {
-	                    	System.err.println("Error with game outcome");
-	                    }
-					}
-				}
+			Scheduler scheduler = nio ? server.scheduler(NUM_CLIENTS, schedule, standings, st, move) :
+									new ThreadScheduler(NUM_CLIENTS, schedule, standings, st, move);
+			for (p1=0; p1<NUM_CLIENTS; p1++) {
+				scheduler.startNext(p1);
 			}
+			// every client is free when nothing is running, so nothing is left
+			while (scheduler.running > 0) {
+				Game g = scheduler.next();
+				p1 = g.h;
+				p2 = g.a;
+                GameState.Status outcome = g.result;
+				
+				int cnt = stochasticGame(p1, p2) ? 1 : NUM_GAMES;
+                if (outcome == GameState.Status.HOME_WIN) {
+                	System.out.printf("home (%s) won%n", clients[p1].name);
+                	standings.tally(p1, p2, 0, cnt);
+                } else if (outcome == GameState.Status.AWAY_WIN) {
+                	System.out.printf("away (%s) won%n", clients[p2].name);
+                	standings.tally(p1, p2, 1, cnt);
+                } else if (outcome == GameState.Status.DRAW) {
+                	System.out.println(" draw\n");
+                	standings.tally(p1, p2, 2, cnt);
+                } else {
+                	System.err.println("Error with game outcome");
+                }
+				scheduler.startNext(p1);
+				scheduler.startNext(p2);
+			}
+			scheduler.shutdown();
 		
 			for (int j=0; j<NUM_CLIENTS; j++) {
 				clients[j].simpleMsg("DONE");
 			}
+			if (server != null) {
+				server.close();
+			}
 			
 			if (professorTournament) {
 				if (sectionTournament) {
-					displaySummary("+a", format, NUM_CLIENTS, headToHeadSummary, homeSummary);
-					displaySummary("+b", format, NUM_CLIENTS, headToHeadSummary, homeSummary);
+					displaySummary("+a", format, NUM_CLIENTS, standings.headToHead, standings.home);
+					displaySummary("+b", format, NUM_CLIENTS, standings.headToHead, standings.home);
 				} else {
-					displaySummary("", format, NUM_CLIENTS, headToHeadSummary, homeSummary);
+					displaySummary("", format, NUM_CLIENTS, standings.headToHead, standings.home);
 				}
 			} else {
-				displaySummary("", format, NUM_CLIENTS, headToHeadSummary, homeSummary);
+				displaySummary("", format, NUM_CLIENTS, standings.headToHead, standings.home);
 			}
 	        System.out.printf("%n%n");
 	        for (p1=0; p1<NUM_CLIENTS; p1++) {
 	        	System.out.printf(format + "%3s ", printableName(clients[p1].name),
 	        					clients[p1].DQd ? "DQd" : "  ");
-	        	displaySummary(totalSummary[p1][0], totalSummary[p1][1], totalSummary[p1][2]);
+	        	displaySummary(standings.total[p1][0], standings.total[p1][1], standings.total[p1][2]);
 	        	System.out.println();
 	        }
 	        System.out.println();
@@ -310,9 +455,15 @@ public class Tournament {
 		}
 	}
 
+	/**
+	 * @param args "nio" to serve clients through NioServer, "virtual" to
+	 * give each client's sign-in and each game a virtual thread
+	 */
 	public static void main(String[] args)
 	{
 		GameType game = GameType.Breakthrough;
+		nio = args.length > 0 && args[0].equals("nio");
+		virtual = args.length > 0 && args[0].equals("virtual");
 		tournamentParams = new Params("config" + SEP + "tournament.txt");
 		System.out.printf("Starting %s tournament%n", game.toString());
 		System.out.printf("%d clients%n", tournamentParams.integer("NUMCLIENTS"));
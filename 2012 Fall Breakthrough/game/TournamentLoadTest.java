@@ -0,0 +1,155 @@
+package game;
+import java.io.*;
+import java.lang.management.*;
+import java.net.ServerSocket;
+import java.util.*;
+import java.util.concurrent.*;
+
+import breakthrough.*;
+
+/**
+ * Load test for the tournament server. Lightweight bots (random
+ * Breakthrough players), each on a thread from VirtualThreads, connect
+ * to a server in this JVM and are paired off, so that half as many games
+ * as there are bots run at once, each pair playing a few games. Prints
+ * games per second, the most games running at once, the peak number of
+ * threads, and heap in use, sampled as it runs and after a final
+ * collection. Run from the project directory with
+ *
+ *   java game.TournamentLoadTest [bots [games per pair [thread|virtual|nio]]]
+ *
+ * (2000 bots, 3 games, virtual by default). Dump files go to a
+ * temporary directory, removed at the end.
+ */
+public class TournamentLoadTest {
+	private static volatile int mostRunning;
+	private static volatile long mostHeap;
+
+	public static void main(String [] args) throws Exception
+	{
+		int bots = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		String mode = args.length > 2 ? args[2] : "virtual";
+		Tournament.virtual = mode.equals("virtual");
+		Tournament.nio = mode.equals("nio");
+		Tournament.tournamentParams = new Params("config" + File.separatorChar + "tournament.txt");
+		// every game of a pairing is played
+		Tournament.tournamentParams.map.put("CONSECWINS", Integer.toString(games + 1));
+		Tournament.gameParams = new Params("config" + File.separatorChar + "breakthrough.txt");
+		Params gp = Tournament.gameParams;
+		final int port = Tournament.tournamentParams.integer("PORT");
+		File dumps = makeDumpDir();
+		GameThread.dir = dumps.getPath() + File.separatorChar;
+		System.out.printf("%d bots, %d games a pair, %s mode, virtual threads %s%n", bots, games, mode,
+						VirtualThreads.AVAILABLE ? "available" : "not available (platform threads)");
+
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b)
+			{ }
+		}));
+		NioServer server = null;
+		ServerSocket socket = null;
+		if (Tournament.nio) {
+			server = new NioServer(port, Runtime.getRuntime().availableProcessors());
+		} else {
+			socket = new ServerSocket(port, bots);
+		}
+		ExecutorService botThreads = VirtualThreads.newPerTaskExecutor("bot");
+		for (int i=0; i<bots; i++) {
+			final String name = "bot" + i;
+			botThreads.execute(new Runnable() {
+				public void run()
+				{ new RandomBreakthroughPlayer(name).compete(new String [] { "", "" + port }, 0); }
+			});
+		}
+		Client [] clients = Tournament.nio ?
+				server.accept(bots, gp.integer("INITTIME"), gp.integer("MOVETIME"), gp.integer("MAXMOVETIME"),
+								gp.integer("GAMETIME"), gp.integer("NUMWARNINGS")) :
+				Tournament.acceptClients(socket, bots, gp.integer("INITTIME"), gp.integer("MOVETIME"),
+								gp.integer("MAXMOVETIME"), gp.integer("GAMETIME"), gp.integer("NUMWARNINGS"));
+		Tournament.clients = clients;
+		for (Client c : clients) {
+			new File(dumps, c.name).mkdir();
+		}
+
+		ArrayList<Tournament.Game> schedule = new ArrayList<Tournament.Game>();
+		for (int i=0; i+1<bots; i+=2) {
+			for (int g=0; g<games; g++) {
+				schedule.add(g % 2 == 0 ? new Tournament.Game(i, i+1, g) : new Tournament.Game(i+1, i, g));
+			}
+		}
+		Tournament.Standings standings = new Tournament.Standings(bots);
+		final Tournament.Scheduler scheduler = Tournament.nio ?
+				server.scheduler(bots, schedule, standings, new BreakthroughState(), new BreakthroughMove()) :
+				new Tournament.ThreadScheduler(bots, schedule, standings, new BreakthroughState(), new BreakthroughMove());
+		scheduler.verbose = false;
+
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+		sampler.scheduleAtFixedRate(new Runnable() {
+			public void run()
+			{
+				mostRunning = Math.max(mostRunning, scheduler.running);
+				mostHeap = Math.max(mostHeap, memory.getHeapMemoryUsage().getUsed());
+			}
+		}, 0, 100, TimeUnit.MILLISECONDS);
+
+		long start = System.nanoTime();
+		for (int c=0; c<bots; c++) {
+			scheduler.startNext(c);
+		}
+		int played = 0, unfinished = 0;
+		while (scheduler.running > 0) {
+			Tournament.Game g = scheduler.next();
+			played++;
+			if (g.result == GameState.Status.GAME_ON) {
+				unfinished++;
+			}
+			scheduler.startNext(g.h);
+			scheduler.startNext(g.a);
+		}
+		double secs = (System.nanoTime() - start) / 1e9;
+		scheduler.shutdown();
+		sampler.shutdown();
+		for (Client c : clients) {
+			c.simpleMsg("DONE");
+		}
+		if (server != null) {
+			server.close();
+		}
+		botThreads.shutdown();
+		botThreads.awaitTermination(10, TimeUnit.SECONDS);
+		System.setOut(console);
+
+		System.gc();
+		int dq = 0;
+		for (Client c : clients) {
+			if (c.DQd)
+				dq++;
+		}
+		System.out.printf("%d games (%d with no result, %d clients DQd) in %.1f s: %.0f games/s%n",
+						played, unfinished, dq, secs, played / secs);
+		System.out.printf("most games at once %d, peak threads %d%n", mostRunning,
+						ManagementFactory.getThreadMXBean().getPeakThreadCount());
+		System.out.printf("heap: peak sampled %.1f MB, after collection %.1f MB%n",
+						mostHeap / 1e6, memory.getHeapMemoryUsage().getUsed() / 1e6);
+		delete(dumps);
+	}
+	private static File makeDumpDir() throws IOException
+	{
+		File dir = File.createTempFile("loadtest", "");
+		dir.delete();
+		dir.mkdir();
+		return dir;
+	}
+	private static void delete(File f)
+	{
+		File [] children = f.listFiles();
+		if (children != null) {
+			for (File c : children)
+				delete(c);
+		}
+		f.delete();
+	}
+}
@@ -9,6 +9,67 @@ public class Util {
 		{ row = r; col = c; }
 	}
 	
+	/**
+	 * Zobrist keys for a char [][] board: one random key per square for
+	 * each side's symbol, and one for AWAY to move. A game keeps the xor
+	 * of the keys of its position as a running hash, updating it with
+	 * place or move as pieces come and go; hash rebuilds it from scratch,
+	 * as after parseMsgString. Empty squares have no key.
+	 */
+	public static class Zobrist {
+		public final char homeSym, awaySym;
+		public final long awayToMove;
+		private final long [][] homeKeys, awayKeys;
+
+		/**
+		 * @param seed Seed of the keys, so that they are the same every run
+		 */
+		public Zobrist(int rows, int cols, char homeSym, char awaySym, long seed)
+		{
+			this.homeSym = homeSym;
+			this.awaySym = awaySym;
+			Random rand = new Random(seed);
+			homeKeys = new long [rows][cols];
+			awayKeys = new long [rows][cols];
+			for (int r=0; r<rows; r++) {
+				for (int c=0; c<cols; c++) {
+					homeKeys[r][c] = rand.nextLong();
+					awayKeys[r][c] = rand.nextLong();
+				}
+			}
+			awayToMove = rand.nextLong();
+		}
+		/**
+		 * @return Key of sym on [r][c], 0 for anything but the two sides
+		 */
+		public long key(int r, int c, char sym)
+		{ return sym == homeSym ? homeKeys[r][c] : sym == awaySym ? awayKeys[r][c] : 0; }
+		/**
+		 * Adds sym on [r][c] to key, or takes it off if it was there.
+		 */
+		public long place(long key, int r, int c, char sym)
+		{ return key ^ key(r, c, sym); }
+		/**
+		 * place, and the turn passing to the other side. Also undoes
+		 * itself, for games whose moves only put a piece down.
+		 */
+		public long move(long key, int r, int c, char sym)
+		{ return key ^ key(r, c, sym) ^ awayToMove; }
+		/**
+		 * The key of grid with who to move, from scratch.
+		 */
+		public long hash(char [][] grid, GameState.Who who)
+		{
+			long key = who == GameState.Who.AWAY ? awayToMove : 0;
+			for (int r=0; r<grid.length; r++) {
+				for (int c=0; c<grid[r].length; c++) {
+					key ^= key(r, c, grid[r][c]);
+				}
+			}
+			return key;
+		}
+	}
+	
 	public static void clear(char [][] ary, char empty)
 	{
 		for (int r=0; r<ary.length; r++) {
@@ -99,6 +160,26 @@ public class Util {
 		}
 		return buf.toString();
 	}
+	/**
+	 * Checks that s starts with msgString(grid), without building it.
+	 */
+	public static boolean matchesMsgString(String s, char [][] grid)
+	{
+		int NUM_ROWS = grid.length;
+		int NUM_COLS = grid[0].length;
+		if (s.length() < NUM_ROWS * NUM_COLS) {
+			return false;
+		}
+		int cnt = 0;
+		for (int r=NUM_ROWS-1; r>=0; r--) {
+			for (int c=0; c<NUM_COLS; c++, cnt++) {
+				if (s.charAt(cnt) != grid[r][c]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
 	public static String msgString(StringBuffer [][] grid)
 	{
 		int capacity = grid[0][0].capacity();
@@ -0,0 +1,56 @@
+package game;
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+
+/**
+ * A thread per task, virtual where the JVM has virtual threads (Java 21
+ * on). They are looked up by reflection, so the project still builds
+ * and runs on older JVMs, which get platform threads with small stacks
+ * instead: enough for a few thousand, not for hundreds of thousands.
+ *
+ * A virtual thread blocked on a socket read gives its carrier thread
+ * back, unless it holds a monitor; so code run on these threads should
+ * block (SocketClient's reads, GameThread's games) outside synchronized
+ * blocks and methods.
+ */
+public class VirtualThreads {
+	// Stack of a fallback platform thread, in bytes
+	public static final long STACK_SIZE = 256 * 1024;
+	private static final Method NEW_EXECUTOR = lookup();
+	public static final boolean AVAILABLE = NEW_EXECUTOR != null;
+
+	private static Method lookup()
+	{
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		}
+		catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+	/**
+	 * An executor that starts a new thread for each task, virtual if it
+	 * can be.
+	 */
+	public static ExecutorService newPerTaskExecutor(final String name)
+	{
+		if (AVAILABLE) {
+			try {
+				return (ExecutorService)NEW_EXECUTOR.invoke(null);
+			}
+			catch (Exception e) {
+				// fall through to platform threads
+			}
+		}
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			private int count;
+
+			public synchronized Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(null, r, name + "-" + count++, STACK_SIZE);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+}
@@ -0,0 +1,53 @@
+package game.search;
+import game.*;
+
+/**
+ * A player that moves by SearchEngine. Subclasses only say how to wrap
+ * the game's state as a SearchableState. The engine, and its table,
+ * lasts for the whole tournament, so positions searched on one move
+ * help with the next.
+ */
+public abstract class EnginePlayer extends GamePlayer {
+	protected final SearchEngine engine;
+	protected int maxDepth;
+	protected long moveMillis;
+	public SearchEngine.Result last;
+
+	/**
+	 * @param nname Nickname
+	 * @param gs Initial state of the game
+	 * @param maxDepth Deepest iteration searched
+	 * @param moveMillis Time allowed per move, 0 for no limit
+	 * @param threads Search threads; more than one is not deterministic
+	 */
+	public EnginePlayer(String nname, GameState gs, int maxDepth, long moveMillis, int threads)
+	{
+		super(nname, gs, threads == 1);
+		engine = new SearchEngine(TranspositionTable.DEFAULT_ENTRIES, threads);
+		this.maxDepth = maxDepth;
+		this.moveMillis = moveMillis;
+	}
+	/**
+	 * Wraps brd for the engine. brd is a copy the player may change.
+	 */
+	protected abstract SearchableState searchable(GameState brd);
+
+	public void startGame(String opponent)
+	{ engine.table.clear(); }
+	/**
+	 * @return The engine's move, or null if brd has no legal move, as the
+	 * other players do
+	 */
+	public GameMove getMove(GameState brd, String lastMove)
+	{
+		SearchableState state = searchable((GameState)brd.clone());
+		last = engine.search(state, maxDepth, moveMillis);
+		if (dumpLevel > 1) {
+			System.out.printf("depth %d score %d nodes %d%n", last.depth, last.score, last.nodes);
+		}
+		if (last.move == SearchableState.NO_MOVE) {
+			return null;
+		}
+		return state.toGameMove(last.move);
+	}
+}
@@ -0,0 +1,287 @@
+package game.search;
+import game.*;
+
+/**
+ * Negamax alpha-beta over any SearchableState, with iterative deepening,
+ * a shared transposition table, move ordering (table move, two killers
+ * per ply, history) and parallel search.
+ *
+ * Parallel search is "lazy SMP": every extra thread searches the same
+ * position from its own copy, starting one ply deeper on odd threads,
+ * and the threads help each other only through the table. The calling
+ * thread's result is the one returned.
+ */
+public class SearchEngine {
+	public static final int WIN = 1000000;
+	public static final int INFINITY = 2 * WIN;
+	public static final int MAX_PLY = 128;
+	// Scores within MAX_PLY of WIN are wins found at some distance
+	private static final int WIN_BOUND = WIN - MAX_PLY;
+	private static final int HISTORY_SIZE = 1 << 16;
+
+	/**
+	 * Outcome of a search.
+	 */
+	public static class Result {
+		public int move = SearchableState.NO_MOVE;
+		public int score;
+		public int depth;		// last iteration completed
+		public long nodes;		// all threads
+		public long nanos;
+	}
+
+	public final TranspositionTable table;
+	public int threads;
+	private volatile boolean stop;
+	private long deadline;
+
+	/**
+	 * @param tableEntries Transposition table size
+	 * @param threads Number of threads to search with
+	 */
+	public SearchEngine(int tableEntries, int threads)
+	{
+		table = new TranspositionTable(tableEntries);
+		this.threads = Math.max(1, threads);
+	}
+	public SearchEngine()
+	{ this(TranspositionTable.DEFAULT_ENTRIES, Runtime.getRuntime().availableProcessors()); }
+	/**
+	 * Terminal score of a finished game, from the side to move's point
+	 * of view, for SearchableState.terminalScore.
+	 */
+	public static int statusScore(GameState brd)
+	{
+		switch (brd.getStatus()) {
+		case HOME_WIN:
+			return brd.getWho() == GameState.Who.HOME ? WIN : -WIN;
+		case AWAY_WIN:
+			return brd.getWho() == GameState.Who.AWAY ? WIN : -WIN;
+		default:
+			return 0;
+		}
+	}
+	/**
+	 * Searches root to maxDepth, or until millis have passed (0 for no
+	 * limit), whichever comes first. root is left as it was.
+	 */
+	public Result search(SearchableState root, int maxDepth, long millis)
+	{
+		long start = System.nanoTime();
+		deadline = millis > 0 ? start + millis * 1000000L : Long.MAX_VALUE;
+		stop = false;
+		maxDepth = Math.min(maxDepth, MAX_PLY - 1);
+		Worker main = new Worker(root, 0);
+		Worker [] helpers = new Worker [threads - 1];
+		Thread [] helperThreads = new Thread [threads - 1];
+		for (int i=0; i<helpers.length; i++) {
+			helpers[i] = new Worker(root.copy(), i + 1);
+			final Worker w = helpers[i];
+			final int depth = maxDepth;
+			helperThreads[i] = new Thread() {
+				public void run()
+				{ w.iterate(depth); }
+			};
+			helperThreads[i].setDaemon(true);
+			helperThreads[i].start();
+		}
+		Result res = main.iterate(maxDepth);
+		stop = true;
+		for (int i=0; i<helpers.length; i++) {
+			try {
+				helperThreads[i].join();
+			}
+			catch (InterruptedException e) { }
+			res.nodes += helpers[i].nodes;
+		}
+		res.nanos = System.nanoTime() - start;
+		return res;
+	}
+
+	/**
+	 * One search thread, with its own position and ordering tables.
+	 */
+	private class Worker {
+		private final SearchableState state;
+		private final int id;
+		private final int [][] moves;
+		private final int [][] scores;
+		private final int [][] killers = new int [MAX_PLY][2];
+		private final int [][] history = new int [2][HISTORY_SIZE];
+		private int rootMove;		// best move of the last root search
+		long nodes;
+
+		Worker(SearchableState state, int id)
+		{
+			this.state = state;
+			this.id = id;
+			moves = new int [MAX_PLY][state.maxMoves()];
+			scores = new int [MAX_PLY][state.maxMoves()];
+			for (int [] k : killers) {
+				k[0] = k[1] = SearchableState.NO_MOVE;
+			}
+		}
+		/**
+		 * Iterative deepening. Helpers start a ply deeper on odd ids, so
+		 * that the threads aren't all on the same iteration.
+		 */
+		Result iterate(int maxDepth)
+		{
+			Result res = new Result();
+			for (int depth = 1 + (id & 1); depth <= maxDepth; depth++) {
+				rootMove = SearchableState.NO_MOVE;
+				int score = negamax(depth, 0, -INFINITY, INFINITY);
+				if (stop) {
+					break;
+				}
+				if (rootMove != SearchableState.NO_MOVE) {
+					res.move = rootMove;
+				}
+				res.score = score;
+				res.depth = depth;
+				if (Math.abs(score) >= WIN_BOUND || id == 0 && System.nanoTime() > deadline) {
+					break;
+				}
+			}
+			res.nodes = nodes;
+			if (res.move == SearchableState.NO_MOVE) {
+				// Not even depth 1 finished: take any legal move
+				if (state.generateMoves(moves[0]) > 0) {
+					res.move = moves[0][0];
+				}
+			}
+			return res;
+		}
+		private int negamax(int depth, int ply, int alpha, int beta)
+		{
+			nodes++;
+			if (id == 0 && (nodes & 1023) == 0 && System.nanoTime() > deadline) {
+				stop = true;
+			}
+			if (stop) {
+				return 0;
+			}
+			if (state.isTerminal()) {
+				int score = state.terminalScore();
+				return score > 0 ? score - ply : score < 0 ? score + ply : 0;
+			}
+			if (depth == 0 || ply == MAX_PLY - 1) {
+				return state.evaluate();
+			}
+			long key = state.hash();
+			long data = table.probe(key);
+			int tableMove = SearchableState.NO_MOVE;
+			if (data != TranspositionTable.MISS) {
+				tableMove = TranspositionTable.move(data);
+				if (ply > 0 && TranspositionTable.depth(data) >= depth) {
+					int score = fromTable(TranspositionTable.score(data), ply);
+					int flag = TranspositionTable.flag(data);
+					if (flag == TranspositionTable.EXACT ||
+						flag == TranspositionTable.LOWER && score >= beta ||
+						flag == TranspositionTable.UPPER && score <= alpha) {
+						return score;
+					}
+				}
+			}
+			int [] mvs = moves[ply];
+			int cnt = state.generateMoves(mvs);
+			if (cnt == 0) {
+				return state.evaluate();
+			}
+			scoreMoves(mvs, scores[ply], cnt, tableMove, ply);
+			int origAlpha = alpha;
+			int best = -INFINITY, bestMove = mvs[0];
+			for (int i=0; i<cnt; i++) {
+				int mv = pick(mvs, scores[ply], i, cnt);
+				state.makeMove(mv);
+				int score = -negamax(depth-1, ply+1, -beta, -alpha);
+				state.unmakeMove(mv);
+				if (stop) {
+					return 0;
+				}
+				if (score > best) {
+					best = score;
+					bestMove = mv;
+					if (score > alpha) {
+						alpha = score;
+						if (alpha >= beta) {
+							recordCutoff(mv, depth, ply);
+							break;
+						}
+					}
+				}
+			}
+			if (ply == 0) {
+				// read back from here, not the table, which other threads share
+				rootMove = bestMove;
+			}
+			int flag = best <= origAlpha ? TranspositionTable.UPPER :
+						best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			table.store(key, toTable(best, ply), bestMove, depth, flag);
+			return best;
+		}
+		/**
+		 * Order: the table's move, then killers, then by history. Helper
+		 * threads add a little noise so they don't walk the same tree.
+		 */
+		private void scoreMoves(int [] mvs, int [] sc, int cnt, int tableMove, int ply)
+		{
+			int [] k = killers[ply];
+			int [] h = history[ply & 1];
+			for (int i=0; i<cnt; i++) {
+				int mv = mvs[i];
+				if (mv == tableMove) {
+					sc[i] = Integer.MAX_VALUE;
+				} else if (mv == k[0]) {
+					sc[i] = Integer.MAX_VALUE - 1;
+				} else if (mv == k[1]) {
+					sc[i] = Integer.MAX_VALUE - 2;
+				} else {
+					// earlier generated moves win ties
+					sc[i] = h[mv & (HISTORY_SIZE-1)] * 256 - i;
+					if (id != 0) {
+						sc[i] += (mv * 31 + id * 17) & 3;
+					}
+				}
+			}
+		}
+		private int pick(int [] mvs, int [] sc, int from, int cnt)
+		{
+			int best = from;
+			for (int i=from+1; i<cnt; i++) {
+				if (sc[i] > sc[best])
+					best = i;
+			}
+			int mv = mvs[best], s = sc[best];
+			mvs[best] = mvs[from];
+			sc[best] = sc[from];
+			mvs[from] = mv;
+			sc[from] = s;
+			return mv;
+		}
+		private void recordCutoff(int mv, int depth, int ply)
+		{
+			int [] k = killers[ply];
+			if (k[0] != mv) {
+				k[1] = k[0];
+				k[0] = mv;
+			}
+			int [] h = history[ply & 1];
+			int i = mv & (HISTORY_SIZE-1);
+			h[i] += depth * depth;
+			if (h[i] > (1 << 20)) {
+				for (int j=0; j<HISTORY_SIZE; j++) {
+					h[j] >>= 1;
+				}
+			}
+		}
+	}
+	/**
+	 * Wins are stored as distance from the stored node rather than from
+	 * the root, so they stay right wherever the position is reached.
+	 */
+	private static int toTable(int score, int ply)
+	{ return score >= WIN_BOUND ? score + ply : score <= -WIN_BOUND ? score - ply : score; }
+	private static int fromTable(int score, int ply)
+	{ return score >= WIN_BOUND ? score - ply : score <= -WIN_BOUND ? score + ply : score; }
+}
@@ -0,0 +1,48 @@
+package game.search;
+import game.*;
+
+/**
+ * What SearchEngine needs from a game. Moves are ints, in whatever
+ * encoding the game likes (at most MOVE_BITS bits, not NO_MOVE), so
+ * that the engine never allocates per node. Scores are from the point
+ * of view of the side to move.
+ */
+public interface SearchableState {
+	int MOVE_BITS = 20;
+	int NO_MOVE = (1 << MOVE_BITS) - 1;
+
+	/**
+	 * Most moves generateMoves can ever produce.
+	 */
+	int maxMoves();
+	/**
+	 * Fills mvs with the legal moves of the side to move, the most
+	 * promising first if the game knows which those are. A game may
+	 * leave out moves it knows can't be better than one it keeps.
+	 * @return The number of moves
+	 */
+	int generateMoves(int [] mvs);
+	void makeMove(int mv);
+	/**
+	 * Takes back mv, which must be the last move made.
+	 */
+	void unmakeMove(int mv);
+	/**
+	 * Key of the position, side to move included.
+	 */
+	long hash();
+	/**
+	 * Static evaluation, well inside +-SearchEngine.WIN.
+	 */
+	int evaluate();
+	boolean isTerminal();
+	/**
+	 * Value of a finished game: SearchEngine.WIN, -SearchEngine.WIN or 0.
+	 */
+	int terminalScore();
+	/**
+	 * An independent copy, for another search thread.
+	 */
+	SearchableState copy();
+	GameMove toGameMove(int mv);
+}
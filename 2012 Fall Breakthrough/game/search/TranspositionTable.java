@@ -0,0 +1,61 @@
+package game.search;
+
+import java.util.Arrays;
+
+/**
+ * Direct-mapped table of search results: score, bound type, depth and
+ * best move. Like breakthrough.EvalCache, each entry is two longs,
+ * (key ^ data, data), so search threads share it without locking and a
+ * torn entry only reads as a miss. Entries are always replaced.
+ *
+ * The depth is stored plus one, so stored data is never 0 and probe can
+ * use 0 for a miss.
+ */
+public class TranspositionTable {
+	public static final int EXACT = 0, LOWER = 1, UPPER = 2;
+	public static final int DEFAULT_ENTRIES = 1 << 20;
+	public static final long MISS = 0;
+
+	private final long [] table;
+	private final int mask;
+
+	/**
+	 * @param entries Number of entries; rounded down to a power of two
+	 */
+	public TranspositionTable(int entries)
+	{
+		int size = Integer.highestOneBit(Math.max(1, entries));
+		table = new long [2 * size];
+		mask = size - 1;
+	}
+	public static int score(long data)
+	{ return (int)data; }
+	public static int move(long data)
+	{ return (int)(data >>> 32) & SearchableState.NO_MOVE; }
+	public static int depth(long data)
+	{ return ((int)(data >>> 52) & 0xFF) - 1; }
+	public static int flag(long data)
+	{ return (int)(data >>> 60) & 3; }
+	/**
+	 * @return The data stored for key, or MISS
+	 */
+	public long probe(long key)
+	{
+		int i = 2 * ((int)key & mask);
+		long data = table[i+1];
+		return (table[i] ^ data) == key ? data : MISS;
+	}
+	/**
+	 * @param depth Remaining depth the score was searched to, under 255
+	 */
+	public void store(long key, int score, int move, int depth, int flag)
+	{
+		int i = 2 * ((int)key & mask);
+		long data = (score & 0xFFFFFFFFL) | (long)(move & SearchableState.NO_MOVE) << 32 |
+					(long)(depth + 1) << 52 | (long)flag << 60;
+		table[i] = key ^ data;
+		table[i+1] = data;
+	}
+	public void clear()
+	{ Arrays.fill(table, 0); }
+}
@@ -47,20 +47,16 @@ public class AdvancedTTTPlayer extends GamePlayer {
 			return terminal;
 		} else {
 			ScoredTTTMove bestMove = new ScoredTTTMove(0, -10, bestScore);
-			GameState.Who currTurn = brd.getWho();
 
-			for (int r=0; r<TTTState.N; r++) {
-				for (int c=0; c<TTTState.N; c++) {
+			for (int r=0; r<TTTState.NUM_ROWS; r++) {
+				for (int c=0; c<TTTState.NUM_COLS; c++) {
 					if (brd.board[r][c] == TTTState.emptySym) {
 						
 						tempMv.row = r; tempMv.col = c;
 						brd.makeMove(tempMv);
 						ScoredTTTMove moveAttempt = minimax(brd);
 						
-						brd.board[r][c] = TTTState.emptySym;
-						brd.numMoves--;
-						brd.status = GameState.Status.GAME_ON;
-						brd.who = currTurn;
+						brd.undoMove(r, c);
 						
 						if (toMaximize && moveAttempt.score > bestMove.score) {
 							bestMove = new ScoredTTTMove(r, c, moveAttempt.score);
@@ -20,8 +20,8 @@ public class BeginnerTTTPlayer extends GamePlayer {
 				return new TTTMove(0, 2);
 			}
 		} else {
-			for (int r=0; r<TTTState.N; r++) {
-				for (int c=0; c<TTTState.N; c++) {
+			for (int r=0; r<TTTState.NUM_ROWS; r++) {
+				for (int c=0; c<TTTState.NUM_COLS; c++) {
 					if (brd.board[r][c] == TTTState.emptySym) {
 						row = r;
 						col = c;
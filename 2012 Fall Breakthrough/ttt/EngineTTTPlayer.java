@@ -0,0 +1,22 @@
+package ttt;
+import game.*;
+import game.search.*;
+
+/**
+ * Tic-tac-toe, on whatever board config/ttt.txt gives, by the shared
+ * game.search engine, taking most of MOVETIME a move.
+ */
+public class EngineTTTPlayer extends EnginePlayer {
+	public static final long MOVE_MILLIS = TTTState.gameParams.integer("MOVETIME") * 1000L * 3 / 4;
+
+	public EngineTTTPlayer(String nname, int threads)
+	{ super(nname, new TTTState(), TTTState.NUM_SPOTS, MOVE_MILLIS, threads); }
+	protected SearchableState searchable(GameState brd)
+	{ return new TTTSearchState((TTTState)brd); }
+
+	public static void main(String [] args)
+	{
+		GamePlayer p = new EngineTTTPlayer("TTT Engine", 1);
+		p.compete(args);
+	}
+}
@@ -10,8 +10,8 @@ public class RandomTTTPlayer extends GamePlayer {
 	{
 		ArrayList<GameMove> possibleMoves = new ArrayList<GameMove>();
 		TTTState brd = (TTTState)game;
-		for (int r=0; r<TTTState.N; r++) {
-			for (int c=0; c<TTTState.N; c++) {
+		for (int r=0; r<TTTState.NUM_ROWS; r++) {
+			for (int c=0; c<TTTState.NUM_COLS; c++) {
 				if (brd.board[r][c] == TTTState.emptySym) {
 					possibleMoves.add(new TTTMove(r, c));
 				}
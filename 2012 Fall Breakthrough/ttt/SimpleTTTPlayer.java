@@ -7,8 +7,8 @@ public class SimpleTTTPlayer extends GamePlayer {
 	public GameMove getMove(GameState game, String lastMove)
 	{
 		TTTState brd = (TTTState)game;
-		for (int r=0; r<TTTState.N; r++) {
-			for (int c=0; c<TTTState.N; c++) {
+		for (int r=0; r<TTTState.NUM_ROWS; r++) {
+			for (int c=0; c<TTTState.NUM_COLS; c++) {
 				if (brd.board[r][c] == TTTState.emptySym) {
 					return new TTTMove(r, c);
 				}
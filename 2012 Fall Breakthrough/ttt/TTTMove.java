@@ -8,7 +8,7 @@ public class TTTMove extends GameMove {
 	public TTTMove(int r, int c)
 	{
 		row = r; col = c;
-		if (!indexOK(row) || !indexOK(col)) {
+		if (!rowOK(row) || !colOK(col)) {
 			row = col = 0;
 		}
 	}
@@ -21,11 +21,13 @@ public class TTTMove extends GameMove {
 		StringTokenizer toks = new StringTokenizer(s);
 		row = Integer.parseInt(toks.nextToken());
 		col = Integer.parseInt(toks.nextToken());
-		if (!indexOK(row) || !indexOK(col)) {
+		if (!rowOK(row) || !colOK(col)) {
 			row = col = 0;
 		}
 	}
 
-	public static boolean indexOK(int v)
-	{ return v >= 0 && v < TTTState.N; }
+	public static boolean rowOK(int v)
+	{ return v >= 0 && v < TTTState.NUM_ROWS; }
+	public static boolean colOK(int v)
+	{ return v >= 0 && v < TTTState.NUM_COLS; }
 }
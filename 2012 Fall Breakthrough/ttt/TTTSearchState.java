@@ -0,0 +1,251 @@
+package ttt;
+import game.*;
+import game.search.*;
+
+import java.util.*;
+
+/**
+ * TTTState, on any m x n board with any k, as seen by SearchEngine. A
+ * move is row * NUM_COLS + col.
+ *
+ * Every line of K squares on the board is a window, and the discs each
+ * side has in each window are kept up to date move by move. A window
+ * only one side has discs in scores WEIGHT[discs] for that side; the
+ * evaluation is the side to move's total less the opponent's.
+ *
+ * The windows also order and prune the moves. If the side to move can
+ * complete a window, that is the only move; if the opponent can, only
+ * the squares that stop it are searched, since anything else loses at
+ * once. Otherwise squares come out by how much they add to the side to
+ * move's windows and take from the opponent's. While the board is
+ * still symmetric, only one square of each set of squares the symmetry
+ * maps onto one another is searched.
+ */
+public class TTTSearchState implements SearchableState {
+	private static final int ROWS = TTTState.NUM_ROWS, COLS = TTTState.NUM_COLS;
+	private static final int K = TTTState.K, SPOTS = TTTState.NUM_SPOTS;
+	// Symmetry is only looked for this early in the game
+	private static final int SYMMETRY_MOVES = 6;
+	// WINDOWS[w]: squares of window w; WINDOWS_AT[sq]: windows through sq
+	private static final int [][] WINDOWS = windows();
+	private static final int [][] WINDOWS_AT = windowsAt();
+	private static final int [] WEIGHT = weights();
+	// SYMMETRY[s][sq]: where sq goes under each symmetry of the board
+	private static final int [][] SYMMETRY = symmetries();
+
+	public final TTTState brd;
+	private final TTTMove mv = new TTTMove(0, 0);
+	private final int [] windowHome = new int [WINDOWS.length];
+	private final int [] windowAway = new int [WINDOWS.length];
+	private int score;					// evaluation, HOME's point of view
+	private final int [] sqScores = new int [SPOTS];
+
+	public TTTSearchState(TTTState brd)
+	{
+		this.brd = brd;
+		for (int sq=0; sq<SPOTS; sq++) {
+			char ch = brd.board[sq / COLS][sq % COLS];
+			if (ch != TTTState.emptySym) {
+				update(sq, ch == TTTState.homeSym, 1);
+			}
+		}
+	}
+	private static int [][] windows()
+	{
+		int [][] dirs = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
+		ArrayList<int []> list = new ArrayList<int []>();
+		for (int [] d : dirs) {
+			for (int r=0; r<ROWS; r++) {
+				for (int c=0; c<COLS; c++) {
+					int er = r + (K-1)*d[0], ec = c + (K-1)*d[1];
+					if (!Util.inrange(er, ROWS-1) || !Util.inrange(ec, COLS-1))
+						continue;
+					int [] w = new int [K];
+					for (int i=0; i<K; i++) {
+						w[i] = (r + i*d[0]) * COLS + c + i*d[1];
+					}
+					list.add(w);
+				}
+			}
+		}
+		return list.toArray(new int [list.size()][]);
+	}
+	private static int [][] windowsAt()
+	{
+		int [] cnt = new int [SPOTS];
+		for (int [] w : WINDOWS) {
+			for (int sq : w)
+				cnt[sq]++;
+		}
+		int [][] at = new int [SPOTS][];
+		for (int sq=0; sq<SPOTS; sq++) {
+			at[sq] = new int [cnt[sq]];
+			cnt[sq] = 0;
+		}
+		for (int i=0; i<WINDOWS.length; i++) {
+			for (int sq : WINDOWS[i])
+				at[sq][cnt[sq]++] = i;
+		}
+		return at;
+	}
+	/**
+	 * Four times as much for each disc more, so that near-complete
+	 * windows count for far more than scattered discs.
+	 */
+	private static int [] weights()
+	{
+		int [] w = new int [K+1];
+		for (int i=1; i<=K; i++) {
+			w[i] = i == 1 ? 1 : Math.min(w[i-1] * 4, 1 << 16);
+		}
+		return w;
+	}
+	private static int [][] symmetries()
+	{
+		int n = ROWS == COLS ? 8 : 4;
+		int [][] sym = new int [n][SPOTS];
+		for (int sq=0; sq<SPOTS; sq++) {
+			int r = sq / COLS, c = sq % COLS;
+			int [][] rc = {
+				{ r, c }, { ROWS-1-r, COLS-1-c }, { r, COLS-1-c }, { ROWS-1-r, c },
+				{ c, r }, { c, ROWS-1-r }, { COLS-1-c, r }, { COLS-1-c, ROWS-1-r }		// square boards only
+			};
+			for (int s=0; s<n; s++) {
+				sym[s][sq] = rc[s][0] * COLS + rc[s][1];
+			}
+		}
+		return sym;
+	}
+	/**
+	 * Adds (delta 1) or removes (delta -1) a disc of one side on sq,
+	 * keeping the window counts and score up to date.
+	 */
+	private void update(int sq, boolean home, int delta)
+	{
+		for (int w : WINDOWS_AT[sq]) {
+			score -= windowValue(w);
+			if (home) {
+				windowHome[w] += delta;
+			} else {
+				windowAway[w] += delta;
+			}
+			score += windowValue(w);
+		}
+	}
+	private int windowValue(int w)
+	{
+		int h = windowHome[w], a = windowAway[w];
+		return a == 0 ? WEIGHT[h] : h == 0 ? -WEIGHT[a] : 0;
+	}
+	private boolean empty(int sq)
+	{ return brd.board[sq / COLS][sq % COLS] == TTTState.emptySym; }
+	private int emptyIn(int w)
+	{
+		for (int sq : WINDOWS[w]) {
+			if (empty(sq))
+				return sq;
+		}
+		return -1;
+	}
+	public int maxMoves()
+	{ return SPOTS; }
+	public int generateMoves(int [] mvs)
+	{
+		boolean home = brd.getWho() == GameState.Who.HOME;
+		int [] own = home ? windowHome : windowAway;
+		int [] opp = home ? windowAway : windowHome;
+		int cnt = 0;
+		for (int w=0; w<WINDOWS.length; w++) {
+			if (own[w] == K-1 && opp[w] == 0) {
+				mvs[0] = emptyIn(w);
+				return 1;
+			}
+		}
+		for (int w=0; w<WINDOWS.length; w++) {
+			if (opp[w] == K-1 && own[w] == 0) {
+				int sq = emptyIn(w);
+				int i = 0;
+				while (i < cnt && mvs[i] != sq)
+					i++;
+				if (i == cnt)
+					mvs[cnt++] = sq;
+			}
+		}
+		if (cnt > 0) {
+			return cnt;
+		}
+		int invariant = brd.getNumMoves() <= SYMMETRY_MOVES ? invariantSymmetries() : 0;
+		for (int sq=0; sq<SPOTS; sq++) {
+			if (!empty(sq) || (invariant != 0 && !smallestImage(sq, invariant)))
+				continue;
+			int sc = 0;
+			for (int w : WINDOWS_AT[sq]) {
+				if (opp[w] == 0)
+					sc += WEIGHT[own[w] + 1];
+				if (own[w] == 0)
+					sc += WEIGHT[opp[w] + 1];
+			}
+			int j = cnt++;
+			while (j > 0 && sqScores[j-1] < sc) {
+				mvs[j] = mvs[j-1];
+				sqScores[j] = sqScores[j-1];
+				j--;
+			}
+			mvs[j] = sq;
+			sqScores[j] = sc;
+		}
+		return cnt;
+	}
+	/**
+	 * Bit s set for each symmetry s, other than the identity, that leaves
+	 * the board as it is.
+	 */
+	private int invariantSymmetries()
+	{
+		int set = 0;
+		for (int s=1; s<SYMMETRY.length; s++) {
+			int sq = 0;
+			while (sq < SPOTS && brd.board[sq / COLS][sq % COLS] ==
+					brd.board[SYMMETRY[s][sq] / COLS][SYMMETRY[s][sq] % COLS])
+				sq++;
+			if (sq == SPOTS)
+				set |= 1 << s;
+		}
+		return set;
+	}
+	/**
+	 * Whether no symmetry in set maps sq to a smaller square.
+	 */
+	private boolean smallestImage(int sq, int set)
+	{
+		for (int s=1; s<SYMMETRY.length; s++) {
+			if ((set & (1 << s)) != 0 && SYMMETRY[s][sq] < sq)
+				return false;
+		}
+		return true;
+	}
+	public void makeMove(int m)
+	{
+		update(m, brd.getWho() == GameState.Who.HOME, 1);
+		mv.row = m / COLS;
+		mv.col = m % COLS;
+		brd.makeMove(mv);
+	}
+	public void unmakeMove(int m)
+	{
+		brd.undoMove(m / COLS, m % COLS);
+		update(m, brd.getWho() == GameState.Who.HOME, -1);
+	}
+	public long hash()
+	{ return brd.hash; }
+	public int evaluate()
+	{ return brd.getWho() == GameState.Who.HOME ? score : -score; }
+	public boolean isTerminal()
+	{ return brd.getStatus() != GameState.Status.GAME_ON; }
+	public int terminalScore()
+	{ return SearchEngine.statusScore(brd); }
+	public SearchableState copy()
+	{ return new TTTSearchState((TTTState)brd.clone()); }
+	public GameMove toGameMove(int m)
+	{ return new TTTMove(m / COLS, m % COLS); }
+}
@@ -3,12 +3,25 @@ import game.*;
 
 public class TTTState extends GameState {
 	public static final Params gameParams = new Params("config" + SEP + "ttt.txt");
-	public static final int N = gameParams.integer("ROWS");
+	public static final int NUM_ROWS = gameParams.integer("ROWS");
+	public static final int NUM_COLS = gameParams.defined("COLS") ? gameParams.integer("COLS") : NUM_ROWS;
+	public static final int NUM_SPOTS = NUM_ROWS * NUM_COLS;
+	// In a row to win: K if given, otherwise a full row or column
+	public static final int K = gameParams.defined("K") ? gameParams.integer("K") : Math.min(NUM_ROWS, NUM_COLS);
 	public static final char homeSym = gameParams.character("HOMESYM");
 	public static final char awaySym = gameParams.character("AWAYSYM");
 	public static final char emptySym = gameParams.character("EMPTYSYM");
+	public static final Util.Zobrist ZOBRIST = new Util.Zobrist(NUM_ROWS, NUM_COLS, homeSym, awaySym, 5);
+	// Bitboards hold a row per ROW_BITS bits, column 0 lowest, with an
+	// always empty bit at the end so that lines can't run from one row
+	// into the next. Boards too big for a long check the board instead.
+	public static final int ROW_BITS = NUM_COLS + 1;
+	public static final boolean BITBOARD = NUM_ROWS * ROW_BITS <= 64;
 
-	public char [][] board = new char [N][N];
+	public char [][] board = new char [NUM_ROWS][NUM_COLS];
+	public long hash;				// Zobrist key of board and side to move
+	// Each side's discs, kept up only when BITBOARD; otherwise 0
+	public long homeBits, awayBits;
 	
 	public TTTState()
 	{ reset(); }
@@ -17,18 +30,23 @@ public class TTTState extends GameState {
 		TTTState copy = new TTTState();
 		copy.copyInfo(this);
 		Util.copy(copy.board, board);
+		copy.hash = hash;
+		copy.homeBits = homeBits;
+		copy.awayBits = awayBits;
 		return copy;
 	}
 	public void reset()
 	{
 		clear();
 		Util.clear(board, emptySym);
+		hash = 0;
+		homeBits = awayBits = 0;
 	}
 	public boolean moveOK(GameMove mv)
 	{
 		TTTMove tttmv = (TTTMove)mv;
 		return status == Status.GAME_ON && mv != null && 
-				Util.inrange(tttmv.row, N-1) && Util.inrange(tttmv.col, N-1) &&
+				Util.inrange(tttmv.row, NUM_ROWS-1) && Util.inrange(tttmv.col, NUM_COLS-1) &&
 			   board[tttmv.row][tttmv.col] == emptySym;
 	}
 
@@ -49,54 +67,140 @@ public class TTTState extends GameState {
 		boolean OK = false;
 		TTTMove tttmv = (TTTMove)mv;
 		if (moveOK(mv)) {
+			Who mover = who;
 			board[tttmv.row][tttmv.col] = (who == Who.HOME ? homeSym : awaySym);
+			hash = ZOBRIST.move(hash, tttmv.row, tttmv.col, board[tttmv.row][tttmv.col]);
+			if (BITBOARD && who == Who.HOME) {
+				homeBits |= bit(tttmv.row, tttmv.col);
+			} else if (BITBOARD) {
+				awayBits |= bit(tttmv.row, tttmv.col);
+			}
 			super.newMove();
-			computeStatus();
+			if (BITBOARD) {
+				updateStatus(mover);
+			} else {
+				computeStatus(tttmv.row, tttmv.col);
+			}
 			OK = true;
 		}
 		return OK;
 	}
+	/**
+	 * Takes back the last move, which was made on [row][col].
+	 */
+	public void undoMove(int row, int col)
+	{
+		hash = ZOBRIST.move(hash, row, col, board[row][col]);
+		if (BITBOARD) {
+			homeBits &= ~bit(row, col);
+			awayBits &= ~bit(row, col);
+		}
+		board[row][col] = emptySym;
+		numMoves--;
+		status = Status.GAME_ON;
+		togglePlayer();
+	}
 	private Status winner(char who)
 	{ return who == homeSym ? Status.HOME_WIN : Status.AWAY_WIN; }
-	private void computeStatus()
+	public static long bit(int r, int c)
+	{ return 1L << (r * ROW_BITS + c); }
+	/**
+	 * Whether bits has K in a row in the direction of shift d: runs of
+	 * two, then four and so on, then one last overlapping step to K.
+	 */
+	private static boolean hasRun(long bits, int d)
 	{
-		for (int i=0; i<N; i++) {
-			if (gameHasWinner(i, 0, 0, 1)) {
-				status = winner(board[i][0]);
-				return;
-			} else if (gameHasWinner(0, i, 1, 0)) {
-				status = winner(board[0][i]);
-				return;
-			}
+		long m = bits;
+		int n = 1;
+		while (2*n <= K) {
+			m &= m >>> (n*d);
+			n *= 2;
+		}
+		if (n < K) {
+			m &= m >>> ((K-n)*d);
 		}
-		
-		if (gameHasWinner(0, 0, 1, 1)) {
-			status = winner(board[0][0]);
-		} else if (gameHasWinner(N-1, 0, -1, 1)) {
-			status = winner(board[N-1][0]);
-		} else if (numMoves == N*N) {
+		return m != 0;
+	}
+	/**
+	 * Whether bits has K in a row in any direction that has room for it.
+	 */
+	public static boolean hasLine(long bits)
+	{
+		if (K <= NUM_COLS && hasRun(bits, 1))							// along a row
+			return true;
+		if (K > NUM_ROWS)
+			return false;
+		if (hasRun(bits, ROW_BITS))										// along a column
+			return true;
+		return K <= NUM_COLS && (hasRun(bits, ROW_BITS+1) || hasRun(bits, ROW_BITS-1));
+	}
+	/**
+	 * Status after a move by mover, who was the side to move. The mover
+	 * had no line before, so any line found runs through the last move.
+	 */
+	private void updateStatus(Who mover)
+	{
+		if (hasLine(mover == Who.HOME ? homeBits : awayBits)) {
+			status = winner(mover == Who.HOME ? homeSym : awaySym);
+		} else if (numMoves == NUM_SPOTS) {
 			status = Status.DRAW;
 		} else {
 			status = Status.GAME_ON;
 		}
 	}
-	private boolean gameHasWinner(int startRow, int startCol, int dr, int dc)
+	/**
+	 * Status after a move on [row][col], counting the lines through it
+	 * on the board itself.
+	 */
+	private void computeStatus(int row, int col)
 	{
-		int r = startRow;
-		int c = startCol;
-		for (int i=0; i<N-1; i++) {
-			if (board[r][c] != board[r+dr][c+dc])
-				return false;
-			r += dr;
-			c += dc;
+		if (inLine(row, col, 0, 1) || inLine(row, col, 1, 0) ||
+			inLine(row, col, 1, 1) || inLine(row, col, 1, -1)) {
+			status = winner(board[row][col]);
+		} else if (numMoves == NUM_SPOTS) {
+			status = Status.DRAW;
+		} else {
+			status = Status.GAME_ON;
 		}
-		return board[startRow][startCol] != emptySym;
 	}
+	/**
+	 * Whether [row][col] is one of K in a row along (dr, dc).
+	 */
+	private boolean inLine(int row, int col, int dr, int dc)
+	{
+		char sym = board[row][col];
+		int cnt = 1;
+		for (int r=row+dr, c=col+dc; Util.inrange(r, NUM_ROWS-1) && Util.inrange(c, NUM_COLS-1) && board[r][c] == sym; r+=dr, c+=dc)
+			cnt++;
+		for (int r=row-dr, c=col-dc; Util.inrange(r, NUM_ROWS-1) && Util.inrange(c, NUM_COLS-1) && board[r][c] == sym; r-=dr, c-=dc)
+			cnt++;
+		return cnt >= K;
+	}
+	public GameMove parseMove(String s)
+	{
+		TTTMove mv = new TTTMove(0, 0);
+		mv.parseMove(s);
+		return mv;
+	}
+	public boolean matchesMsgString(String s)
+	{ return Util.matchesMsgString(s, board) && s.substring(NUM_SPOTS).equals(msgSuffix()); }
 	public void parseMsgString(String s)
 	{
 		reset();
 		Util.parseMsgString(s, board, emptySym);
 		parseMsgSuffix(s.substring(s.indexOf('[')));
+		hash = ZOBRIST.hash(board, who);
+		if (BITBOARD) {
+			for (int r=0; r<NUM_ROWS; r++) {
+				for (int c=0; c<NUM_COLS; c++) {
+					if (board[r][c] == homeSym) {
+						homeBits |= bit(r, c);
+					} else if (board[r][c] == awaySym) {
+						awayBits |= bit(r, c);
+					}
+				}
+			}
+		}
 	}
 	public String msgString() 
 	{ return Util.msgString(board) + this.msgSuffix(); }
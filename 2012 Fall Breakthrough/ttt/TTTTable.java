@@ -0,0 +1,190 @@
+package ttt;
+import game.*;
+
+/**
+ * The value under perfect play, and a best move, of every position of
+ * 3 x 3 tic-tac-toe, worked out once. Positions are indexed in base 3,
+ * a digit per square (0 empty, 1 HOME, 2 AWAY), row-major; the side to
+ * move follows from the disc counts. Only the smallest index among a
+ * position's eight rotations and reflections is stored, so a lookup is
+ * eight index computations and one array read.
+ *
+ * Building visits each of those positions once. Each entry is a byte:
+ * KNOWN, the value + 1 (HOME's point of view) in bits 4 and 5, and the
+ * best move's square (in the stored orientation) in the low four bits,
+ * NO_SQUARE for finished games. Best moves win as soon as possible and
+ * lose as late as possible.
+ *
+ * Besides players, the server can use value() to adjudicate a game the
+ * moment its outcome is settled.
+ */
+public class TTTTable {
+	public static final int N = 3;
+	public static final int SQUARES = N * N;
+	public static final int SIZE = 19683;		// 3 ^ SQUARES
+	public static final boolean SUPPORTED = TTTState.NUM_ROWS == N && TTTState.NUM_COLS == N && TTTState.K == N;
+	private static final int KNOWN = 0x80, NO_SQUARE = 0xF;
+	// SYMMETRY[s][i]: where square i goes under symmetry s
+	private static final int [][] SYMMETRY = symmetries();
+	private static final int [] POW3 = { 1, 3, 9, 27, 81, 243, 729, 2187, 6561 };
+	private static final int [][] LINES = {
+		{ 0, 1, 2 }, { 3, 4, 5 }, { 6, 7, 8 },
+		{ 0, 3, 6 }, { 1, 4, 7 }, { 2, 5, 8 },
+		{ 0, 4, 8 }, { 2, 4, 6 }
+	};
+
+	private static TTTTable table;
+	private final byte [] entries = new byte [SIZE];
+	private int [] scores;		// solve's results while building
+	public int positions;		// distinct positions, up to symmetry
+
+	private static int [][] symmetries()
+	{
+		int [][] sym = new int [8][SQUARES];
+		for (int i=0; i<SQUARES; i++) {
+			int r = i / N, c = i % N;
+			int [][] rc = {
+				{ r, c }, { c, N-1-r }, { N-1-r, N-1-c }, { N-1-c, r },		// rotations
+				{ r, N-1-c }, { N-1-r, c }, { c, r }, { N-1-c, N-1-r }		// reflections
+			};
+			for (int s=0; s<8; s++) {
+				sym[s][i] = rc[s][0] * N + rc[s][1];
+			}
+		}
+		return sym;
+	}
+	/**
+	 * The table, built on first use.
+	 */
+	public static synchronized TTTTable get()
+	{
+		if (table == null) {
+			table = new TTTTable();
+		}
+		return table;
+	}
+	private TTTTable()
+	{
+		if (!SUPPORTED) {
+			throw new IllegalStateException("TTTTable is for 3 x 3 boards, three in a row");
+		}
+		scores = new int [SIZE];
+		solve(new int [SQUARES], 0);
+		scores = null;
+	}
+	/**
+	 * Index of the squares as transformed by symmetry s.
+	 */
+	private static int index(int [] sq, int s)
+	{
+		int idx = 0;
+		for (int i=0; i<SQUARES; i++) {
+			idx += sq[i] * POW3[SYMMETRY[s][i]];
+		}
+		return idx;
+	}
+	/**
+	 * The symmetry that takes sq to its stored orientation.
+	 */
+	private static int canonical(int [] sq)
+	{
+		int best = 0, bestIdx = index(sq, 0);
+		for (int s=1; s<8; s++) {
+			int idx = index(sq, s);
+			if (idx < bestIdx) {
+				best = s;
+				bestIdx = idx;
+			}
+		}
+		return best;
+	}
+	private static boolean won(int [] sq, int side)
+	{
+		for (int [] l : LINES) {
+			if (sq[l[0]] == side && sq[l[1]] == side && sq[l[2]] == side)
+				return true;
+		}
+		return false;
+	}
+	/**
+	 * Fills in sq's entry, and those of every position after it.
+	 * @return Value for HOME, the larger the sooner: SQUARES + 1 - plies
+	 * to a HOME win, its negative for an AWAY win, 0 for a draw
+	 */
+	private int solve(int [] sq, int plies)
+	{
+		int s = canonical(sq);
+		int idx = index(sq, s);
+		if (entries[idx] != 0) {
+			return scores[idx];		// reached before by another order of moves
+		}
+		int last = plies % 2 == 0 ? 2 : 1;			// side that just moved
+		if (won(sq, last)) {
+			return record(idx, (last == 1 ? 1 : -1) * (SQUARES + 1 - plies), NO_SQUARE);
+		}
+		if (plies == SQUARES) {
+			return record(idx, 0, NO_SQUARE);
+		}
+		boolean home = plies % 2 == 0;
+		int best = home ? Integer.MIN_VALUE : Integer.MAX_VALUE, bestSquare = -1;
+		for (int i=0; i<SQUARES; i++) {
+			if (sq[i] != 0)
+				continue;
+			sq[i] = home ? 1 : 2;
+			int v = solve(sq, plies + 1);
+			sq[i] = 0;
+			if (home ? v > best : v < best) {
+				best = v;
+				bestSquare = i;
+			}
+		}
+		return record(idx, best, SYMMETRY[s][bestSquare]);
+	}
+	private int record(int idx, int score, int square)
+	{
+		positions++;
+		scores[idx] = score;
+		entries[idx] = (byte)(KNOWN | (Integer.signum(score) + 1) << 4 | square);
+		return score;
+	}
+	private static int [] squares(TTTState brd)
+	{
+		int [] sq = new int [SQUARES];
+		for (int i=0; i<SQUARES; i++) {
+			char ch = brd.board[i / N][i % N];
+			sq[i] = ch == TTTState.homeSym ? 1 : ch == TTTState.awaySym ? 2 : 0;
+		}
+		return sq;
+	}
+	/**
+	 * Outcome of brd under perfect play by both sides.
+	 */
+	public GameState.Status value(TTTState brd)
+	{
+		int [] sq = squares(brd);
+		int e = entries[index(sq, canonical(sq))];
+		int v = ((e >> 4) & 3) - 1;
+		return v > 0 ? GameState.Status.HOME_WIN : v < 0 ? GameState.Status.AWAY_WIN : GameState.Status.DRAW;
+	}
+	/**
+	 * A best move from brd, which must be unfinished.
+	 */
+	public TTTMove bestMove(TTTState brd)
+	{
+		int [] sq = squares(brd);
+		int s = canonical(sq);
+		int square = entries[index(sq, s)] & NO_SQUARE;
+		for (int i=0; i<SQUARES; i++) {
+			if (SYMMETRY[s][i] == square) {
+				return new TTTMove(i / N, i % N);
+			}
+		}
+		return null;
+	}
+	/**
+	 * The server's view: the outcome a game that is still on will come
+	 * to with perfect play, or its status if it's over.
+	 */
+	public static GameState.Status adjudicate(TTTState brd)
+	{ return brd.getStatus() != GameState.Status.GAME_ON ? brd.getStatus() : get().value(brd); }
+}
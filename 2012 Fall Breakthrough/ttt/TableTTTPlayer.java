@@ -0,0 +1,22 @@
+package ttt;
+import game.*;
+
+/**
+ * Plays every move from TTTTable, which init builds.
+ */
+public class TableTTTPlayer extends GamePlayer {
+	private TTTTable table;
+
+	public TableTTTPlayer(String nname)
+	{ super(nname, new TTTState(), true); }
+	public void init()
+	{ table = TTTTable.get(); }
+	public GameMove getMove(GameState brd, String lastMove)
+	{ return table.bestMove((TTTState)brd); }
+
+	public static void main(String [] args)
+	{
+		GamePlayer p = new TableTTTPlayer("TTT table");
+		p.compete(args);
+	}
+}
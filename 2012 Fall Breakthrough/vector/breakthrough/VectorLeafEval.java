@@ -0,0 +1,97 @@
+package breakthrough;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * LeafBatch evaluator that works on as many leaves at a time as there
+ * are long lanes in the preferred vector shape. The vector API in this
+ * JDK has no lanewise popcount, so bits are counted with the usual
+ * shift-and-add reduction. Only loaded (by name) from LeafBatch.
+ *
+ * This file is kept out of the main source tree, since it needs the
+ * jdk.incubator.vector module to compile. From the project directory:
+ *
+ *   javac --add-modules jdk.incubator.vector -d . vector/breakthrough/VectorLeafEval.java
+ *
+ * and run with --add-modules jdk.incubator.vector to use it.
+ */
+class VectorLeafEval implements LeafBatch.Evaluator {
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+	private static final int N = BreakthroughState.N;
+
+	private static LongVector bitCount(LongVector x)
+	{
+		x = x.sub(x.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+		x = x.and(0x3333333333333333L).add(x.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+		x = x.add(x.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+		return x.mul(0x0101010101010101L).lanewise(VectorOperators.LSHR, 56);
+	}
+	/**
+	 * Same as BreakthroughBits.diagonallyCovered, lane by lane.
+	 */
+	private static LongVector diagonallyCovered(LongVector bits)
+	{
+		LongVector nbrs = bits.lanewise(VectorOperators.LSHR, N+1).and(BreakthroughBits.NOT_LAST_COL)
+			.or(bits.lanewise(VectorOperators.LSHR, N-1).and(BreakthroughBits.NOT_FIRST_COL))
+			.or(bits.lanewise(VectorOperators.LSHL, N-1).and(BreakthroughBits.NOT_LAST_COL))
+			.or(bits.lanewise(VectorOperators.LSHL, N+1).and(BreakthroughBits.NOT_FIRST_COL));
+		return bits.and(nbrs);
+	}
+	/**
+	 * sums[i] = weight * (popcount(a[i] & mask) - popcount(b[i] & mask))
+	 */
+	private static void maskedCount(long [] sums, long [] a, long [] b, long mask, long weight, int bound)
+	{
+		for (int i=0; i<bound; i+=SPECIES.length()) {
+			LongVector x = LongVector.fromArray(SPECIES, a, i).and(mask);
+			LongVector y = LongVector.fromArray(SPECIES, b, i).and(mask);
+			bitCount(x).sub(bitCount(y)).mul(weight).add(LongVector.fromArray(SPECIES, sums, i))
+				.intoArray(sums, i);
+		}
+	}
+	private static void coverage(long [] sums, long [] home, long [] away, long weight, int bound)
+	{
+		for (int i=0; i<bound; i+=SPECIES.length()) {
+			LongVector x = diagonallyCovered(LongVector.fromArray(SPECIES, home, i));
+			LongVector y = diagonallyCovered(LongVector.fromArray(SPECIES, away, i));
+			bitCount(x).sub(bitCount(y)).mul(weight).intoArray(sums, i);
+		}
+	}
+	private static void numUs(long [] sums, long [] mover, long [] sign, long weight, int bound)
+	{
+		for (int i=0; i<bound; i+=SPECIES.length()) {
+			LongVector x = LongVector.fromArray(SPECIES, mover, i);
+			bitCount(x).mul(LongVector.fromArray(SPECIES, sign, i)).mul(weight)
+				.add(LongVector.fromArray(SPECIES, sums, i)).intoArray(sums, i);
+		}
+	}
+	/**
+	 * Each term is its own pass over the batch. With all of them in one
+	 * loop the JIT gives up inlining bitCount, and every vector it
+	 * returns is then boxed. The running totals go in the batch's own
+	 * scratch array, so one evaluator can serve batches on any thread.
+	 */
+	public void evaluate(LeafBatch batch)
+	{
+		int [] w = ABBreakthroughPlayer2.weights;
+		long [] sums = batch.sums;
+		int size = batch.size;
+		int bound = SPECIES.loopBound(size);
+		coverage(sums, batch.home, batch.away, w[ABBreakthroughPlayer2.COVERAGE], bound);
+		maskedCount(sums, batch.home, batch.away, BreakthroughBits.BACK_ROWS, w[ABBreakthroughPlayer2.BACK_ROW], bound);
+		numUs(sums, batch.mover, batch.moverSign, w[ABBreakthroughPlayer2.NUM_US], bound);
+		maskedCount(sums, batch.away, batch.home, BreakthroughBits.STEADY_SQUARES, 2 * w[ABBreakthroughPlayer2.STEADY], bound);
+		int [] base = batch.base, scores = batch.scores;
+		for (int i=0; i<bound; i++) {
+			scores[i] = base[i] + (int)sums[i];
+		}
+		for (int i=bound; i<size; i++) {
+			scores[i] = base[i] + LeafBatch.bitTerms(w, batch.home[i], batch.away[i],
+														batch.mover[i], batch.moverSign[i]);
+		}
+	}
+	public String name()
+	{ return "vector (" + SPECIES.length() + " lanes)"; }
+}